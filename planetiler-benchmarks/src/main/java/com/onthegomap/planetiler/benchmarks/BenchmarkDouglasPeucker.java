@@ -0,0 +1,59 @@
+package com.onthegomap.planetiler.benchmarks;
+
+import static io.prometheus.client.Collector.NANOSECONDS_PER_SECOND;
+
+import com.onthegomap.planetiler.geo.DouglasPeuckerSimplifier;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.stats.Timer;
+import com.onthegomap.planetiler.util.Format;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+
+/**
+ * Compares the time to simplify long lines using {@link DouglasPeuckerSimplifier} against the JTS implementation it
+ * was adapted from.
+ */
+public class BenchmarkDouglasPeucker {
+
+  public static void main(String[] args) {
+    for (int points : new int[]{10_000, 100_000, 1_000_000}) {
+      Geometry line = randomWalk(points);
+      int iters = 10_000_000 / points;
+      for (int i = 0; i < 3; i++) {
+        time("planetiler", points, iters, () -> DouglasPeuckerSimplifier.simplify(line, 0.1));
+        time("jts", points, iters,
+          () -> org.locationtech.jts.simplify.DouglasPeuckerSimplifier.simplify(line, 0.1));
+      }
+    }
+  }
+
+  private static Geometry randomWalk(int points) {
+    Random random = new Random(0);
+    double[] coords = new double[points * 2];
+    double x = 0, y = 0;
+    for (int i = 0; i < points; i++) {
+      x += random.nextDouble() - 0.5;
+      y += random.nextDouble() - 0.5;
+      coords[i * 2] = x;
+      coords[i * 2 + 1] = y;
+    }
+    return GeoUtils.JTS_FACTORY.createLineString(new PackedCoordinateSequence.Double(coords, 2, 0));
+  }
+
+  private static void time(String name, int points, int iters, Supplier<Geometry> fn) {
+    var timer = Timer.start();
+    long sum = 0;
+    for (int i = 0; i < iters; i++) {
+      sum += fn.get().getNumPoints();
+    }
+    var elapsed = timer.stop().elapsed().wall();
+    System.err.println(
+      name + " " + Format.defaultInstance().integer(points) + " points x" + iters + " took " +
+        Format.defaultInstance().duration(elapsed) + " (" +
+        Format.defaultInstance().numeric(iters * (double) points / (elapsed.toNanos() / NANOSECONDS_PER_SECOND)) +
+        " points/s, " + (sum / iters) + " points out)"
+    );
+  }
+}
@@ -1,5 +1,6 @@
 package com.onthegomap.planetiler;
 
+import com.onthegomap.planetiler.archive.OnDemandTileArchive;
 import com.onthegomap.planetiler.archive.TileArchiveConfig;
 import com.onthegomap.planetiler.archive.TileArchiveMetadata;
 import com.onthegomap.planetiler.archive.TileArchiveWriter;
@@ -10,6 +11,7 @@ import com.onthegomap.planetiler.collection.LongLongMap;
 import com.onthegomap.planetiler.collection.LongLongMultimap;
 import com.onthegomap.planetiler.config.Arguments;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.TileOrder;
 import com.onthegomap.planetiler.reader.GeoPackageReader;
 import com.onthegomap.planetiler.reader.NaturalEarthReader;
 import com.onthegomap.planetiler.reader.ShapefileReader;
@@ -27,18 +29,24 @@ import com.onthegomap.planetiler.util.FileUtils;
 import com.onthegomap.planetiler.util.Format;
 import com.onthegomap.planetiler.util.Geofabrik;
 import com.onthegomap.planetiler.util.LogUtil;
+import com.onthegomap.planetiler.util.PartialFile;
 import com.onthegomap.planetiler.util.ResourceUsage;
+import com.onthegomap.planetiler.util.TileServer;
 import com.onthegomap.planetiler.util.TileSizeStats;
+import com.onthegomap.planetiler.util.TileWeights;
 import com.onthegomap.planetiler.util.TopOsmTiles;
 import com.onthegomap.planetiler.util.Translations;
 import com.onthegomap.planetiler.util.Wikidata;
 import com.onthegomap.planetiler.worker.RunnableThatThrows;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.IntStream;
@@ -85,7 +93,11 @@ public class Planetiler {
   private final boolean downloadSources;
   private final boolean refreshSources;
   private final boolean onlyDownloadSources;
+  private final boolean streamOsmDownload;
+  private final Map<String, OsmInputFile> osmInputFiles = new HashMap<>();
+  private final List<PartialFile> streamingDownloads = new ArrayList<>();
   private final boolean parseNodeBounds;
+  private final boolean serveOnDemand;
   private Profile profile = null;
   private Function<Planetiler, Profile> profileProvider = null;
   private final PlanetilerConfig config;
@@ -101,6 +113,7 @@ public class Planetiler {
   );
   private Translations translations;
   private Path wikidataNamesFile;
+  private Wikidata.WikidataTranslations wikidataTranslations;
   private boolean useWikidata = false;
   private boolean onlyFetchWikidata = false;
   private boolean fetchWikidata = false;
@@ -120,6 +133,8 @@ public class Planetiler {
     downloadSources = onlyDownloadSources || arguments.getBoolean("download", "download sources", false);
     refreshSources =
       arguments.getBoolean("refresh_sources", "download new version of source files if they have changed", false);
+    streamOsmDownload = !onlyDownloadSources && arguments.getBoolean("download_stream_osm",
+      "start processing OSM input files while they are still downloading", false);
     fetchOsmTileStats =
       arguments.getBoolean("download_osm_tile_weights", "download OSM tile weights file", downloadSources);
     nodeDbPath = arguments.file("temp_nodes", "temp node db location", tmpDir.resolve("node.db"));
@@ -128,6 +143,9 @@ public class Planetiler {
     featureDbPath = arguments.file("temp_features", "temp feature db location", tmpDir.resolve("feature.db"));
     parseNodeBounds =
       arguments.getBoolean("osm_parse_node_bounds", "parse bounds from OSM nodes instead of header", false);
+    serveOnDemand = arguments.getBoolean("serve_on_demand",
+      "instead of writing an archive, keep sorted features and serve tiles over HTTP, encoding each on first request",
+      false);
   }
 
   /** Returns a new empty runner that will get configuration from {@code arguments}. */
@@ -181,6 +199,7 @@ public class Planetiler {
     Path path = getPath(name, "OSM input file", defaultPath, defaultUrl);
     var thisInputFile = new OsmInputFile(path, config.osmLazyReads());
     osmInputFile = thisInputFile;
+    osmInputFiles.put(name, thisInputFile);
     // fail fast if there is some issue with madvise on this system
     if (config.nodeMapMadvise() || config.multipolygonGeometryMadvise()) {
       ByteBufferUtil.init();
@@ -659,6 +678,8 @@ public class Planetiler {
       System.exit(0);
     } else if (onlyDownloadSources) {
       // don't check files if not generating map
+    } else if (serveOnDemand) {
+      // tiles get served over HTTP instead of written to the output archive
     } else if (config.append()) {
       if (!output.format().supportsAppend()) {
         throw new IllegalArgumentException("cannot append to " + output.format().id());
@@ -666,6 +687,11 @@ public class Planetiler {
       if (!output.exists()) {
         throw new IllegalArgumentException(output.uri() + " must exist when appending");
       }
+      if (config.regenerate() && output.format() != TileArchiveConfig.Format.MBTILES) {
+        throw new IllegalArgumentException("cannot regenerate tiles in " + output.format().id());
+      }
+    } else if (config.regenerate()) {
+      throw new IllegalArgumentException("--regenerate requires --append");
     } else if (overwrite || config.force()) {
       output.delete();
     } else if (output.exists()) {
@@ -690,7 +716,10 @@ public class Planetiler {
           if (!config.append() && (overwrite || config.force())) {
             FileUtils.delete(p);
           }
-          if (config.append() && !output.exists(p)) {
+          if (output.format() == TileArchiveConfig.Format.MBTILES) {
+            // mbtiles writers use temporary shards that get merged into the output when finished
+            FileUtils.delete(p);
+          } else if (config.append() && !output.exists(p)) {
             throw new IllegalArgumentException("indexed archive \"" + p + "\" must exist when appending");
           } else if (!config.append() && output.exists(p)) {
             throw new IllegalArgumentException("indexed archive \"" + p + "\" must not exist when not appending");
@@ -715,7 +744,11 @@ public class Planetiler {
         }
       }
       LOGGER.info("  sort: Sort rendered features by tile ID");
-      LOGGER.info("  archive: Encode each tile and write to {}", output);
+      if (serveOnDemand) {
+        LOGGER.info("  index: Index sorted features by tile then serve each tile on demand");
+      } else {
+        LOGGER.info("  archive: Encode each tile and write to {}", output);
+      }
     }
 
     // in case any temp files are left from a previous run...
@@ -735,9 +768,11 @@ public class Planetiler {
       Wikidata.fetch(osmInputFile(), wikidataNamesFile, config(), profile(), stats());
     }
     if (useWikidata) {
-      translations().addFallbackTranslationProvider(Wikidata.load(wikidataNamesFile));
+      wikidataTranslations = Wikidata.load(wikidataNamesFile);
+      translations().addFallbackTranslationProvider(wikidataTranslations);
     }
     if (onlyDownloadSources || onlyFetchWikidata) {
+      closeWikidataTranslations();
       return; // exit only if just fetching wikidata or downloading sources
     }
 
@@ -753,41 +788,81 @@ public class Planetiler {
     // must construct this after bounds providers are added in order to infer bounds from the input source if not provided
     tileArchiveMetadata = new TileArchiveMetadata(profile, config);
 
-    try (WriteableTileArchive archive = TileArchives.newWriter(output, config)) {
-      featureGroup =
-        FeatureGroup.newDiskBackedFeatureGroup(archive.tileOrder(), featureDbPath, profile, config, stats);
-      stats.monitorFile("nodes", nodeDbPath);
-      stats.monitorFile("features", featureDbPath);
-      stats.monitorFile("multipolygons", multipolygonPath);
-      stats.monitorFile("archive", output.getLocalPath(), archive::bytesWritten);
-
-      for (Stage stage : stages) {
-        stage.task.run();
+    if (serveOnDemand) {
+      renderFeatures(output.format().preferredOrder());
+      serveTilesOnDemand();
+    } else {
+      try (WriteableTileArchive archive = TileArchives.newWriter(output, config)) {
+        stats.monitorFile("archive", output.getLocalPath(), archive::bytesWritten);
+        renderFeatures(archive.tileOrder());
+        TileArchiveWriter.writeOutput(featureGroup, archive, archive::bytesWritten, tileArchiveMetadata,
+          layerStatsPath, config, stats);
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to write to " + output, e);
       }
-
-      LOGGER.info("Deleting node.db to make room for output file");
-      profile.release();
-      for (var inputPath : inputPaths) {
-        if (inputPath.freeAfterReading()) {
-          LOGGER.info("Deleting {} ({}) to make room for output file", inputPath.id, inputPath.path);
-          FileUtils.delete(inputPath.path());
-        }
-      }
-
-      featureGroup.prepare();
-
-      TileArchiveWriter.writeOutput(featureGroup, archive, archive::bytesWritten, tileArchiveMetadata, layerStatsPath,
-        config, stats);
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to write to " + output, e);
     }
 
+    closeWikidataTranslations();
     overallTimer.stop();
     LOGGER.info("FINISHED!");
     stats.printSummary();
     stats.close();
   }
 
+  /** Unmaps the wikidata translations cache once no more features will be processed. */
+  private void closeWikidataTranslations() throws IOException {
+    if (wikidataTranslations != null) {
+      wikidataTranslations.close();
+      wikidataTranslations = null;
+    }
+  }
+
+  /** Runs each stage to render features, then sorts them by tile in {@code tileOrder}. */
+  private void renderFeatures(TileOrder tileOrder) throws Exception {
+    featureGroup = FeatureGroup.newDiskBackedFeatureGroup(tileOrder, featureDbPath, profile, config, stats);
+    stats.monitorFile("nodes", nodeDbPath);
+    stats.monitorFile("features", featureDbPath);
+    stats.monitorFile("multipolygons", multipolygonPath);
+
+    for (Stage stage : stages) {
+      stage.task.run();
+    }
+    for (var download : streamingDownloads) {
+      download.awaitComplete();
+    }
+
+    LOGGER.info("Deleting node.db to make room for output file");
+    profile.release();
+    for (var inputPath : inputPaths) {
+      if (inputPath.freeAfterReading()) {
+        LOGGER.info("Deleting {} ({}) to make room for output file", inputPath.id, inputPath.path);
+        FileUtils.delete(inputPath.path());
+      }
+    }
+
+    featureGroup.prepare();
+  }
+
+  /**
+   * Keeps sorted features in an indexed file and serves tiles from it over HTTP until the process gets shut down,
+   * encoding each tile the first time it is requested.
+   */
+  private void serveTilesOnDemand() throws IOException, InterruptedException {
+    String host = arguments.getString("serve_bind", "address to listen on with --serve-on-demand", "127.0.0.1");
+    int port = arguments.getInteger("serve_port", "port to listen on with --serve-on-demand", 8080);
+    long cacheBytes =
+      arguments.getLong("serve_cache_size_mb", "size of in-memory tile cache with --serve-on-demand", 512) << 20;
+    var weights = Files.exists(config.tileWeights()) ? TileWeights.readFromFile(config.tileWeights()) :
+      new TileWeights();
+    var indexedTiles = featureGroup.indexTiles(featureDbPath.resolve("indexed.db"));
+    try (
+      var archive = new OnDemandTileArchive(indexedTiles, tileArchiveMetadata, config);
+      var server = new TileServer(archive, weights, cacheBytes, new InetSocketAddress(host, port), stats)
+    ) {
+      server.awaitShutdown();
+    }
+  }
+
   private void checkDiskSpace() {
     ResourceUsage readPhase = new ResourceUsage("read phase disk");
     ResourceUsage writePhase = new ResourceUsage("write phase disk");
@@ -805,8 +880,13 @@ public class Planetiler {
     // feature db persists across read/write phase
     readPhase.addDisk(featureDbPath, featureSize, "temporary feature storage");
     writePhase.addDisk(featureDbPath, featureSize, "temporary feature storage");
-    // output only needed during write phase
-    writePhase.addDisk(output.getLocalPath(), outputSize, "archive output");
+    if (serveOnDemand) {
+      // sorted features get copied uncompressed into an index that gets served from instead of writing an output
+      writePhase.addDisk(featureDbPath, featureSize, "indexed features to serve on demand");
+    } else {
+      // output only needed during write phase
+      writePhase.addDisk(output.getLocalPath(), outputSize, "archive output");
+    }
     // if the user opts to remove an input source after reading to free up additional space for the output...
     for (var input : inputPaths) {
       if (input.freeAfterReading()) {
@@ -913,7 +993,15 @@ public class Planetiler {
     Downloader downloader = Downloader.create(config());
     for (ToDownload toDownload : toDownload) {
       if (profile.caresAboutSource(toDownload.id)) {
-        downloader.add(toDownload.id, toDownload.url, toDownload.path);
+        var osmInput = osmInputFiles.get(toDownload.id);
+        if (streamOsmDownload && osmInput != null) {
+          // keep downloading in the background while the OSM reader consumes blocks as they arrive
+          var download = downloader.addStreaming(toDownload.id, toDownload.url, toDownload.path);
+          osmInput.readWhileWriting(download);
+          streamingDownloads.add(download);
+        } else {
+          downloader.add(toDownload.id, toDownload.url, toDownload.path);
+        }
       }
     }
     downloader.run();
@@ -922,7 +1010,8 @@ public class Planetiler {
 
   private void ensureInputFilesExist() {
     for (InputPath inputPath : inputPaths) {
-      if (profile.caresAboutSource(inputPath.id) && !Files.exists(inputPath.path)) {
+      boolean downloading = streamOsmDownload && osmInputFiles.containsKey(inputPath.id);
+      if (profile.caresAboutSource(inputPath.id) && !downloading && !Files.exists(inputPath.path)) {
         throw new IllegalArgumentException(inputPath.path + " does not exist. Run with --download to fetch it");
       }
     }
@@ -83,14 +83,21 @@ public class VectorTile {
   // TODO make these configurable
   private static final int EXTENT = 4096;
   private static final double SIZE = 256d;
+  /**
+   * Per-thread buffer that geometry commands get encoded into before being copied to an exact-size array, so that
+   * encoding each feature does not need to grow a new buffer from scratch.
+   */
+  private static final ThreadLocal<IntArrayList> COMMAND_BUFFER = ThreadLocal.withInitial(IntArrayList::new);
+  /** Release the per-thread command buffer after encoding an unusually large geometry instead of holding onto it. */
+  private static final int MAX_RETAINED_COMMAND_BUFFER_SIZE = 1 << 20;
   // use a treemap to ensure that layers are encoded in a consistent order
   private final Map<String, Layer> layers = new TreeMap<>();
   private LayerAttrStats.Updater.ForZoom layerStatsTracker = LayerAttrStats.Updater.ForZoom.NOOP;
 
   private static int[] getCommands(Geometry input, int scale) {
-    var encoder = new CommandEncoder(scale);
+    var encoder = new CommandEncoder(scale, COMMAND_BUFFER.get());
     encoder.accept(input);
-    return encoder.result.toArray();
+    return encoder.finish();
   }
 
   /**
@@ -419,6 +426,32 @@ public class VectorTile {
     return new VectorGeometry(getCommands(geometry, scale), GeometryType.typeOf(geometry), scale);
   }
 
+  /**
+   * Encodes linestrings directly from lists of coordinate sequences without materializing an intermediate JTS
+   * {@link LineString} or {@link MultiLineString}.
+   * <p>
+   * Produces the same result as {@link #encodeGeometry(Geometry, int)} on a linestring built from every sequence in
+   * {@code groups} that has at least 2 points.
+   *
+   * @param groups lists of linestring coordinate sequences
+   * @param scale  extra precision to store in the encoded geometry
+   * @return the encoded geometry, or {@code null} if there are no sequences with at least 2 points
+   */
+  public static VectorGeometry encodeLineStrings(List<List<CoordinateSequence>> groups, int scale) {
+    var encoder = new CommandEncoder(scale, COMMAND_BUFFER.get());
+    boolean empty = true;
+    for (List<CoordinateSequence> group : groups) {
+      for (CoordinateSequence sequence : group) {
+        if (sequence.size() > 1) {
+          encoder.encode(sequence, false, GeometryType.LINE);
+          empty = false;
+        }
+      }
+    }
+    int[] commands = encoder.finish();
+    return empty ? null : new VectorGeometry(commands, GeometryType.LINE, scale);
+  }
+
   /**
    * Returns a new {@link VectorGeometryMerger} that combines encoded geometries of the same type into a merged
    * multipoint, multilinestring, or multipolygon.
@@ -1079,14 +1112,25 @@ public class VectorTile {
    */
   private static class CommandEncoder {
 
-    final IntArrayList result = new IntArrayList();
+    final IntArrayList result;
     private final double SCALE;
     // Initial points use absolute locations, then subsequent points in a geometry use offsets so
     // need to keep track of previous x/y location during the encoding.
     int x = 0, y = 0;
 
-    CommandEncoder(int scale) {
+    CommandEncoder(int scale, IntArrayList buffer) {
       this.SCALE = (EXTENT << scale) / SIZE;
+      this.result = buffer;
+      buffer.elementsCount = 0;
+    }
+
+    /** Returns a copy of the encoded commands, and releases the shared buffer if it grew too large. */
+    int[] finish() {
+      int[] commands = result.toArray();
+      if (result.buffer.length > MAX_RETAINED_COMMAND_BUFFER_SIZE) {
+        COMMAND_BUFFER.remove();
+      }
+      return commands;
     }
 
     static boolean shouldClosePath(Geometry geometry) {
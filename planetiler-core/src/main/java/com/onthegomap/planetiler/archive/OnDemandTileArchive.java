@@ -0,0 +1,66 @@
+package com.onthegomap.planetiler.archive;
+
+import static com.onthegomap.planetiler.util.Gzip.gzip;
+
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.collection.FeatureGroup;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.util.CloseableIterator;
+import java.io.IOException;
+
+/**
+ * A {@link ReadableTileArchive} that encodes each tile from sorted features the first time it is requested instead of
+ * writing every tile up front.
+ * <p>
+ * Tiles go through the same post-processing and compression that {@link TileArchiveWriter} applies, so a tile read
+ * from here is identical to the one that would have been written to an archive.
+ */
+public class OnDemandTileArchive implements ReadableTileArchive {
+
+  private final FeatureGroup.IndexedTiles tiles;
+  private final TileArchiveMetadata metadata;
+  private final PlanetilerConfig config;
+
+  public OnDemandTileArchive(FeatureGroup.IndexedTiles tiles, TileArchiveMetadata metadata, PlanetilerConfig config) {
+    this.tiles = tiles;
+    this.metadata = metadata;
+    this.config = config;
+  }
+
+  @Override
+  public byte[] getTile(int x, int y, int z) {
+    if (z < config.minzoom() || z > config.maxzoom()) {
+      return null;
+    }
+    var features = tiles.get(TileCoord.ofXYZ(x, y, z));
+    if (features == null) {
+      return null;
+    }
+    VectorTile tile = features.getVectorTile();
+    if (config.skipFilledTiles() && tile.containsOnlyFills()) {
+      return null;
+    }
+    byte[] encoded = tile.encode();
+    return switch (config.tileCompression()) {
+      case GZIP -> gzip(encoded);
+      case NONE -> encoded;
+      case UNKNOWN -> throw new IllegalArgumentException("cannot compress \"UNKNOWN\"");
+    };
+  }
+
+  @Override
+  public CloseableIterator<TileCoord> getAllTileCoords() {
+    return tiles.tileCoords();
+  }
+
+  @Override
+  public TileArchiveMetadata metadata() {
+    return metadata;
+  }
+
+  @Override
+  public void close() throws IOException {
+    tiles.close();
+  }
+}
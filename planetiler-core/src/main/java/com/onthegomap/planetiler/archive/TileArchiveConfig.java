@@ -5,6 +5,7 @@ import static com.onthegomap.planetiler.util.LanguageUtils.nullIfEmpty;
 import com.onthegomap.planetiler.config.Arguments;
 import com.onthegomap.planetiler.files.FilesArchiveUtils;
 import com.onthegomap.planetiler.geo.TileOrder;
+import com.onthegomap.planetiler.mbtiles.Mbtiles;
 import com.onthegomap.planetiler.stream.StreamArchiveUtils;
 import com.onthegomap.planetiler.util.FileUtils;
 import java.io.IOException;
@@ -27,6 +28,8 @@ import java.util.stream.Stream;
  * {@code "C:\root\archive.mbtiles"}</li>
  * <li>A URI pointing at a file, like {@code "file:///root/archive.pmtiles"} or
  * {@code "file:///C:/root/archive.pmtiles"}</li>
+ * <li>An HTTP(S) URL to read an archive remotely with range requests, like
+ * {@code "https://example.com/archive.pmtiles"}</li>
  * </ul>
  * <p>
  * Both of these can also have archive-specific options added to the end, for example
@@ -155,12 +158,20 @@ public record TileArchiveConfig(
     return scheme == Scheme.FILE ? Path.of(URI.create(uri.toString().replaceAll("\\?.*$", ""))) : null;
   }
 
+  /**
+   * Returns the URI to fetch a remote archive from, without the archive-specific options, or {@code null} if it is a
+   * local file.
+   */
+  public URI getRemoteUri() {
+    return scheme == Scheme.FILE ? null : URI.create(uri.toString().replaceAll("\\?.*$", ""));
+  }
+
   /**
    * Returns the local <b>base</b> path for this archive, for which directories should be pre-created for.
    */
   public Path getLocalBasePath() {
     Path p = getLocalPath();
-    if (format() == Format.FILES) {
+    if (p != null && format() == Format.FILES) {
       p = FilesArchiveUtils.cleanBasePath(p);
     }
     return p;
@@ -224,15 +235,14 @@ public record TileArchiveConfig(
   public Path getPathForMultiThreadedWriter(int index) {
     return switch (format) {
       case CSV, TSV, JSON, PROTO, PBF -> StreamArchiveUtils.constructIndexedPath(getLocalPath(), index);
+      case MBTILES -> Mbtiles.shardPath(getLocalPath(), index);
       case FILES -> getLocalPath();
       default -> throw new UnsupportedOperationException("not supported by " + format);
     };
   }
 
   public enum Format {
-    MBTILES("mbtiles",
-      false /* TODO mbtiles could support append in the future by using insert statements with an "on conflict"-clause (i.e. upsert) and by creating tables only if they don't exist, yet */,
-      false, TileOrder.TMS),
+    MBTILES("mbtiles", true, true, TileOrder.TMS),
     PMTILES("pmtiles", false, false, TileOrder.HILBERT),
 
     // should be before PBF in order to avoid collisions
@@ -294,7 +304,9 @@ public record TileArchiveConfig(
   }
 
   public enum Scheme {
-    FILE("file");
+    FILE("file"),
+    HTTP("http"),
+    HTTPS("https");
 
     private final String id;
 
@@ -17,6 +17,7 @@ import com.onthegomap.planetiler.util.LayerAttrStats;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalInt;
 import java.util.TreeMap;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
@@ -170,6 +171,85 @@ public record TileArchiveMetadata(
       maxzoom, json, others, tileCompression);
   }
 
+  /**
+   * Returns a copy of this instance combined with {@code previous}, the metadata of an archive that new tiles are getting
+   * appended to, so the result describes both the existing and the new tiles.
+   * <p>
+   * Bounds and zoom ranges get widened to include both, vector layers get merged by ID, and any other value set on this
+   * instance replaces the previous one.
+   */
+  public TileArchiveMetadata mergedWith(TileArchiveMetadata previous) {
+    if (previous == null) {
+      return this;
+    }
+    Envelope mergedBounds = bounds == null ? previous.bounds : bounds.copy();
+    if (bounds != null && previous.bounds != null) {
+      mergedBounds.expandToInclude(previous.bounds);
+    }
+    Coordinate mergedCenter = center == null ? previous.center : center;
+    if (mergedBounds != null && !mergedBounds.equals(bounds)) {
+      mergedCenter = new Coordinate(mergedBounds.centre().getX(), mergedBounds.centre().getY(),
+        GeoUtils.getZoomFromLonLatBounds(mergedBounds));
+    }
+    Map<String, String> mergedOthers = new LinkedHashMap<>();
+    if (previous.others != null) {
+      mergedOthers.putAll(previous.others);
+    }
+    if (others != null) {
+      mergedOthers.putAll(others);
+    }
+    return new TileArchiveMetadata(
+      coalesce(name, previous.name),
+      coalesce(description, previous.description),
+      coalesce(attribution, previous.attribution),
+      coalesce(version, previous.version),
+      coalesce(type, previous.type),
+      coalesce(format, previous.format),
+      mergedBounds,
+      mergedCenter,
+      minzoom == null || previous.minzoom == null ? coalesce(minzoom, previous.minzoom) :
+        Math.min(minzoom, previous.minzoom),
+      maxzoom == null || previous.maxzoom == null ? coalesce(maxzoom, previous.maxzoom) :
+        Math.max(maxzoom, previous.maxzoom),
+      TileArchiveMetadataJson.create(mergeLayers(previous.vectorLayers(), vectorLayers())),
+      mergedOthers,
+      coalesce(tileCompression, previous.tileCompression)
+    );
+  }
+
+  private static <T> T coalesce(T a, T b) {
+    return a != null ? a : b;
+  }
+
+  private static List<LayerAttrStats.VectorLayer> mergeLayers(List<LayerAttrStats.VectorLayer> previous,
+    List<LayerAttrStats.VectorLayer> current) {
+    if (previous == null || current == null) {
+      return coalesce(current, previous);
+    }
+    Map<String, LayerAttrStats.VectorLayer> byId = new TreeMap<>();
+    for (var layer : previous) {
+      byId.put(layer.id(), layer);
+    }
+    for (var layer : current) {
+      byId.merge(layer.id(), layer, (a, b) -> {
+        Map<String, LayerAttrStats.FieldType> fields = new TreeMap<>(a.fields());
+        b.fields().forEach((key, type) -> fields.merge(key, type, LayerAttrStats.FieldType::merge));
+        return new LayerAttrStats.VectorLayer(
+          b.id(),
+          fields,
+          b.description().isPresent() ? b.description() : a.description(),
+          a.minzoom().isPresent() && b.minzoom().isPresent() ?
+            OptionalInt.of(Math.min(a.minzoom().getAsInt(), b.minzoom().getAsInt())) :
+            (b.minzoom().isPresent() ? b.minzoom() : a.minzoom()),
+          a.maxzoom().isPresent() && b.maxzoom().isPresent() ?
+            OptionalInt.of(Math.max(a.maxzoom().getAsInt(), b.maxzoom().getAsInt())) :
+            (b.maxzoom().isPresent() ? b.maxzoom() : a.maxzoom())
+        );
+      });
+    }
+    return List.copyOf(byId.values());
+  }
+
   /*
    * few workarounds to make collect unknown fields to others work,
    * because @JsonAnySetter does not yet work on constructor/creator arguments
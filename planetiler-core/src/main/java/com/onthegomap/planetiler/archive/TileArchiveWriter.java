@@ -1,8 +1,8 @@
 package com.onthegomap.planetiler.archive;
 
-import static com.onthegomap.planetiler.util.Gzip.gzip;
 import static com.onthegomap.planetiler.worker.Worker.joinFutures;
 
+import com.google.protobuf.CodedOutputStream;
 import com.onthegomap.planetiler.VectorTile;
 import com.onthegomap.planetiler.collection.FeatureGroup;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
@@ -14,6 +14,7 @@ import com.onthegomap.planetiler.stats.Stats;
 import com.onthegomap.planetiler.stats.Timer;
 import com.onthegomap.planetiler.util.DiskBacked;
 import com.onthegomap.planetiler.util.Format;
+import com.onthegomap.planetiler.util.Gzip;
 import com.onthegomap.planetiler.util.Hashing;
 import com.onthegomap.planetiler.util.LayerAttrStats;
 import com.onthegomap.planetiler.util.TileSizeStats;
@@ -26,11 +27,12 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.OptionalLong;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -87,6 +89,7 @@ public class TileArchiveWriter {
   public static void writeOutput(FeatureGroup features, WriteableTileArchive output, DiskBacked fileSize,
     TileArchiveMetadata tileArchiveMetadata, Path layerStatsPath, PlanetilerConfig config, Stats stats) {
     var timer = stats.startStage("archive");
+    stats.monitorInMemoryObject("archive", output);
 
     int chunksToRead = Math.max(1, features.chunksToRead());
     int readThreads = Math.min(config.featureReadThreads(), chunksToRead);
@@ -153,6 +156,9 @@ public class TileArchiveWriter {
 
     // ensure to initialize the archive BEFORE starting to write any tiles
     output.initialize();
+    if (config.regenerate()) {
+      output.deleteTiles(config.bounds().tileExtents(), config.minzoom(), config.maxzoom());
+    }
 
     // the tile writer will wait on the result of each batch to ensure tiles are written in order
     WorkerPipeline<TileBatch> writeBranch = pipeline.readFromQueue(writerQueue)
@@ -261,8 +267,9 @@ public class TileArchiveWriter {
      * To optimize emitting many identical consecutive tiles (like large ocean areas), memoize output to avoid
      * recomputing if the input hasn't changed.
      */
-    byte[] lastBytes = null, lastEncoded = null;
-    Long lastTileDataHash = null;
+    byte[] lastBytes = null;
+    int lastEncodedLength = 0;
+    Hashing.Hash128 lastTileDataHash = null;
     boolean lastIsFill = false;
     List<TileSizeStats.LayerStats> lastLayerStats = null;
     boolean skipFilled = config.skipFilledTiles();
@@ -270,72 +277,85 @@ public class TileArchiveWriter {
 
     var tileStatsUpdater = tileStats.threadLocalUpdater();
     var layerAttrStatsUpdater = layerAttrStats.handlerForThread();
-    for (TileBatch batch : prev) {
-      List<TileEncodingResult> result = new ArrayList<>(batch.size());
-      FeatureGroup.TileFeatures last = null;
-      // each batch contains tile ordered by tile-order ID ascending
-      for (int i = 0; i < batch.in.size(); i++) {
-        FeatureGroup.TileFeatures tileFeatures = batch.in.get(i);
-        featuresProcessed.incBy(tileFeatures.getNumFeaturesProcessed());
-        byte[] bytes, encoded;
-        List<TileSizeStats.LayerStats> layerStats;
-        Long tileDataHash;
-        if (tileFeatures.hasSameContents(last)) {
-          bytes = lastBytes;
-          encoded = lastEncoded;
-          tileDataHash = lastTileDataHash;
-          layerStats = lastLayerStats;
-          memoizedTiles.inc();
-        } else {
-          VectorTile tile = tileFeatures.getVectorTile(layerAttrStatsUpdater);
-          if (skipFilled && (lastIsFill = tile.containsOnlyFills())) {
-            encoded = null;
-            layerStats = null;
-            bytes = null;
+    byte[] encodeBuffer = new byte[1 << 16];
+    try (var compressor = new Gzip.Compressor()) {
+      for (TileBatch batch : prev) {
+        List<TileEncodingResult> result = new ArrayList<>(batch.size());
+        FeatureGroup.TileFeatures last = null;
+        // each batch contains tile ordered by tile-order ID ascending
+        for (int i = 0; i < batch.in.size(); i++) {
+          FeatureGroup.TileFeatures tileFeatures = batch.in.get(i);
+          featuresProcessed.incBy(tileFeatures.getNumFeaturesProcessed());
+          byte[] bytes;
+          int encodedLength;
+          List<TileSizeStats.LayerStats> layerStats;
+          Hashing.Hash128 tileDataHash;
+          if (tileFeatures.hasSameContents(last)) {
+            bytes = lastBytes;
+            encodedLength = lastEncodedLength;
+            tileDataHash = lastTileDataHash;
+            layerStats = lastLayerStats;
+            memoizedTiles.inc();
           } else {
-            var proto = tile.toProto();
-            encoded = proto.toByteArray();
-            bytes = switch (config.tileCompression()) {
-              case GZIP -> gzip(encoded);
-              case NONE -> encoded;
-              case UNKNOWN -> throw new IllegalArgumentException("cannot compress \"UNKNOWN\"");
-            };
-            layerStats = TileSizeStats.computeTileStats(proto);
-            if (encoded.length > config.tileWarningSizeBytes()) {
-              LOGGER.warn("{} {}kb uncompressed",
-                tileFeatures.tileCoord(),
-                encoded.length / 1024);
+            VectorTile tile = tileFeatures.getVectorTile(layerAttrStatsUpdater);
+            if (skipFilled && (lastIsFill = tile.containsOnlyFills())) {
+              encodedLength = 0;
+              layerStats = null;
+              bytes = null;
+            } else {
+              var proto = tile.toProto();
+              // serialize into a buffer that gets reused for every tile on this thread to avoid allocating an
+              // intermediate array for each tile before it gets compressed
+              encodedLength = proto.getSerializedSize();
+              if (encodeBuffer.length < encodedLength) {
+                encodeBuffer = new byte[Math.max(encodedLength, encodeBuffer.length * 2)];
+              }
+              var output = CodedOutputStream.newInstance(encodeBuffer, 0, encodedLength);
+              proto.writeTo(output);
+              output.checkNoSpaceLeft();
+              bytes = switch (config.tileCompression()) {
+                case GZIP -> compressor.gzip(encodeBuffer, 0, encodedLength);
+                case NONE -> Arrays.copyOf(encodeBuffer, encodedLength);
+                case UNKNOWN -> throw new IllegalArgumentException("cannot compress \"UNKNOWN\"");
+              };
+              layerStats = TileSizeStats.computeTileStats(proto);
+              if (encodedLength > config.tileWarningSizeBytes()) {
+                LOGGER.warn("{} {}kb uncompressed",
+                  tileFeatures.tileCoord(),
+                  encodedLength / 1024);
+              }
             }
+            lastLayerStats = layerStats;
+            lastEncodedLength = encodedLength;
+            lastBytes = bytes;
+            last = tileFeatures;
+            if (archive.deduplicates() && bytes != null &&
+              (bytes.length <= config.tileDedupeMaxBytes() || tile.likelyToBeDuplicated())) {
+              tileDataHash = generateContentHash(bytes);
+            } else {
+              tileDataHash = null;
+            }
+            lastTileDataHash = tileDataHash;
           }
-          lastLayerStats = layerStats;
-          lastEncoded = encoded;
-          lastBytes = bytes;
-          last = tileFeatures;
-          if (archive.deduplicates() && tile.likelyToBeDuplicated() && bytes != null) {
-            tileDataHash = generateContentHash(bytes);
-          } else {
-            tileDataHash = null;
+          if ((!skipFilled || !lastIsFill) && bytes != null) {
+            tileStatsUpdater.recordTile(tileFeatures.tileCoord(), bytes.length, layerStats);
+            List<String> layerStatsRows = config.outputLayerStats() ?
+              layerStatsSerializer.formatOutputRows(tileFeatures.tileCoord(), bytes.length, layerStats) :
+              List.of();
+            result.add(
+              new TileEncodingResult(
+                tileFeatures.tileCoord(),
+                bytes,
+                encodedLength,
+                Optional.ofNullable(tileDataHash),
+                layerStatsRows
+              )
+            );
           }
-          lastTileDataHash = tileDataHash;
-        }
-        if ((!skipFilled || !lastIsFill) && bytes != null) {
-          tileStatsUpdater.recordTile(tileFeatures.tileCoord(), bytes.length, layerStats);
-          List<String> layerStatsRows = config.outputLayerStats() ?
-            layerStatsSerializer.formatOutputRows(tileFeatures.tileCoord(), bytes.length, layerStats) :
-            List.of();
-          result.add(
-            new TileEncodingResult(
-              tileFeatures.tileCoord(),
-              bytes,
-              encoded.length,
-              tileDataHash == null ? OptionalLong.empty() : OptionalLong.of(tileDataHash),
-              layerStatsRows
-            )
-          );
         }
+        // hand result off to writer
+        batch.out.complete(result);
       }
-      // hand result off to writer
-      batch.out.complete(result);
     }
   }
 
@@ -407,12 +427,12 @@ public class TileArchiveWriter {
   }
 
   /**
-   * Generates a hash over encoded and compressed tile.
+   * Generates a 128-bit hash over encoded and compressed tile.
    * <p>
    * Used as an optimization to avoid writing the same (mostly ocean) tiles over and over again.
    */
-  public static long generateContentHash(byte[] bytes) {
-    return Hashing.fnv1a64(bytes);
+  public static Hashing.Hash128 generateContentHash(byte[] bytes) {
+    return Hashing.murmur3x64_128(bytes);
   }
 
   /**
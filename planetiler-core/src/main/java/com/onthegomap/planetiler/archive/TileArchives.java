@@ -1,5 +1,6 @@
 package com.onthegomap.planetiler.archive;
 
+import com.onthegomap.planetiler.config.Arguments;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.files.ReadableFilesArchive;
 import com.onthegomap.planetiler.files.WriteableFilesArchive;
@@ -10,6 +11,7 @@ import com.onthegomap.planetiler.stream.StreamArchiveConfig;
 import com.onthegomap.planetiler.stream.WriteableCsvArchive;
 import com.onthegomap.planetiler.stream.WriteableJsonStreamArchive;
 import com.onthegomap.planetiler.stream.WriteableProtoStreamArchive;
+import com.onthegomap.planetiler.util.HttpRangeChannel;
 import java.io.IOException;
 import java.nio.file.Path;
 
@@ -44,13 +46,17 @@ public class TileArchives {
    */
   public static WriteableTileArchive newWriter(TileArchiveConfig archive, PlanetilerConfig config)
     throws IOException {
+    if (archive.scheme() != TileArchiveConfig.Scheme.FILE) {
+      throw new UnsupportedOperationException("writing to " + archive.scheme().id() + " is not supported");
+    }
     var options = archive.applyFallbacks(config.arguments());
     var format = archive.format();
     return switch (format) {
       case MBTILES ->
         // pass-through legacy arguments for fallback
         Mbtiles.newWriteToFileDatabase(archive.getLocalPath(), options.orElse(config.arguments()
-          .subset(Mbtiles.LEGACY_VACUUM_ANALYZE, Mbtiles.LEGACY_COMPACT_DB, Mbtiles.LEGACY_SKIP_INDEX_CREATION)));
+          .subset(Mbtiles.LEGACY_VACUUM_ANALYZE, Mbtiles.LEGACY_COMPACT_DB, Mbtiles.LEGACY_SKIP_INDEX_CREATION)),
+          config.tileWriteThreads(), config.append());
       case PMTILES -> WriteablePmtiles.newWriteToFile(archive.getLocalPath());
       case CSV, TSV -> WriteableCsvArchive.newWriteToFile(format, archive.getLocalPath(),
         new StreamArchiveConfig(config, options));
@@ -70,6 +76,9 @@ public class TileArchives {
   public static ReadableTileArchive newReader(TileArchiveConfig archive, PlanetilerConfig config)
     throws IOException {
     var options = archive.applyFallbacks(config.arguments());
+    if (archive.scheme() != TileArchiveConfig.Scheme.FILE) {
+      return newRemoteReader(archive, options, config);
+    }
     return switch (archive.format()) {
       case MBTILES -> Mbtiles.newReadOnlyDatabase(archive.getLocalPath(), options);
       case PMTILES -> ReadablePmtiles.newReadFromFile(archive.getLocalPath());
@@ -80,6 +89,19 @@ public class TileArchives {
     };
   }
 
+  private static ReadableTileArchive newRemoteReader(TileArchiveConfig archive, Arguments options,
+    PlanetilerConfig config) throws IOException {
+    if (archive.format() != TileArchiveConfig.Format.PMTILES) {
+      // sqlite-jdbc can only open local files, and other formats don't support random access
+      throw new UnsupportedOperationException(
+        "reading " + archive.format().id() + " over " + archive.scheme().id() + " is not supported");
+    }
+    int pageSize = options.getInteger("http_page_size_kb", "size of each range request to cache in KB", 64) * 1024;
+    long cacheSize = options.getLong("http_cache_size_mb", "size of the remote archive page cache in MB", 256) << 20;
+    return new ReadablePmtiles(
+      new HttpRangeChannel(archive.getRemoteUri(), config, config.tmpDir(), pageSize, cacheSize));
+  }
+
   /** Alias for {@link #newReader(String, PlanetilerConfig)}. */
   public static ReadableTileArchive newReader(Path path, PlanetilerConfig config) throws IOException {
     return newReader(path.toString(), config);
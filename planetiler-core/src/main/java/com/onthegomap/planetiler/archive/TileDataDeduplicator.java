@@ -0,0 +1,119 @@
+package com.onthegomap.planetiler.archive;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.onthegomap.planetiler.collection.Hppc;
+import com.onthegomap.planetiler.util.Hashing;
+import com.onthegomap.planetiler.util.MemoryEstimator;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Tracks the tile contents that an archive has stored so far by their 128-bit content hash, so that identical tiles
+ * can reference the same stored data.
+ * <p>
+ * Hashes are keyed by their lower 64 bits, which point to the upper 64 bits and the ID stored next to each other in a
+ * single array, and a match also needs the upper 64 bits to be equal. The most recently stored contents are kept in a
+ * cache limited by size, and a match against cached contents also needs the bytes to be equal. When hashes collide,
+ * the tile gets stored again instead of pointing at the wrong data.
+ * <p>
+ * Every distinct hash takes about 40 bytes of memory that is only released when the archive is done.
+ */
+@NotThreadSafe
+public class TileDataDeduplicator implements MemoryEstimator.HasEstimate {
+
+  public static final long NOT_FOUND = -1;
+  public static final long DEFAULT_CACHE_BYTES = 16L << 20;
+  // rough size of a LinkedHashMap entry and the boxed key that reference each cached array
+  private static final long CACHE_ENTRY_OVERHEAD_BYTES = 64;
+
+  private final LongIntHashMap indexByHash = Hppc.newLongIntHashMap();
+  // upper 64 bits of the hash followed by the ID, for each distinct hash
+  private final LongArrayList highAndId = new LongArrayList();
+  private final LinkedHashMap<Long, byte[]> recent = new LinkedHashMap<>(16, 0.75f, true);
+  private final long maxCacheBytes;
+  private long cacheBytes = 0;
+  private long collisions = 0;
+
+  public TileDataDeduplicator(long maxCacheBytes) {
+    this.maxCacheBytes = maxCacheBytes;
+  }
+
+  public TileDataDeduplicator() {
+    this(DEFAULT_CACHE_BYTES);
+  }
+
+  /**
+   * Returns the ID that contents identical to {@code data} were stored with, or {@link #NOT_FOUND} if they have not been
+   * stored yet or can't be told apart from other contents with the same hash.
+   */
+  public long find(Hashing.Hash128 hash, byte[] data) {
+    int index = indexByHash.getOrDefault(hash.low(), -1);
+    if (index < 0) {
+      return NOT_FOUND;
+    }
+    if (highAndId.get(index) != hash.high()) {
+      collisions++;
+      return NOT_FOUND;
+    }
+    byte[] cached = recent.get(hash.low());
+    if (cached != null && !Arrays.equals(cached, data)) {
+      collisions++;
+      return NOT_FOUND;
+    }
+    return highAndId.get(index + 1);
+  }
+
+  /** Shortcut for {@link #find(Hashing.Hash128, byte[])} using the hash of {@code tile}. */
+  public long find(TileEncodingResult tile) {
+    return tile.tileDataHash().isEmpty() ? NOT_FOUND : find(tile.tileDataHash().get(), tile.tileData());
+  }
+
+  /**
+   * Records that {@code data} was stored with {@code id}, unless other contents with the same hash were stored first.
+   *
+   * @return true if the contents were recorded, false if the hash was already taken
+   */
+  public boolean put(Hashing.Hash128 hash, byte[] data, long id) {
+    if (indexByHash.containsKey(hash.low())) {
+      return false;
+    }
+    indexByHash.put(hash.low(), highAndId.size());
+    highAndId.add(hash.high(), id);
+    if (data.length <= maxCacheBytes) {
+      recent.put(hash.low(), data);
+      cacheBytes += data.length;
+      var iterator = recent.values().iterator();
+      while (cacheBytes > maxCacheBytes && iterator.hasNext()) {
+        cacheBytes -= iterator.next().length;
+        iterator.remove();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Shortcut for {@link #put(Hashing.Hash128, byte[], long)} using the hash of {@code tile}, returns false if the tile
+   * does not have a hash.
+   */
+  public boolean put(TileEncodingResult tile, long id) {
+    return tile.tileDataHash().isPresent() && put(tile.tileDataHash().get(), tile.tileData(), id);
+  }
+
+  /** Returns the number of distinct contents stored so far. */
+  public int size() {
+    return indexByHash.size();
+  }
+
+  /** Returns the number of tiles whose hash matched different contents. */
+  public long collisions() {
+    return collisions;
+  }
+
+  @Override
+  public long estimateMemoryUsageBytes() {
+    return MemoryEstimator.estimateSize(indexByHash) + MemoryEstimator.estimateSize(highAndId) + cacheBytes +
+      recent.size() * CACHE_ENTRY_OVERHEAD_BYTES;
+  }
+}
@@ -1,9 +1,11 @@
 package com.onthegomap.planetiler.archive;
 
 import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.util.Hashing;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.OptionalLong;
 import javax.annotation.Nonnull;
 
@@ -12,15 +14,18 @@ public record TileEncodingResult(
   @Nonnull byte[] tileData,
   int rawTileSize,
   /* will always be empty in non-compact mode and might also be empty in compact mode */
-  OptionalLong tileDataHash,
+  Optional<Hashing.Hash128> tileDataHash,
   List<String> layerStats
 ) {
+  /** Creates a result with a 64-bit {@code tileDataHash} that gets used as the lower half of the 128-bit hash. */
   public TileEncodingResult(
     TileCoord coord,
     byte[] tileData,
     OptionalLong tileDataHash
   ) {
-    this(coord, tileData, tileData.length, tileDataHash, List.of());
+    this(coord, tileData, tileData.length,
+      tileDataHash.isPresent() ? Optional.of(new Hashing.Hash128(tileDataHash.getAsLong(), 0)) : Optional.empty(),
+      List.of());
   }
 
   @Override
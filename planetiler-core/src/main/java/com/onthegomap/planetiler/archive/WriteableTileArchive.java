@@ -1,7 +1,9 @@
 package com.onthegomap.planetiler.archive;
 
 import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.TileExtents;
 import com.onthegomap.planetiler.geo.TileOrder;
+import com.onthegomap.planetiler.util.MemoryEstimator;
 import java.io.Closeable;
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -12,7 +14,7 @@ import javax.annotation.concurrent.NotThreadSafe;
  * See {@link ReadableTileArchive} for the read API.
  */
 @NotThreadSafe
-public interface WriteableTileArchive extends Closeable {
+public interface WriteableTileArchive extends Closeable, MemoryEstimator.HasEstimate {
 
   /**
    * Returns true if this tile archive deduplicates tiles with the same content.
@@ -32,6 +34,17 @@ public interface WriteableTileArchive extends Closeable {
    */
   default void initialize() {}
 
+  /**
+   * Called after {@link #initialize()} when regenerating part of an existing archive to remove every tile within
+   * {@code extents} from {@code minzoom} to {@code maxzoom}, so that tiles in that area which don't get written again
+   * end up missing instead of stale.
+   *
+   * @throws UnsupportedOperationException if this archive can't delete tiles in place
+   */
+  default void deleteTiles(TileExtents extents, int minzoom, int maxzoom) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support deleting tiles");
+  }
+
   /**
    * Implementations should return a object that implements {@link TileWriter} The specific TileWriter returned might
    * depend on {@link PlanetilerConfig}.
@@ -46,6 +59,12 @@ public interface WriteableTileArchive extends Closeable {
 
   long bytesWritten();
 
+  /** Returns the approximate number of bytes of memory used to keep track of the tiles written so far. */
+  @Override
+  default long estimateMemoryUsageBytes() {
+    return 0;
+  }
+
   interface TileWriter extends Closeable {
 
     void write(TileEncodingResult encodingResult);
@@ -0,0 +1,159 @@
+package com.onthegomap.planetiler.collection;
+
+import com.onthegomap.planetiler.util.MemoryEstimator;
+import com.onthegomap.planetiler.util.SeenTwiceFilter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Assigns a small integer ID to each distinct set of feature attributes so that {@link FeatureGroup} can store a
+ * reference to repeated attribute sets (i.e. {@code class=residential} on millions of roads) instead of re-encoding
+ * every key and value for each feature.
+ * <p>
+ * A set only gets an ID the second time it is seen, tracked by hash in a {@link SeenTwiceFilter}, so that sets with
+ * unique values like names don't fill the dictionary. Once {@code maxSets} distinct sets have been stored, or for a set
+ * that has only been seen once, {@link #encode(Map)} returns {@code -1} and callers need to encode attributes inline.
+ */
+@ThreadSafe
+class AttributeSetDictionary implements MemoryEstimator.HasEstimate {
+
+  private static final int PAGE_BITS = 12;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+  // rough size of the key in setToId, the decoded set, and the map entry that references them
+  private static final long SET_OVERHEAD_BYTES = 250;
+  private static final long ATTR_BYTES = 100;
+  private final int maxSets;
+  private final Map<Map<String, Object>, Integer> setToId;
+  // allocate pages lazily so a large limit does not cost anything until it is used
+  private final Map<String, Object>[][] idToSet;
+  private final SeenTwiceFilter seen;
+  private final AtomicInteger nextId = new AtomicInteger(0);
+  private final AtomicLong bytes = new AtomicLong(0);
+  private volatile boolean full = false;
+
+  @SuppressWarnings("unchecked")
+  AttributeSetDictionary(int maxSets) {
+    this.maxSets = maxSets;
+    setToId = new ConcurrentHashMap<>();
+    idToSet = new Map[(maxSets + PAGE_SIZE - 1) >>> PAGE_BITS][];
+    seen = new SeenTwiceFilter(maxSets);
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized Map<String, Object>[] page(int id) {
+    int pageIndex = id >>> PAGE_BITS;
+    var page = idToSet[pageIndex];
+    if (page == null) {
+      idToSet[pageIndex] = page = new Map[PAGE_SIZE];
+      bytes.addAndGet(MemoryEstimator.estimateObjectArraySize(PAGE_SIZE));
+    }
+    return page;
+  }
+
+  private static boolean hasNullValue(Map<String, Object> attrs) {
+    for (Object value : attrs.values()) {
+      if (value == null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the same value as {@code withoutNulls(attrs).hashCode()} without making a copy. */
+  private static int hashWithoutNulls(Map<String, Object> attrs) {
+    int hash = 0;
+    for (var entry : attrs.entrySet()) {
+      Object value = entry.getValue();
+      if (value != null) {
+        hash += entry.getKey().hashCode() ^ value.hashCode();
+      }
+    }
+    return hash;
+  }
+
+  private static Map<String, Object> withoutNulls(Map<String, Object> attrs) {
+    Map<String, Object> result = HashMap.newHashMap(attrs.size());
+    for (var entry : attrs.entrySet()) {
+      if (entry.getValue() != null) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  /** Returns the value that decoding {@code value} from temp storage would produce. */
+  private static Object normalize(Object value) {
+    return switch (value) {
+      case String string -> string;
+      case Integer integer -> integer.longValue();
+      case Long longValue -> longValue;
+      case Float floatValue -> floatValue.doubleValue();
+      case Double doubleValue -> doubleValue;
+      case Boolean booleanValue -> booleanValue;
+      case Object other -> other.toString();
+    };
+  }
+
+  /**
+   * Returns the ID for the non-null entries in {@code attrs}, or {@code -1} if the dictionary does not contain it and
+   * can't add it yet.
+   */
+  int encode(Map<String, Object> attrs) {
+    boolean hasNull = hasNullValue(attrs);
+    // optimization to avoid copying attrs in the majority case when the dictionary already contains them
+    Integer result = hasNull ? null : setToId.get(attrs);
+    if (result != null) {
+      return result;
+    } else if (full && !hasNull) {
+      return -1;
+    }
+    // don't copy attrs to look it up when it can't be added, this also skips sets with nulls once the dictionary is full
+    if (full || !seen.seenBefore(hashWithoutNulls(attrs))) {
+      return -1;
+    }
+    // copy the key so later changes to attrs do not affect the dictionary
+    Map<String, Object> key = withoutNulls(attrs);
+    result = setToId.computeIfAbsent(key, k -> {
+      int id = nextId.getAndIncrement();
+      if (id >= maxSets) {
+        full = true;
+        return null;
+      }
+      Map<String, Object> decoded = HashMap.newHashMap(k.size());
+      for (var entry : k.entrySet()) {
+        decoded.put(entry.getKey(), normalize(entry.getValue()));
+      }
+      page(id)[id & PAGE_MASK] = Collections.unmodifiableMap(decoded);
+      bytes.addAndGet(SET_OVERHEAD_BYTES + ATTR_BYTES * k.size());
+      return id;
+    });
+    return result == null ? -1 : result;
+  }
+
+  /**
+   * Returns the attribute map for {@code id}, which is shared by every feature with this attribute set and can not be
+   * modified.
+   *
+   * @throws IllegalArgumentException if there is no attribute set for {@code id}
+   */
+  Map<String, Object> decode(int id) {
+    var page = id >= 0 && id < maxSets ? idToSet[id >>> PAGE_BITS] : null;
+    Map<String, Object> result = page == null ? null : page[id & PAGE_MASK];
+    if (result == null) {
+      throw new IllegalArgumentException("No attribute set for " + id);
+    }
+    return result;
+  }
+
+  @Override
+  public long estimateMemoryUsageBytes() {
+    return seen.estimateMemoryUsageBytes() +
+      MemoryEstimator.estimateObjectArraySize(idToSet.length) + bytes.get();
+  }
+}
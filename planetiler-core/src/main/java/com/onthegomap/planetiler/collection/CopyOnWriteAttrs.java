@@ -0,0 +1,147 @@
+package com.onthegomap.planetiler.collection;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Attributes of a decoded feature that read from an attribute set shared by every feature with the same attributes,
+ * and only make a private copy the first time a profile changes them while post-processing.
+ * <p>
+ * Most features are never changed after they are decoded, so this avoids copying the shared set from
+ * {@link AttributeSetDictionary} for every feature in every tile.
+ */
+@NotThreadSafe
+final class CopyOnWriteAttrs extends AbstractMap<String, Object> {
+
+  private final Map<String, Object> shared;
+  private Map<String, Object> copy = null;
+
+  CopyOnWriteAttrs(Map<String, Object> shared) {
+    this.shared = shared;
+  }
+
+  /** Returns the shared attribute set this reads from until it gets modified. */
+  Map<String, Object> shared() {
+    return shared;
+  }
+
+  private Map<String, Object> current() {
+    return copy != null ? copy : shared;
+  }
+
+  private Map<String, Object> writable() {
+    if (copy == null) {
+      copy = new HashMap<>(shared);
+    }
+    return copy;
+  }
+
+  @Override
+  public int size() {
+    return current().size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return current().isEmpty();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return current().containsKey(key);
+  }
+
+  @Override
+  public Object get(Object key) {
+    return current().get(key);
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    return writable().put(key, value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    return current().containsKey(key) ? writable().remove(key) : null;
+  }
+
+  @Override
+  public void putAll(Map<? extends String, ?> m) {
+    writable().putAll(m);
+  }
+
+  @Override
+  public void clear() {
+    writable().clear();
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        if (copy != null) {
+          return copy.entrySet().iterator();
+        }
+        // the shared set never changes, so keep iterating over it after a change makes a copy
+        Iterator<Entry<String, Object>> iterator = shared.entrySet().iterator();
+        return new Iterator<>() {
+          private Entry<String, Object> last;
+
+          @Override
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          @Override
+          public Entry<String, Object> next() {
+            Entry<String, Object> entry = iterator.next();
+            last = entry;
+            return new SimpleEntry<>(entry) {
+              @Override
+              public Object setValue(Object value) {
+                writable().put(entry.getKey(), value);
+                return super.setValue(value);
+              }
+            };
+          }
+
+          @Override
+          public void remove() {
+            if (last == null) {
+              throw new IllegalStateException();
+            }
+            writable().remove(last.getKey());
+            last = null;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return CopyOnWriteAttrs.this.size();
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o == this || current().equals(o instanceof CopyOnWriteAttrs other ? other.current() : o);
+  }
+
+  @Override
+  public int hashCode() {
+    return current().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return current().toString();
+  }
+}
@@ -55,6 +55,9 @@ import org.slf4j.LoggerFactory;
  * chunk. The sort process sorts the chunks, limiting the number of parallel threads by CPU cores and available RAM.
  * Reads do a k-way merge of the sorted chunks using a priority queue of minimum values from each.
  * <p>
+ * Each chunk file starts with the {@link FeatureCodec#VERSION} byte, followed by a key, length, and value for every
+ * feature.
+ * <p>
  * Only supports single-threaded writes and reads.
  */
 @NotThreadSafe
@@ -265,6 +268,13 @@ class ExternalMergeSort implements FeatureSort {
     return chunks.size();
   }
 
+  @Override
+  public void release() {
+    for (var chunk : chunks) {
+      chunk.remove();
+    }
+  }
+
   private void tryMadviseSequential(ByteBuffer buffer) {
     try {
       ByteBufferUtil.posixMadvise(buffer, ByteBufferUtil.Madvice.SEQUENTIAL);
@@ -301,6 +311,7 @@ class ExternalMergeSort implements FeatureSort {
           inputStream = new GZIPInputStream(inputStream);
         }
         input = new DataInputStream(inputStream);
+        FeatureCodec.checkVersion(input.readByte(), path);
         next = readNextFeature();
       } catch (IOException e) {
         throw new UncheckedIOException(e);
@@ -346,6 +357,7 @@ class ExternalMergeSort implements FeatureSort {
           rawOutputStream = new FastGzipOutputStream(rawOutputStream);
         }
         this.out = new DataOutputStream(rawOutputStream);
+        out.writeByte(FeatureCodec.VERSION);
       } catch (IOException e) {
         throw new UncheckedIOException(e);
       }
@@ -444,10 +456,12 @@ class ExternalMergeSort implements FeatureSort {
       try {
         this.channel =
           FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
-        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, chunkSizeLimit);
+        // leave room for the version header
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, chunkSizeLimit + 1L);
         if (madvise) {
           tryMadviseSequential(buffer);
         }
+        buffer.put(FeatureCodec.VERSION);
       } catch (IOException e) {
         throw new UncheckedIOException(e);
       }
@@ -610,6 +624,7 @@ class ExternalMergeSort implements FeatureSort {
           // give the OS a hint that pages will be read sequentially so it can read-ahead and drop as soon as we're done
           tryMadviseSequential(buffer);
         }
+        FeatureCodec.checkVersion(buffer.get(), path);
         next = readNextFeature();
       } catch (IOException e) {
         throw new UncheckedIOException(e);
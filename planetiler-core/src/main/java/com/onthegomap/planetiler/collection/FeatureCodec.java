@@ -0,0 +1,260 @@
+package com.onthegomap.planetiler.collection;
+
+import com.carrotsearch.hppc.ByteArrayList;
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.geo.GeometryType;
+import com.onthegomap.planetiler.render.RenderedFeature;
+import com.onthegomap.planetiler.util.CommonStringEncoder;
+import com.onthegomap.planetiler.util.VarInt;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Binary format for the value of each {@link SortableFeature} that {@link FeatureGroup} writes to temp storage.
+ * <p>
+ * Each value contains:
+ * <ul>
+ * <li>group ID (zigzag varint) and group limit (varint) only when the key has the "has group" bit set</li>
+ * <li>feature ID (zigzag varint)</li>
+ * <li>one byte with geometry type and scale</li>
+ * <li>the {@link AttributeSetDictionary} ID of the attributes plus one (varint), or {@code 0} followed by the number
+ * of attributes (varint), then for each: key ID (varint), a type tag byte, and the value - where strings are stored
+ * by ID when they fit in the value dictionary</li>
+ * <li>number of geometry commands (varint), then each command as a varint - vector tile commands and parameters are
+ * already non-negative so they do not need zigzag encoding</li>
+ * </ul>
+ * Layer name and sort key are stored in the {@link SortableFeature#key()} instead. {@link #VERSION} gets written once
+ * at the start of each temp file by {@link ExternalMergeSort} and {@link IndexedFeatureStore} instead of on every
+ * value.
+ */
+final class FeatureCodec {
+
+  /** Incremented whenever the format changes so that files written by a different version get rejected. */
+  static final byte VERSION = 4;
+
+  private static final byte TYPE_STRING = 0;
+  private static final byte TYPE_LONG = 1;
+  private static final byte TYPE_DOUBLE = 2;
+  private static final byte TYPE_FLOAT = 3;
+  private static final byte TYPE_TRUE = 4;
+  private static final byte TYPE_FALSE = 5;
+  private static final byte TYPE_STRING_REF = 6;
+
+  private FeatureCodec() {}
+
+  /**
+   * Throws if {@code version} read from the header of {@code file} does not match the current format {@link #VERSION}.
+   */
+  static void checkVersion(byte version, Object file) {
+    if (version != VERSION) {
+      throw new IllegalStateException(
+        file + " written with unsupported feature format version " + version + ", expected " + VERSION);
+    }
+  }
+
+  private static long zigZagEncode(long n) {
+    return (n << 1) ^ (n >> 63);
+  }
+
+  private static long zigZagDecode(long n) {
+    return (n >>> 1) ^ -(n & 1);
+  }
+
+  private static int getVarInt(ByteBuffer buffer) {
+    return (int) VarInt.getVarLong(buffer);
+  }
+
+  /** Returns the group info from a value encoded with a group, without decoding the rest of the feature. */
+  static RenderedFeature.Group peekAtGroupInfo(byte[] encoded) {
+    ByteBuffer buffer = ByteBuffer.wrap(encoded);
+    long group = zigZagDecode(VarInt.getVarLong(buffer));
+    int limit = getVarInt(buffer);
+    return new RenderedFeature.Group(group, limit);
+  }
+
+  /**
+   * Decodes a feature from {@code encoded}.
+   *
+   * @param encoded  the encoded value
+   * @param hasGroup whether the value was encoded with group info
+   * @param layer    layer name to use for the feature
+   * @param keys     strings that attribute key IDs refer to
+   * @param values   strings that attribute value IDs refer to
+   * @param attrSets attribute sets that attribute set IDs refer to
+   * @return the decoded feature
+   */
+  static VectorTile.Feature decode(byte[] encoded, boolean hasGroup, String layer, CommonStringEncoder keys,
+    CommonStringEncoder values, AttributeSetDictionary attrSets) {
+    ByteBuffer buffer = ByteBuffer.wrap(encoded);
+    long group;
+    if (hasGroup) {
+      group = zigZagDecode(VarInt.getVarLong(buffer));
+      getVarInt(buffer); // groupLimit - features over the limit were already discarded
+    } else {
+      group = VectorTile.Feature.NO_GROUP;
+    }
+    long id = zigZagDecode(VarInt.getVarLong(buffer));
+    byte geomTypeAndScale = buffer.get();
+    GeometryType geomType = FeatureGroup.decodeGeomType(geomTypeAndScale);
+    int scale = FeatureGroup.decodeScale(geomTypeAndScale);
+    int attrSet = getVarInt(buffer);
+    // features share the decoded attribute set until a profile changes them
+    Map<String, Object> attrs = attrSet > 0 ? new CopyOnWriteAttrs(attrSets.decode(attrSet - 1)) :
+      decodeAttrs(encoded, buffer, keys, values);
+    int numCommands = getVarInt(buffer);
+    int[] commands = new int[numCommands];
+    for (int i = 0; i < numCommands; i++) {
+      commands[i] = getVarInt(buffer);
+    }
+    return new VectorTile.Feature(
+      layer,
+      id,
+      new VectorTile.VectorGeometry(commands, geomType, scale),
+      attrs,
+      group
+    );
+  }
+
+  private static Map<String, Object> decodeAttrs(byte[] encoded, ByteBuffer buffer, CommonStringEncoder keys,
+    CommonStringEncoder values) {
+    int numAttrs = getVarInt(buffer);
+    Map<String, Object> attrs = HashMap.newHashMap(numAttrs);
+    for (int i = 0; i < numAttrs; i++) {
+      String key = keys.decode(getVarInt(buffer));
+      byte type = buffer.get();
+      Object value = switch (type) {
+        case TYPE_STRING -> {
+          int length = getVarInt(buffer);
+          String string = new String(encoded, buffer.position(), length, StandardCharsets.UTF_8);
+          buffer.position(buffer.position() + length);
+          yield string;
+        }
+        // return the same instance for repeated values so VectorTile can use the hash code cached on the string
+        case TYPE_STRING_REF -> values.decode(getVarInt(buffer));
+        case TYPE_LONG -> zigZagDecode(VarInt.getVarLong(buffer));
+        case TYPE_DOUBLE -> buffer.getDouble();
+        case TYPE_FLOAT -> (double) buffer.getFloat();
+        case TYPE_TRUE -> Boolean.TRUE;
+        case TYPE_FALSE -> Boolean.FALSE;
+        default -> throw new IllegalStateException("Unexpected attribute type " + type + " for " + key);
+      };
+      attrs.put(key, value);
+    }
+    return attrs;
+  }
+
+  /** Encodes features for a single thread, re-using the same buffer for each one. */
+  @NotThreadSafe
+  static class Encoder {
+
+    private final ByteArrayList buffer = new ByteArrayList(256);
+    private final CommonStringEncoder keys;
+    private final CommonStringEncoder values;
+    private final AttributeSetDictionary attrSets;
+
+    Encoder(CommonStringEncoder keys, CommonStringEncoder values, AttributeSetDictionary attrSets) {
+      this.keys = keys;
+      this.values = values;
+      this.attrSets = attrSets;
+    }
+
+    private void putVarInt(long value) {
+      VarInt.putVarLong(value, buffer);
+    }
+
+    private void putLong(long value) {
+      buffer.ensureCapacity(buffer.elementsCount + 8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer.buffer[buffer.elementsCount++] = (byte) (value >>> shift);
+      }
+    }
+
+    private void putInt(int value) {
+      buffer.ensureCapacity(buffer.elementsCount + 4);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        buffer.buffer[buffer.elementsCount++] = (byte) (value >>> shift);
+      }
+    }
+
+    private void putString(String string) {
+      int id = values.tryEncode(string);
+      if (id >= 0) {
+        buffer.add(TYPE_STRING_REF);
+        putVarInt(id);
+      } else {
+        buffer.add(TYPE_STRING);
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        putVarInt(bytes.length);
+        buffer.add(bytes);
+      }
+    }
+
+    /** Returns the encoded bytes for {@code feature} with optional {@code group} info. */
+    byte[] encode(VectorTile.Feature feature, RenderedFeature.Group group) {
+      buffer.elementsCount = 0;
+      // hasGroup bit in key will tell consumers whether they need to decode group info from value
+      if (group != null) {
+        putVarInt(zigZagEncode(group.group()));
+        putVarInt(group.limit());
+      }
+      putVarInt(zigZagEncode(feature.id()));
+      buffer.add(FeatureGroup.encodeGeomTypeAndScale(feature.geometry()));
+      var attrs = feature.attrs();
+      int attrSet = attrSets.encode(attrs);
+      if (attrSet >= 0) {
+        putVarInt(attrSet + 1L);
+      } else {
+        buffer.add((byte) 0);
+        putAttrs(attrs);
+      }
+      // Use the same binary format for encoding geometries in output vector tiles. Benchmarking showed
+      // it was faster and smaller for encoding/decoding intermediate geometries than alternatives like WKB.
+      int[] commands = feature.geometry().commands();
+      putVarInt(commands.length);
+      for (int command : commands) {
+        putVarInt(command & 0xffffffffL);
+      }
+      return buffer.toArray();
+    }
+
+    private void putAttrs(Map<String, Object> attrs) {
+      int numAttrs = 0;
+      for (Object value : attrs.values()) {
+        if (value != null) {
+          numAttrs++;
+        }
+      }
+      putVarInt(numAttrs);
+      for (Map.Entry<String, Object> entry : attrs.entrySet()) {
+        Object value = entry.getValue();
+        if (value != null) {
+          putVarInt(keys.encode(entry.getKey()));
+          switch (value) {
+            case String string -> putString(string);
+            case Integer integer -> {
+              buffer.add(TYPE_LONG);
+              putVarInt(zigZagEncode(integer));
+            }
+            case Long longValue -> {
+              buffer.add(TYPE_LONG);
+              putVarInt(zigZagEncode(longValue));
+            }
+            case Float floatValue -> {
+              buffer.add(TYPE_FLOAT);
+              putInt(Float.floatToRawIntBits(floatValue));
+            }
+            case Double doubleValue -> {
+              buffer.add(TYPE_DOUBLE);
+              putLong(Double.doubleToRawLongBits(doubleValue));
+            }
+            case Boolean booleanValue -> buffer.add(booleanValue ? TYPE_TRUE : TYPE_FALSE);
+            case Object other -> putString(other.toString());
+          }
+        }
+      }
+    }
+  }
+}
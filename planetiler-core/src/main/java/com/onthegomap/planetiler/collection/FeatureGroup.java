@@ -8,9 +8,11 @@ import com.onthegomap.planetiler.geo.GeometryException;
 import com.onthegomap.planetiler.geo.GeometryType;
 import com.onthegomap.planetiler.geo.TileCoord;
 import com.onthegomap.planetiler.geo.TileOrder;
+import com.onthegomap.planetiler.render.RenderCache;
 import com.onthegomap.planetiler.render.RenderedFeature;
 import com.onthegomap.planetiler.stats.Stats;
 import com.onthegomap.planetiler.util.CloseableConsumer;
+import com.onthegomap.planetiler.util.CloseableIterator;
 import com.onthegomap.planetiler.util.CommonStringEncoder;
 import com.onthegomap.planetiler.util.DiskBacked;
 import com.onthegomap.planetiler.util.LayerAttrStats;
@@ -21,20 +23,14 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import javax.annotation.concurrent.NotThreadSafe;
-import org.msgpack.core.MessageBufferPacker;
-import org.msgpack.core.MessagePack;
-import org.msgpack.core.MessageUnpacker;
-import org.msgpack.value.Value;
-import org.msgpack.value.ValueFactory;
+import javax.annotation.concurrent.ThreadSafe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +41,10 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Limitation: layer name and attribute key strings get compressed into a single byte, so only 250 unique values are
  * supported (see {@link CommonStringEncoder})
+ * <p>
+ * Attribute sets that repeat across features are stored once in memory and referenced by ID from each feature (see
+ * {@link AttributeSetDictionary}). Decoded features share that attribute set and only copy it if a profile modifies
+ * their attributes while post-processing.
  */
 @NotThreadSafe
 public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>, DiskBacked {
@@ -53,15 +53,22 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
   public static final int SORT_KEY_MAX = (1 << (SORT_KEY_BITS - 1)) - 1;
   public static final int SORT_KEY_MIN = -(1 << (SORT_KEY_BITS - 1));
   private static final int SORT_KEY_MASK = (1 << SORT_KEY_BITS) - 1;
+  /** Attribute sets past this limit get encoded inline with each feature instead of by reference. */
+  private static final int MAX_ATTRIBUTE_SETS = 1_000_000;
+  /** Approximate number of bytes of features between each entry in the sparse index built by {@link #indexTiles}. */
+  private static final int INDEX_INTERVAL_BYTES = 64 * 1024;
   private static final Logger LOGGER = LoggerFactory.getLogger(FeatureGroup.class);
   private final FeatureSort sorter;
   private final Profile profile;
   private final CommonStringEncoder.AsByte commonLayerStrings = new CommonStringEncoder.AsByte();
   private final CommonStringEncoder commonValueStrings = new CommonStringEncoder(100_000);
+  private final CommonStringEncoder commonAttrValues;
+  private final AttributeSetDictionary attributeSets = new AttributeSetDictionary(MAX_ATTRIBUTE_SETS);
   private final Stats stats;
   private final PlanetilerConfig config;
   private volatile boolean prepared = false;
   private final TileOrder tileOrder;
+  private final RenderCache renderCache;
 
 
   FeatureGroup(FeatureSort sorter, TileOrder tileOrder, Profile profile, PlanetilerConfig config, Stats stats) {
@@ -70,6 +77,14 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     this.profile = profile;
     this.config = config;
     this.stats = stats;
+    this.commonAttrValues = new CommonStringEncoder(config.attributeValueDictionarySize());
+    stats.monitorInMemoryObject("attribute_sets", attributeSets);
+    if (config.renderCacheSizeMB() > 0) {
+      this.renderCache = RenderCache.create(config.renderCacheSizeMB() * 1024 * 1024, stats);
+      stats.monitorInMemoryObject("render_cache", renderCache);
+    } else {
+      this.renderCache = null;
+    }
   }
 
   /** Returns a feature grouper that stores all feature in-memory. Only suitable for toy use-cases like unit tests. */
@@ -116,16 +131,6 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     return ((int) ((key >> 1) & SORT_KEY_MASK)) + SORT_KEY_MIN;
   }
 
-  private static RenderedFeature.Group peekAtGroupInfo(byte[] encoded) {
-    try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(encoded)) {
-      long group = unpacker.unpackLong();
-      int limit = unpacker.unpackInt();
-      return new RenderedFeature.Group(group, limit);
-    } catch (IOException e) {
-      throw new IllegalStateException(e);
-    }
-  }
-
   static GeometryType decodeGeomType(byte geomTypeAndScale) {
     return GeometryType.valueOf((byte) (geomTypeAndScale & 0b111));
   }
@@ -144,12 +149,21 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     return sorter.numFeaturesWritten();
   }
 
+  /**
+   * Returns the cache of sliced geometries that renderers writing to this feature group should share, or {@code null}
+   * if it is disabled.
+   */
+  public RenderCache renderCache() {
+    return renderCache;
+  }
+
   /** Returns a function for a single thread to use to serialize rendered features. */
   public RenderedFeatureEncoder newRenderedFeatureEncoder() {
     return new RenderedFeatureEncoder() {
       // This method gets called billions of times when generating the planet, so these optimizations make a big difference:
-      // 1) Re-use the same buffer packer to avoid allocating and resizing new byte arrays for every feature.
-      private final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+      // 1) Re-use the same buffer to avoid allocating and resizing new byte arrays for every feature.
+      private final FeatureCodec.Encoder encoder = new FeatureCodec.Encoder(commonValueStrings, commonAttrValues,
+        attributeSets);
       // 2) Avoid re-encoding values for identical filled geometries (i.e. ocean) by memoizing the encoded values
       // FeatureRenderer ensures that a separate VectorTileEncoder.Feature is used for each zoom level
       private VectorTile.Feature lastFeature = null;
@@ -161,21 +175,19 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
         var thisFeature = feature.vectorTileFeature();
         byte[] encodedValue;
         if (group != null) { // don't bother memoizing if group is present
-          encodedValue = encodeValue(thisFeature, group, packer);
+          encodedValue = encoder.encode(thisFeature, group);
         } else if (lastFeature == thisFeature) {
           encodedValue = lastEncodedValue;
         } else { // feature changed, memoize new value
           lastFeature = thisFeature;
-          lastEncodedValue = encodedValue = encodeValue(feature.vectorTileFeature(), null, packer);
+          lastEncodedValue = encodedValue = encoder.encode(thisFeature, null);
         }
 
         return new SortableFeature(encodeKey(feature), encodedValue);
       }
 
       @Override
-      public void close() throws IOException {
-        packer.close();
-      }
+      public void close() {}
     };
   }
 
@@ -191,48 +203,6 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     );
   }
 
-  private byte[] encodeValue(VectorTile.Feature vectorTileFeature, RenderedFeature.Group group,
-    MessageBufferPacker packer) {
-    packer.clear();
-    try {
-      // hasGroup bit in key will tell consumers whether they need to decode group info from value
-      if (group != null) {
-        packer.packLong(group.group());
-        packer.packInt(group.limit());
-      }
-      packer.packLong(vectorTileFeature.id());
-      packer.packByte(encodeGeomTypeAndScale(vectorTileFeature.geometry()));
-      var attrs = vectorTileFeature.attrs();
-      packer.packMapHeader((int) attrs.values().stream().filter(Objects::nonNull).count());
-      for (Map.Entry<String, Object> entry : attrs.entrySet()) {
-        Object value = entry.getValue();
-        if (value != null) {
-          packer.packInt(commonValueStrings.encode(entry.getKey()));
-          packer.packValue(switch (value) {
-            case String string -> ValueFactory.newString(string);
-            case Integer integer -> ValueFactory.newInteger(integer.longValue());
-            case Long longValue -> ValueFactory.newInteger(longValue);
-            case Float floatValue -> ValueFactory.newFloat(floatValue);
-            case Double doubleValue -> ValueFactory.newFloat(doubleValue);
-            case Boolean booleanValue -> ValueFactory.newBoolean(booleanValue);
-            case Object other -> ValueFactory.newString(other.toString());
-          });
-        }
-      }
-      // Use the same binary format for encoding geometries in output vector tiles. Benchmarking showed
-      // it was faster and smaller for encoding/decoding intermediate geometries than alternatives like WKB.
-      int[] commands = vectorTileFeature.geometry().commands();
-      packer.packArrayHeader(commands.length);
-      for (int command : commands) {
-        packer.packInt(command);
-      }
-      packer.close();
-    } catch (IOException e) {
-      throw new IllegalStateException(e);
-    }
-    return packer.toByteArray();
-  }
-
   /** Returns a new feature writer that can be used for a single thread. */
   public CloseableConsumer<SortableFeature> writerForThread() {
     return sorter.writerForThread();
@@ -319,10 +289,68 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     return sorter.chunksToRead();
   }
 
+  /**
+   * Writes all sorted features to a single file at {@code path} with a sparse tile index, so that features for any tile
+   * can be read back on demand instead of iterating through every tile in order.
+   * <p>
+   * The index shares string and attribute dictionaries with this feature group, so it can only be read back by this
+   * process. Sorted features get deleted once they are copied into the index, so this feature group can't be iterated
+   * over afterwards.
+   */
+  public IndexedTiles indexTiles(Path path) {
+    prepare();
+    var timer = stats.startStage("index");
+    var store = IndexedFeatureStore.write(sorter.iterator(), path, INDEX_INTERVAL_BYTES);
+    sorter.release();
+    LOGGER.info("Indexed {} features into {} blocks", numFeaturesWritten(), store.indexSize());
+    timer.stop();
+    return new IndexedTiles(store);
+  }
+
   public interface RenderedFeatureEncoder extends Function<RenderedFeature, SortableFeature>, Closeable {}
 
   public record Reader(Worker readWorker, Iterable<TileFeatures> result) {}
 
+  /** Sorted features with a sparse tile index that can be read back one tile at a time from any thread. */
+  @ThreadSafe
+  public class IndexedTiles implements Closeable, DiskBacked {
+
+    private final IndexedFeatureStore store;
+
+    private IndexedTiles(IndexedFeatureStore store) {
+      this.store = store;
+    }
+
+    /** Returns the features in {@code coord}, or {@code null} if there are none. */
+    public TileFeatures get(TileCoord coord) {
+      int tileId = tileOrder.encode(coord);
+      List<SortableFeature> entries = store.getTile(tileId);
+      if (entries.isEmpty()) {
+        return null;
+      }
+      TileFeatures result = new TileFeatures(tileId);
+      for (SortableFeature entry : entries) {
+        result.add(entry);
+      }
+      return result;
+    }
+
+    /** Returns the coordinates of all tiles that contain features, in tile order. */
+    public CloseableIterator<TileCoord> tileCoords() {
+      return store.tileIds().map(tileOrder::decode);
+    }
+
+    @Override
+    public long diskUsageBytes() {
+      return store.diskUsageBytes();
+    }
+
+    @Override
+    public void close() throws IOException {
+      store.close();
+    }
+  }
+
   /** Features contained in a single tile. */
   public class TileFeatures {
 
@@ -396,49 +424,10 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
 
 
     private VectorTile.Feature decodeVectorTileFeature(SortableFeature entry) {
-      try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(entry.value())) {
-        long group;
-        if (extractHasGroupFromKey(entry.key())) {
-          group = unpacker.unpackLong();
-          unpacker.unpackInt(); // groupLimit - features over the limit were already discarded
-        } else {
-          group = VectorTile.Feature.NO_GROUP;
-        }
-        long id = unpacker.unpackLong();
-        byte geomTypeAndScale = unpacker.unpackByte();
-        GeometryType geomType = decodeGeomType(geomTypeAndScale);
-        int scale = decodeScale(geomTypeAndScale);
-        int mapSize = unpacker.unpackMapHeader();
-        Map<String, Object> attrs = HashMap.newHashMap(mapSize);
-        for (int i = 0; i < mapSize; i++) {
-          String key = commonValueStrings.decode(unpacker.unpackInt());
-          Value v = unpacker.unpackValue();
-          if (v.isStringValue()) {
-            attrs.put(key, v.asStringValue().asString());
-          } else if (v.isIntegerValue()) {
-            attrs.put(key, v.asIntegerValue().toLong());
-          } else if (v.isFloatValue()) {
-            attrs.put(key, v.asFloatValue().toDouble());
-          } else if (v.isBooleanValue()) {
-            attrs.put(key, v.asBooleanValue().getBoolean());
-          }
-        }
-        int commandSize = unpacker.unpackArrayHeader();
-        int[] commands = new int[commandSize];
-        for (int i = 0; i < commandSize; i++) {
-          commands[i] = unpacker.unpackInt();
-        }
-        String layer = commonLayerStrings.decode(extractLayerIdFromKey(entry.key()));
-        return new VectorTile.Feature(
-          layer,
-          id,
-          new VectorTile.VectorGeometry(commands, geomType, scale),
-          attrs,
-          group
-        );
-      } catch (IOException e) {
-        throw new IllegalStateException(e);
-      }
+      long key = entry.key();
+      String layer = commonLayerStrings.decode(extractLayerIdFromKey(key));
+      return FeatureCodec.decode(entry.value(), extractHasGroupFromKey(key), layer, commonValueStrings,
+        commonAttrValues, attributeSets);
     }
 
     public VectorTile getVectorTile() {
@@ -533,7 +522,7 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
           lastLayer = thisLayer;
           counts.clear();
         }
-        var groupInfo = peekAtGroupInfo(entry.value());
+        var groupInfo = FeatureCodec.peekAtGroupInfo(entry.value());
         long old = counts.getOrDefault(groupInfo.group(), 0);
         if (groupInfo.limit() > 0 && old >= groupInfo.limit()) {
           // discard if there are to many features in this group already
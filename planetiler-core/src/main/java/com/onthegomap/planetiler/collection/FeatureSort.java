@@ -79,6 +79,11 @@ interface FeatureSort extends Iterable<SortableFeature>, DiskBacked, MemoryEstim
       public int chunksToRead() {
         return list.size();
       }
+
+      @Override
+      public void release() {
+        list.clear();
+      }
     };
   }
 
@@ -86,6 +91,9 @@ interface FeatureSort extends Iterable<SortableFeature>, DiskBacked, MemoryEstim
 
   long numFeaturesWritten();
 
+  /** Frees the storage used by sorted features after they have been read for the last time. */
+  void release();
+
   /** Returns all elements in a list. WARNING: this will materialize all elements in-memory. */
   default List<SortableFeature> toList() {
     List<SortableFeature> list = new ArrayList<>();
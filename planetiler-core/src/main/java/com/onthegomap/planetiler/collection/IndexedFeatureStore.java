@@ -0,0 +1,223 @@
+package com.onthegomap.planetiler.collection;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
+import com.onthegomap.planetiler.util.CloseableIterator;
+import com.onthegomap.planetiler.util.CountingOutputStream;
+import com.onthegomap.planetiler.util.DiskBacked;
+import com.onthegomap.planetiler.util.FileUtils;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A single file of features sorted by {@link SortableFeature#key()} with a sparse in-memory index from tile ID to file
+ * offset, so the features in any one tile can be read without scanning the whole file.
+ * <p>
+ * Features are stored in the same format as {@link ExternalMergeSort} chunks (a version byte, then key, length, value).
+ * The index gets a new entry at the start of the first tile after each {@code indexIntervalBytes} of data, so every
+ * tile is fully contained in one "block" between two index entries and a lookup is a binary search followed by a
+ * single positional read.
+ */
+@ThreadSafe
+class IndexedFeatureStore implements Closeable, DiskBacked {
+
+  private final Path path;
+  private final FileChannel channel;
+  private final int[] blockTileIds;
+  private final long[] blockOffsets;
+  private final long size;
+
+  private IndexedFeatureStore(Path path, int[] blockTileIds, long[] blockOffsets) throws IOException {
+    this.path = path;
+    this.blockTileIds = blockTileIds;
+    this.blockOffsets = blockOffsets;
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.size = channel.size();
+    ByteBuffer header = ByteBuffer.allocate(1);
+    if (channel.read(header, 0) != 1) {
+      throw new IOException("Missing header in " + path);
+    }
+    FeatureCodec.checkVersion(header.get(0), path);
+  }
+
+  /**
+   * Writes {@code sorted} features to a new file at {@code path} and returns a store to read them back by tile.
+   *
+   * @param sorted             features ordered by key
+   * @param path               file to write to
+   * @param indexIntervalBytes approximate number of bytes between each index entry
+   */
+  static IndexedFeatureStore write(Iterator<SortableFeature> sorted, Path path, int indexIntervalBytes) {
+    IntArrayList tileIds = new IntArrayList();
+    LongArrayList offsets = new LongArrayList();
+    long[] position = {0};
+    FileUtils.deleteOnExit(path);
+    try (
+      var out = new DataOutputStream(new CountingOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(path), 1 << 16),
+        n -> position[0] += n
+      ))
+    ) {
+      out.writeByte(FeatureCodec.VERSION);
+      int lastTile = 0;
+      long lastIndexed = 0;
+      while (sorted.hasNext()) {
+        SortableFeature feature = sorted.next();
+        int tile = FeatureGroup.extractTileFromKey(feature.key());
+        if (tileIds.isEmpty() || (tile != lastTile && position[0] - lastIndexed >= indexIntervalBytes)) {
+          tileIds.add(tile);
+          offsets.add(position[0]);
+          lastIndexed = position[0];
+        }
+        lastTile = tile;
+        out.writeLong(feature.key());
+        out.writeInt(feature.value().length);
+        out.write(feature.value());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    try {
+      return new IndexedFeatureStore(path, tileIds.toArray(), offsets.toArray());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Returns the number of entries in the sparse index. */
+  int indexSize() {
+    return blockTileIds.length;
+  }
+
+  /** Returns the features in {@code tileId} in sorted order, or an empty list if there are none. */
+  List<SortableFeature> getTile(int tileId) {
+    int block = findBlock(tileId);
+    List<SortableFeature> result = new ArrayList<>();
+    if (block >= 0) {
+      ByteBuffer buffer = readBlock(block);
+      while (buffer.hasRemaining()) {
+        long key = buffer.getLong();
+        int length = buffer.getInt();
+        int tile = FeatureGroup.extractTileFromKey(key);
+        if (tile > tileId) {
+          break;
+        } else if (tile == tileId) {
+          byte[] value = new byte[length];
+          buffer.get(value);
+          result.add(new SortableFeature(key, value));
+        } else {
+          buffer.position(buffer.position() + length);
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Returns an iterator over the distinct tile IDs in this store in sorted order. */
+  CloseableIterator<Integer> tileIds() {
+    return new CloseableIterator<>() {
+      private int block = 0;
+      private ByteBuffer buffer = null;
+      private boolean hasLast = false;
+      private int last = 0;
+      private Integer next = advance();
+
+      private Integer advance() {
+        while (true) {
+          while (buffer == null || !buffer.hasRemaining()) {
+            if (block >= blockOffsets.length) {
+              return null;
+            }
+            buffer = readBlock(block++);
+          }
+          int tile = FeatureGroup.extractTileFromKey(buffer.getLong());
+          int length = buffer.getInt();
+          buffer.position(buffer.position() + length);
+          if (!hasLast || tile != last) {
+            hasLast = true;
+            last = tile;
+            return tile;
+          }
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public Integer next() {
+        Integer result = next;
+        if (result == null) {
+          throw new NoSuchElementException();
+        }
+        next = advance();
+        return result;
+      }
+
+      @Override
+      public void close() {
+        buffer = null;
+      }
+    };
+  }
+
+  /** Returns the index of the last block that starts at or before {@code tileId}, or -1 if there is none. */
+  private int findBlock(int tileId) {
+    int lo = 0, hi = blockTileIds.length - 1, result = -1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (blockTileIds[mid] <= tileId) {
+        result = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return result;
+  }
+
+  private ByteBuffer readBlock(int block) {
+    long start = blockOffsets[block];
+    long end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : size;
+    if (end - start > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Block " + block + " too large: " + (end - start));
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, start + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of " + path + " at " + (start + buffer.position()));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return buffer.flip();
+  }
+
+  @Override
+  public long diskUsageBytes() {
+    return size;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+    FileUtils.delete(path);
+  }
+}
@@ -29,6 +29,7 @@ public record PlanetilerConfig(
   int maxzoomForRendering,
   boolean force,
   boolean append,
+  boolean regenerate,
   boolean gzipTempStorage,
   boolean mmapTempStorage,
   int sortMaxReaders,
@@ -45,6 +46,7 @@ public record PlanetilerConfig(
   long downloadChunkSizeMB,
   int downloadThreads,
   double downloadMaxBandwidth,
+  boolean downloadVerifyMd5,
   double minFeatureSizeAtMaxZoom,
   double minFeatureSizeBelowMaxZoom,
   double simplifyToleranceAtMaxZoom,
@@ -52,6 +54,7 @@ public record PlanetilerConfig(
   boolean osmLazyReads,
   boolean skipFilledTiles,
   int tileWarningSizeBytes,
+  int tileDedupeMaxBytes,
   Boolean color,
   boolean keepUnzippedSources,
   TileCompression tileCompression,
@@ -60,7 +63,11 @@ public record PlanetilerConfig(
   Path tmpDir,
   Path tileWeights,
   double maxPointBuffer,
-  boolean logJtsExceptions
+  boolean logJtsExceptions,
+  boolean cascadeSimplify,
+  long renderCacheSizeMB,
+  int attributeValueDictionarySize,
+  int wikidataFetchThreads
 ) {
 
   public static final int MIN_MINZOOM = 0;
@@ -80,6 +87,9 @@ public record PlanetilerConfig(
     if (httpRetries < 0) {
       throw new IllegalArgumentException("HTTP Retries must be >= 0, was " + httpRetries);
     }
+    if (wikidataFetchThreads < 1) {
+      throw new IllegalArgumentException("Wikidata fetch threads must be >= 1, was " + wikidataFetchThreads);
+    }
   }
 
   public static PlanetilerConfig defaults() {
@@ -146,6 +156,10 @@ public record PlanetilerConfig(
         "append to the output file - only supported by " + Stream.of(TileArchiveConfig.Format.values())
           .filter(TileArchiveConfig.Format::supportsAppend).map(TileArchiveConfig.Format::id).toList(),
         false),
+      arguments.getBoolean("regenerate",
+        "when appending, replace every existing tile within bounds from minzoom to maxzoom and delete the ones that " +
+          "are now empty - only supported by mbtiles",
+        false),
       arguments.getBoolean("gzip_temp", "gzip temporary feature storage (uses more CPU, but less disk space)", false),
       arguments.getBoolean("mmap_temp", "use memory-mapped IO for temp feature files", true),
       arguments.getInteger("sort_max_readers", "maximum number of concurrent read threads to use when sorting chunks",
@@ -172,6 +186,9 @@ public record PlanetilerConfig(
       arguments.getInteger("download_threads", "Number of parallel threads to use when downloading each file", 1),
       Parse.bandwidth(arguments.getString("download_max_bandwidth",
         "Maximum bandwidth to consume when downloading files in units mb/s, mbps, kbps, etc.", "")),
+      arguments.getBoolean("download_verify_md5",
+        "Verify downloaded files against the checksum in a .md5 file next to them on the server, when there is one",
+        false),
       arguments.getDouble("min_feature_size_at_max_zoom",
         "Default value for the minimum size in tile pixels of features to emit at the maximum zoom level to allow for overzooming",
         256d / 4096),
@@ -193,6 +210,10 @@ public record PlanetilerConfig(
       (int) (arguments.getDouble("tile_warning_size_mb",
         "Maximum size in megabytes of a tile to emit a warning about",
         1d) * 1024 * 1024),
+      arguments.getInteger("tile_dedupe_max_bytes",
+        "Deduplicate all tiles up to this size in bytes, in addition to tiles that only contain fills. " +
+          "Each distinct tile this small takes about 40 bytes of memory until the archive is done",
+        64),
       arguments.getBooleanObject("color", "Color the terminal output"),
       arguments.getBoolean("keep_unzipped",
         "keep unzipped sources by default after reading", false),
@@ -212,7 +233,21 @@ public record PlanetilerConfig(
           "clients that handle label collisions across tiles (most web and native clients). NOTE: Do not reduce if you need to support " +
           "raster tile rendering",
         Double.POSITIVE_INFINITY),
-      arguments.getBoolean("log_jts_exceptions", "Emit verbose details to debug JTS geometry errors", false)
+      arguments.getBoolean("log_jts_exceptions", "Emit verbose details to debug JTS geometry errors", false),
+      arguments.getBoolean("cascade_simplify",
+        "Simplify lines and polygons at each zoom level starting from the simplified geometry at the next higher " +
+          "zoom level instead of the original geometry (faster for large features, but less precise)",
+        false),
+      arguments.getLong("render_cache_size_mb",
+        "Size in megabytes of the cache of sliced geometries to re-use when identical large geometries get rendered " +
+          "multiple times with the same settings, or 0 to disable",
+        0),
+      arguments.getInteger("attribute_value_dictionary_size",
+        "Number of distinct string attribute values to store once and reference by ID from temp features, values " +
+          "only get stored the second time they are seen and values past this limit get stored with each feature",
+        100_000),
+      arguments.getInteger("wikidata_fetch_threads",
+        "Number of wikidata translation batches to request concurrently with --fetch-wikidata", 2)
     );
   }
 
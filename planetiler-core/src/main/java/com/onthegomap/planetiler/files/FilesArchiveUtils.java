@@ -14,6 +14,8 @@ public final class FilesArchiveUtils {
 
   static final String OPTION_METADATA_PATH = "metadata_path";
   static final String OPTION_TILE_SCHEME = "tile_scheme";
+  static final String OPTION_IO_THREADS = "io_threads";
+  static final String OPTION_WRITE_BATCH_SIZE = "write_batch_size";
 
   private FilesArchiveUtils() {}
 
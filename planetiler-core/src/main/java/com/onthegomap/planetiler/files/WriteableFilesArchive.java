@@ -11,11 +11,26 @@ import com.onthegomap.planetiler.geo.TileOrder;
 import com.onthegomap.planetiler.stats.Counter;
 import com.onthegomap.planetiler.util.CountingOutputStream;
 import com.onthegomap.planetiler.util.FileUtils;
+import com.onthegomap.planetiler.util.Format;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +46,11 @@ import org.slf4j.LoggerFactory;
  * <dt>(files_)metadata_path</dt>
  * <dd>The path the meta data should be written to. The default is BASEPATH/metadata.json. "none" can be used to
  * suppress writing metadata.</dd>
+ * <dt>(files_)io_threads</dt>
+ * <dd>Number of threads that write tile files in the background. The default is 16, 0 writes files synchronously from
+ * the tile writer thread.</dd>
+ * <dt>(files_)write_batch_size</dt>
+ * <dd>Number of tiles each tile writer hands off to the I/O threads at once. The default is 256.</dd>
  * </ul>
  *
  * Usages:
@@ -57,6 +77,12 @@ public class WriteableFilesArchive implements WriteableTileArchive {
 
   private final TileOrder tileOrder;
 
+  private final int writeBatchSize;
+  private final ExecutorService ioExecutor;
+  private final Semaphore inFlightBatches;
+  // directories that have been created so far, shared by all tile writers
+  private final Map<Path, Boolean> createdDirectories = new ConcurrentHashMap<>();
+
   private WriteableFilesArchive(Path basePath, Arguments options, boolean overwriteMetadata) {
 
     final var pathAndScheme = FilesArchiveUtils.basePathWithTileSchemeEncoding(options, basePath);
@@ -78,6 +104,14 @@ public class WriteableFilesArchive implements WriteableTileArchive {
     final TileSchemeEncoding tileSchemeEncoding = pathAndScheme.tileSchemeEncoding();
     this.tileSchemeEncoder = tileSchemeEncoding.encoder();
     this.tileOrder = tileSchemeEncoding.preferredTileOrder();
+    int ioThreads = options.getInteger(FilesArchiveUtils.OPTION_IO_THREADS,
+      "number of threads that write tile files in the background, 0 to write synchronously", 16);
+    this.writeBatchSize = Math.max(1, options.getInteger(FilesArchiveUtils.OPTION_WRITE_BATCH_SIZE,
+      "number of tiles to hand off to the I/O threads at once", 256));
+    this.ioExecutor = ioThreads <= 0 ? null :
+      Executors.newFixedThreadPool(ioThreads, Thread.ofPlatform().name("files-io-", 1).daemon().factory());
+    // limit how many tiles can be waiting to be written before tile writers block
+    this.inFlightBatches = new Semaphore(Math.max(1, ioThreads) * 4);
   }
 
   public static WriteableFilesArchive newWriter(Path basePath, Arguments options, boolean overwriteMetadata) {
@@ -96,7 +130,7 @@ public class WriteableFilesArchive implements WriteableTileArchive {
 
   @Override
   public TileWriter newTileWriter() {
-    return new TileFilesWriter(basePath, tileSchemeEncoder, bytesWritten.counterForThread());
+    return new TileFilesWriter(basePath, bytesWritten.counterForThread());
   }
 
   @Override
@@ -104,7 +138,8 @@ public class WriteableFilesArchive implements WriteableTileArchive {
     if (metadataPath == null) {
       return;
     }
-    try (OutputStream s = new CountingOutputStream(Files.newOutputStream(metadataPath), bytesWritten::incBy)) {
+    Counter counter = bytesWritten.counterForThread();
+    try (OutputStream s = new CountingOutputStream(Files.newOutputStream(metadataPath), counter::incBy)) {
       TileArchiveMetadataDeSer.mbtilesMapper().writeValue(s, tileArchiveMetadata);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
@@ -118,7 +153,9 @@ public class WriteableFilesArchive implements WriteableTileArchive {
 
   @Override
   public void close() throws IOException {
-    // nothing to do here
+    if (ioExecutor != null) {
+      ioExecutor.shutdownNow();
+    }
   }
 
   private static Path createValidateDirectory(Path p) {
@@ -132,44 +169,142 @@ public class WriteableFilesArchive implements WriteableTileArchive {
     return p;
   }
 
-  private static class TileFilesWriter implements TileWriter {
+  private record PendingFile(Path path, byte[] data) {}
+
+  /**
+   * Queues up tiles into batches that get written by the I/O threads so that the tile writer thread does not wait on
+   * the latency of creating each file, or writes each tile immediately when there are no I/O threads.
+   * <p>
+   * Parent directories get created on the tile writer thread before a tile gets queued, so they always exist by the
+   * time an I/O thread writes to them.
+   */
+  private class TileFilesWriter implements TileWriter {
 
-    private final Function<TileCoord, Path> tileSchemeEncoder;
+    private final Deque<Future<?>> pending = new ArrayDeque<>();
+    // updated from the I/O threads that write this writer's batches
     private final Counter bytesWritten;
+    private final LongAdder filesWritten = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private List<PendingFile> batch = new ArrayList<>(writeBatchSize);
     private Path lastCheckedFolder;
 
-    TileFilesWriter(Path basePath, Function<TileCoord, Path> tileSchemeEncoder, Counter bytesWritten) {
-      this.tileSchemeEncoder = tileSchemeEncoder;
+    TileFilesWriter(Path basePath, Counter bytesWritten) {
       this.lastCheckedFolder = basePath;
       this.bytesWritten = bytesWritten;
+      createdDirectories.put(basePath, true);
     }
 
     @Override
     public final void write(TileEncodingResult encodingResult) {
 
-      final byte[] data = encodingResult.tileData();
-
       final Path file = tileSchemeEncoder.apply(encodingResult.coord());
       final Path folder = file.getParent();
 
       // tiny optimization in order to avoid too many unnecessary "folder-exists-checks" (I/O)
       // only effective when the tileScheme is z/x/y but doesn't really harm otherwise
-      if (!lastCheckedFolder.equals(folder) && !Files.exists(folder)) {
-        FileUtils.createDirectory(folder);
+      if (!lastCheckedFolder.equals(folder)) {
+        // blocks other writers that need the same folder until it has been created
+        createdDirectories.computeIfAbsent(folder, f -> {
+          if (!Files.exists(f)) {
+            FileUtils.createDirectory(f);
+          }
+          return true;
+        });
       }
       lastCheckedFolder = folder;
+
+      var pendingFile = new PendingFile(file, encodingResult.tileData());
+      if (ioExecutor == null) {
+        writeBatch(List.of(pendingFile));
+      } else {
+        batch.add(pendingFile);
+        if (batch.size() >= writeBatchSize) {
+          flush();
+        }
+      }
+    }
+
+    /** Writes a batch of tiles to disk, from one of the I/O threads or the tile writer thread. */
+    private void writeBatch(List<PendingFile> files) {
+      long start = System.nanoTime();
+      long bytes = 0;
       try {
-        Files.write(file, data);
+        for (var file : files) {
+          Files.write(file.path, file.data);
+          bytes += file.data.length;
+        }
       } catch (IOException e) {
         throw new UncheckedIOException(e);
+      } finally {
+        bytesWritten.incBy(bytes);
+        writeNanos.add(System.nanoTime() - start);
+      }
+      filesWritten.add(files.size());
+    }
+
+    private void flush() {
+      if (batch.isEmpty()) {
+        return;
+      }
+      var toWrite = batch;
+      batch = new ArrayList<>(writeBatchSize);
+      // surface errors from earlier batches as soon as possible
+      while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+        await(pending.pollFirst());
       }
+      try {
+        inFlightBatches.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+      try {
+        pending.addLast(ioExecutor.submit(() -> {
+          try {
+            writeBatch(toWrite);
+          } finally {
+            inFlightBatches.release();
+          }
+        }));
+      } catch (RejectedExecutionException e) {
+        inFlightBatches.release();
+        throw e;
+      }
+    }
 
-      bytesWritten.incBy(data.length);
+    private static void await(Future<?> future) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException runtimeException) {
+          throw runtimeException;
+        }
+        throw new IllegalStateException(e.getCause());
+      }
     }
 
     @Override
     public void close() {
-      // nothing to do here
+      flush();
+      while (!pending.isEmpty()) {
+        await(pending.pollFirst());
+      }
+    }
+
+    @Override
+    public void printStats() {
+      if (LOGGER.isDebugEnabled()) {
+        var format = Format.defaultInstance();
+        long files = filesWritten.sum();
+        double seconds = writeNanos.sum() / 1e9;
+        LOGGER.debug("Tile files written by this writer: {} ({} per I/O thread second, {} avg per file)",
+          format.integer(files),
+          format.numeric(seconds == 0 ? 0 : files / seconds),
+          format.duration(Duration.ofNanos(files == 0 ? 0 : writeNanos.sum() / files)));
+      }
     }
   }
 }
@@ -27,9 +27,15 @@ import org.locationtech.jts.geom.util.GeometryTransformer;
  * with modifications to avoid collapsing small polygons since the subsequent area filter will remove them more
  * accurately and performance improvement to put the results in a {@link MutableCoordinateSequence} which uses a
  * primitive double array instead of allocating lots of {@link Coordinate} objects.
+ * <p>
+ * Long lines are copied into separate primitive x and y arrays first so that the perpendicular distance scan is a
+ * simple counted loop over arrays that the JIT can compile to SIMD instructions.
  */
 public class DouglasPeuckerSimplifier {
 
+  /** Minimum number of points in a sequence before it is worth copying into {@link PackedPoints} to scan. */
+  private static final int PACKED_SCAN_MIN_POINTS = 64;
+
   /**
    * Returns a copy of {@code geom}, simplified using Douglas Peucker Algorithm.
    *
@@ -84,35 +90,43 @@ public class DouglasPeuckerSimplifier {
       return dx * dx + dy * dy;
     }
 
-    private void subsimplify(CoordinateSequence in, MutableCoordinateSequence out, int first, int last,
-      int numForcedPoints) {
+    private void subsimplify(CoordinateSequence in, PackedPoints packed, MutableCoordinateSequence out, int first,
+      int last, int numForcedPoints) {
       // numForcePoints lets us keep some points even if they are below simplification threshold
       boolean force = numForcedPoints > 0;
       double maxSqDist = force ? -1 : sqTolerance;
       int index = -1;
-      double p1x = in.getX(first);
-      double p1y = in.getY(first);
-      double p2x = in.getX(last);
-      double p2y = in.getY(last);
 
-      for (int i = first + 1; i < last; i++) {
-        double px = in.getX(i);
-        double py = in.getY(i);
-        double sqDist = getSqSegDist(px, py, p1x, p1y, p2x, p2y);
-
-        if (sqDist > maxSqDist) {
-          index = i;
-          maxSqDist = sqDist;
+      if (packed != null) {
+        index = packed.farthestPoint(first, last, maxSqDist);
+        if (index >= 0) {
+          maxSqDist = packed.sqDists[index];
+        }
+      } else {
+        double p1x = in.getX(first);
+        double p1y = in.getY(first);
+        double p2x = in.getX(last);
+        double p2y = in.getY(last);
+
+        for (int i = first + 1; i < last; i++) {
+          double px = in.getX(i);
+          double py = in.getY(i);
+          double sqDist = getSqSegDist(px, py, p1x, p1y, p2x, p2y);
+
+          if (sqDist > maxSqDist) {
+            index = i;
+            maxSqDist = sqDist;
+          }
         }
       }
 
       if (force || maxSqDist > sqTolerance) {
         if (index - first > 1) {
-          subsimplify(in, out, first, index, numForcedPoints - 1);
+          subsimplify(in, packed, out, first, index, numForcedPoints - 1);
         }
         out.forceAddPoint(in.getX(index), in.getY(index));
         if (last - index > 1) {
-          subsimplify(in, out, index, last, numForcedPoints - 2);
+          subsimplify(in, packed, out, index, last, numForcedPoints - 2);
         }
       }
     }
@@ -128,7 +142,11 @@ public class DouglasPeuckerSimplifier {
       result.forceAddPoint(coords.getX(0), coords.getY(0));
       // for polygons, additionally keep at least 2 intermediate points even if they are below simplification threshold
       // to avoid collapse.
-      subsimplify(coords, result, 0, coords.size() - 1, area ? 2 : 0);
+      PackedPoints packed = coords.size() >= PACKED_SCAN_MIN_POINTS ? PackedPoints.of(coords) : null;
+      subsimplify(coords, packed, result, 0, coords.size() - 1, area ? 2 : 0);
+      if (packed != null) {
+        packed.release();
+      }
       result.forceAddPoint(coords.getX(coords.size() - 1), coords.getY(coords.size() - 1));
       return result;
     }
@@ -148,4 +166,90 @@ public class DouglasPeuckerSimplifier {
       return simpResult;
     }
   }
+
+  /**
+   * Coordinates of a sequence copied into separate primitive x and y arrays with a scratch array of distances so that
+   * computing the distance from every point to a segment has no virtual calls or data-dependent branches on the loop
+   * and can be vectorized by the JIT.
+   * <p>
+   * Each thread re-uses one instance whose arrays only grow, so simplifying a long line at every zoom level does not
+   * allocate new arrays each time. Arrays larger than {@link #MAX_RETAINED_POINTS} get released after use.
+   */
+  private static final class PackedPoints {
+
+    private static final int MAX_RETAINED_POINTS = 1 << 20;
+    private static final ThreadLocal<PackedPoints> SCRATCH = ThreadLocal.withInitial(PackedPoints::new);
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    private double[] sqDists = new double[0];
+
+    /** Returns this thread's scratch instance filled with the coordinates from {@code seq}. */
+    private static PackedPoints of(CoordinateSequence seq) {
+      PackedPoints result = SCRATCH.get();
+      int size = seq.size();
+      if (result.xs.length < size) {
+        result.xs = new double[size];
+        result.ys = new double[size];
+        result.sqDists = new double[size];
+      }
+      for (int i = 0; i < size; i++) {
+        result.xs[i] = seq.getX(i);
+        result.ys[i] = seq.getY(i);
+      }
+      return result;
+    }
+
+    /** Releases the arrays if they grew too large to keep around for the next sequence. */
+    private void release() {
+      if (xs.length > MAX_RETAINED_POINTS) {
+        xs = ys = sqDists = new double[0];
+      }
+    }
+
+    /**
+     * Returns the index of the first point between {@code first} and {@code last} (exclusive) that is farthest from
+     * the segment between them, or -1 if none are more than {@code minSqDist} away.
+     * <p>
+     * Produces exactly the same result as calling {@link DPTransformer#getSqSegDist} on each point.
+     */
+    private int farthestPoint(int first, int last, double minSqDist) {
+      double p1x = xs[first];
+      double p1y = ys[first];
+      double p2x = xs[last];
+      double p2y = ys[last];
+      double dx = p2x - p1x;
+      double dy = p2y - p1y;
+
+      if (dx != 0d || dy != 0d) {
+        double sqLength = dx * dx + dy * dy;
+        for (int i = first + 1; i < last; i++) {
+          double px = xs[i];
+          double py = ys[i];
+          double t = ((px - p1x) * dx + (py - p1y) * dy) / sqLength;
+          double x = t > 1 ? p2x : t > 0 ? p1x + dx * t : p1x;
+          double y = t > 1 ? p2y : t > 0 ? p1y + dy * t : p1y;
+          double ddx = px - x;
+          double ddy = py - y;
+          sqDists[i] = ddx * ddx + ddy * ddy;
+        }
+      } else {
+        for (int i = first + 1; i < last; i++) {
+          double ddx = xs[i] - p1x;
+          double ddy = ys[i] - p1y;
+          sqDists[i] = ddx * ddx + ddy * ddy;
+        }
+      }
+
+      int index = -1;
+      double maxSqDist = minSqDist;
+      for (int i = first + 1; i < last; i++) {
+        double sqDist = sqDists[i];
+        if (sqDist > maxSqDist) {
+          index = i;
+          maxSqDist = sqDist;
+        }
+      }
+      return index;
+    }
+  }
 }
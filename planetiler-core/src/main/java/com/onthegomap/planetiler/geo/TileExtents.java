@@ -38,7 +38,10 @@ public class TileExtents implements Predicate<TileCoord> {
   public static TileExtents computeFromWorldBounds(int maxzoom, Envelope worldBounds, Geometry shape) {
     ForZoom[] zoomExtents = new ForZoom[maxzoom + 1];
     var mercator = shape == null ? null : GeoUtils.latLonToWorldCoords(shape);
-    for (int zoom = 0; zoom <= maxzoom; zoom++) {
+    TiledGeometry.CoveredTiles finerCovered = null;
+    // go from high to low zoom so that lower zoom levels can be derived from tiles covered at the next zoom level
+    // instead of slicing the full-resolution shape again
+    for (int zoom = maxzoom; zoom >= 0; zoom--) {
       int max = 1 << zoom;
 
       var forZoom = new ForZoom(
@@ -51,13 +54,18 @@ public class TileExtents implements Predicate<TileCoord> {
       );
 
       if (mercator != null) {
-        Geometry scaled = AffineTransformation.scaleInstance(1 << zoom, 1 << zoom).transform(mercator);
         TiledGeometry.CoveredTiles covered;
-        try {
-          covered = TiledGeometry.getCoveredTiles(scaled, zoom, forZoom);
-        } catch (GeometryException e) {
-          throw new IllegalArgumentException("Invalid geometry: " + scaled);
+        if (finerCovered != null) {
+          covered = finerCovered.atZoom(zoom);
+        } else {
+          Geometry scaled = AffineTransformation.scaleInstance(1 << zoom, 1 << zoom).transform(mercator);
+          try {
+            covered = TiledGeometry.getCoveredTiles(scaled, zoom, forZoom);
+          } catch (GeometryException e) {
+            throw new IllegalArgumentException("Invalid geometry: " + scaled);
+          }
         }
+        finerCovered = covered;
         forZoom = forZoom.withShape(covered);
         LOGGER.info("prepareShapeForZoom z{} {}", zoom, covered);
       }
@@ -1,20 +1,23 @@
 package com.onthegomap.planetiler.mbtiles;
 
-import com.carrotsearch.hppc.LongIntHashMap;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.onthegomap.planetiler.archive.ReadableTileArchive;
 import com.onthegomap.planetiler.archive.Tile;
 import com.onthegomap.planetiler.archive.TileArchiveMetadata;
 import com.onthegomap.planetiler.archive.TileArchiveMetadataDeSer;
+import com.onthegomap.planetiler.archive.TileArchiveWriter;
+import com.onthegomap.planetiler.archive.TileDataDeduplicator;
 import com.onthegomap.planetiler.archive.TileEncodingResult;
 import com.onthegomap.planetiler.archive.WriteableTileArchive;
 import com.onthegomap.planetiler.config.Arguments;
 import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.geo.TileExtents;
 import com.onthegomap.planetiler.geo.TileOrder;
 import com.onthegomap.planetiler.reader.FileFormatException;
 import com.onthegomap.planetiler.util.CloseableIterator;
 import com.onthegomap.planetiler.util.FileUtils;
 import com.onthegomap.planetiler.util.Format;
+import com.onthegomap.planetiler.util.Hashing;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.Connection;
@@ -31,11 +34,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.OptionalLong;
+import java.util.Queue;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import javax.annotation.concurrent.ThreadSafe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sqlite.SQLiteConfig;
@@ -82,6 +91,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
   private static final String METADATA_COL_VALUE = "value";
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Mbtiles.class);
+  private static final int MAX_TILE_READERS = Runtime.getRuntime().availableProcessors();
 
   // load the sqlite driver
   static {
@@ -97,11 +107,32 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
   private final boolean skipIndexCreation;
   private final boolean vacuumAnalyze;
   private PreparedStatement getTileStatement = null;
+  // opens extra connections so concurrent getTile calls on a read-only database don't wait for each other
+  private final Supplier<Connection> newReadConnection;
+  private final Semaphore tileReaderPermits = new Semaphore(MAX_TILE_READERS);
+  private final Queue<TileReader> idleTileReaders = new ConcurrentLinkedQueue<>();
 
   private final LongSupplier bytesWritten;
+  private final Path path;
+  private final Arguments arguments;
+  private final int writers;
+  private final boolean append;
+  private final AtomicInteger tileWriterCounter = new AtomicInteger(0);
+  private final List<Mbtiles> shards = new CopyOnWriteArrayList<>();
+  private final TileDataIds tileDataIds = new TileDataIds();
 
   private Mbtiles(Connection connection, Arguments arguments, LongSupplier bytesWritten) {
+    this(connection, arguments, bytesWritten, null, 1, false, null);
+  }
+
+  private Mbtiles(Connection connection, Arguments arguments, LongSupplier bytesWritten, Path path, int writers,
+    boolean append, Supplier<Connection> newReadConnection) {
     this.connection = connection;
+    this.newReadConnection = newReadConnection;
+    this.path = path;
+    this.arguments = arguments;
+    this.writers = writers;
+    this.append = append;
     this.compactDb = arguments.getBoolean(
       COMPACT_DB + "|" + LEGACY_COMPACT_DB,
       "mbtiles: reduce the DB size by separating and deduping the tile data",
@@ -142,6 +173,30 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
    * set from {@code options}.
    */
   public static Mbtiles newWriteToFileDatabase(Path path, Arguments options) {
+    return newWriteToFileDatabase(path, options, 1);
+  }
+
+  /**
+   * Returns a new connection to an mbtiles file optimized for fast bulk writes from {@code writers} concurrent tile
+   * writers.
+   * <p>
+   * When {@code writers > 1}, every tile writer after the first fills its own temporary shard database next to
+   * {@code path} without indexes, then {@link #finish(TileArchiveMetadata)} merges the shards into the output, which
+   * has the same schema as when writing from a single writer.
+   */
+  public static Mbtiles newWriteToFileDatabase(Path path, Arguments options, int writers) {
+    return newWriteToFileDatabase(path, options, writers, false);
+  }
+
+  /**
+   * Returns a new connection to an mbtiles file optimized for fast bulk writes, that adds tiles to the existing file at
+   * {@code path} when {@code append} is true.
+   * <p>
+   * When appending, the existing tables are kept and the compact/non-compact layout of the existing file is used
+   * regardless of {@code options}. Tiles that already exist get replaced, tile data that is no longer referenced gets
+   * deleted, and the new metadata gets merged with the existing metadata in {@link #finish(TileArchiveMetadata)}.
+   */
+  public static Mbtiles newWriteToFileDatabase(Path path, Arguments options, int writers, boolean append) {
     Objects.requireNonNull(path);
     SQLiteConfig sqliteConfig = new SQLiteConfig();
     sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.OFF);
@@ -151,7 +206,30 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     sqliteConfig.setTempStore(SQLiteConfig.TempStore.MEMORY);
     sqliteConfig.setApplicationId(MBTILES_APPLICATION_ID);
     var connection = newConnection("jdbc:sqlite:" + path.toAbsolutePath(), sqliteConfig, options);
-    return new Mbtiles(connection, options, () -> FileUtils.size(path));
+    if (append) {
+      boolean existingCompact = hasTable(connection, TILES_SHALLOW_TABLE);
+      options = Arguments.of(COMPACT_DB, Boolean.toString(existingCompact)).orElse(options);
+    }
+    return new Mbtiles(connection, options, () -> FileUtils.size(path), path, writers, append, null);
+  }
+
+  private static boolean hasTable(Connection connection, String table) {
+    try (var statement = connection.prepareStatement("SELECT 1 FROM sqlite_master WHERE type='table' AND name=?")) {
+      statement.setString(1, table);
+      try (var rs = statement.executeQuery()) {
+        return rs.next();
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Unable to read schema", e);
+    }
+  }
+
+  /**
+   * Returns the path of the temporary shard database that tile writer {@code index} fills when writing with multiple
+   * threads, using the same naming as {@link com.onthegomap.planetiler.archive.TileArchiveConfig}.
+   */
+  public static Path shardPath(Path path, int index) {
+    return index == 0 ? path : Path.of(path.toString() + index);
   }
 
   /** Returns a new connection to an mbtiles file optimized for reads. */
@@ -172,8 +250,9 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     config.setPageSize(32_768);
     // helps with 3 or more threads concurrently accessing:
     // config.setOpenMode(SQLiteOpenMode.NOMUTEX);
-    Connection connection = newConnection("jdbc:sqlite:" + path.toAbsolutePath(), config, options);
-    return new Mbtiles(connection, options, () -> 0);
+    String url = "jdbc:sqlite:" + path.toAbsolutePath();
+    Connection connection = newConnection(url, config, options);
+    return new Mbtiles(connection, options, () -> 0, path, 1, false, () -> newConnection(url, config, options));
   }
 
   private static Connection newConnection(String url, SQLiteConfig defaults, Arguments args) {
@@ -212,7 +291,9 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
 
   @Override
   public void initialize() {
-    if (skipIndexCreation) {
+    if (append) {
+      prepareForAppend();
+    } else if (skipIndexCreation) {
       createTablesWithoutIndexes();
       if (LOGGER.isInfoEnabled()) {
         LOGGER.info("Skipping index creation. Add later by executing: {}",
@@ -225,6 +306,15 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
 
   @Override
   public void finish(TileArchiveMetadata tileArchiveMetadata) {
+    if (writers > 1) {
+      mergeShards();
+    }
+    if (append) {
+      if (compactDb) {
+        deleteOrphanedTileData();
+      }
+      tileArchiveMetadata = tileArchiveMetadata.mergedWith(metadata());
+    }
     metadataTable().set(tileArchiveMetadata);
     if (vacuumAnalyze) {
       vacuumAnalyze();
@@ -233,18 +323,185 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
 
   @Override
   public long bytesWritten() {
-    return bytesWritten.getAsLong();
+    return bytesWritten.getAsLong() + shards.stream().mapToLong(Mbtiles::bytesWritten).sum();
+  }
+
+  @Override
+  public long estimateMemoryUsageBytes() {
+    return tileDataIds.estimateMemoryUsageBytes();
   }
 
   @Override
   public void close() throws IOException {
     try {
+      // shards only remain if writing failed before they got merged in
+      for (var shard : shards) {
+        shard.close();
+        FileUtils.delete(shard.path);
+      }
+      shards.clear();
+      TileReader reader;
+      while ((reader = idleTileReaders.poll()) != null) {
+        reader.connection.close();
+      }
       connection.close();
     } catch (SQLException throwables) {
       throw new IOException(throwables);
     }
   }
 
+  /**
+   * Prepares an existing database to have more tiles written into it: adds the unique index that upserts rely on if it
+   * was skipped when the file was created, and continues tile data IDs after the existing ones.
+   * <p>
+   * Tile data that is shared by more than one tile (i.e. ocean and other filled tiles) gets hashed so that identical new
+   * tiles keep referencing it instead of storing another copy. Data used by a single tile is not loaded since it is
+   * unlikely to be repeated.
+   */
+  private void prepareForAppend() {
+    String table = compactDb ? TILES_SHALLOW_TABLE : TILES_TABLE;
+    try (
+      var statement = connection.createStatement();
+      var rs = statement.executeQuery("SELECT count(*) FROM pragma_index_list('%s')".formatted(table))
+    ) {
+      if (rs.next() && rs.getInt(1) == 0) {
+        LOGGER.info("Creating mbtiles indexes before appending...");
+        execute(getManualIndexCreationStatements());
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Unable to read indexes of " + table, e);
+    }
+    if (compactDb) {
+      try (var statement = connection.createStatement()) {
+        try (var rs = statement.executeQuery("SELECT max(%s) FROM %s".formatted(TILES_DATA_COL_DATA_ID,
+          TILES_DATA_TABLE))) {
+          tileDataIds.startAfter(rs.next() ? rs.getInt(1) : 0);
+        }
+        try (var rs = statement.executeQuery("""
+          SELECT %s, %s FROM %s WHERE %s IN (
+            SELECT %s FROM %s GROUP BY %s HAVING count(*) > 1
+          )
+          """.formatted(TILES_DATA_COL_DATA_ID, TILES_DATA_COL_DATA, TILES_DATA_TABLE, TILES_DATA_COL_DATA_ID,
+          TILES_SHALLOW_COL_DATA_ID, TILES_SHALLOW_TABLE, TILES_SHALLOW_COL_DATA_ID))) {
+          while (rs.next()) {
+            byte[] data = rs.getBytes(2);
+            tileDataIds.seed(TileArchiveWriter.generateContentHash(data), data, rs.getInt(1));
+          }
+        }
+      } catch (SQLException e) {
+        throw new IllegalStateException("Unable to read existing tile data", e);
+      }
+      LOGGER.info("Appending to existing mbtiles with {} shared tile data entries", tileDataIds.uniqueHashes());
+    }
+  }
+
+  /**
+   * Deletes existing tiles within {@code extents} one zoom level at a time, using a single range delete when the extents
+   * are a rectangle. For a {@link TileExtents.ForZoom#shapeFilter() shape} only the tiles in its bounding rectangle that
+   * exist in the database get tested against the shape, so this never iterates over empty parts of the rectangle.
+   * <p>
+   * Tile data that is no longer referenced gets removed when the archive is finished.
+   */
+  @Override
+  public void deleteTiles(TileExtents extents, int minzoom, int maxzoom) {
+    String table = compactDb ? TILES_SHALLOW_TABLE : TILES_TABLE;
+    String where = "%s=? AND %s>=? AND %s<? AND %s>=? AND %s<=?".formatted(TILES_COL_Z, TILES_COL_X, TILES_COL_X,
+      TILES_COL_Y, TILES_COL_Y);
+    long deleted = 0;
+    try (
+      var deleteRange = connection.prepareStatement("DELETE FROM %s WHERE %s".formatted(table, where));
+      var selectRange = connection.prepareStatement("SELECT %s, %s, %s FROM %s WHERE %s".formatted(
+        TILES_COL_Z, TILES_COL_X, TILES_COL_Y, table, where));
+      var deleteOne = connection.prepareStatement("DELETE FROM %s WHERE %s=? AND %s=? AND %s=?".formatted(
+        table, TILES_COL_Z, TILES_COL_X, TILES_COL_Y))
+    ) {
+      for (int z = minzoom; z <= maxzoom; z++) {
+        var forZoom = extents.getForZoom(z);
+        int maxRow = (1 << z) - 1;
+        PreparedStatement statement = forZoom.shapeFilter() == null ? deleteRange : selectRange;
+        statement.setInt(1, z);
+        statement.setInt(2, forZoom.minX());
+        statement.setInt(3, forZoom.maxX());
+        // tile_row is flipped from y
+        statement.setInt(4, maxRow - (forZoom.maxY() - 1));
+        statement.setInt(5, maxRow - forZoom.minY());
+        if (forZoom.shapeFilter() == null) {
+          deleted += deleteRange.executeUpdate();
+        } else {
+          List<TileCoord> toDelete = new ArrayList<>();
+          try (var rs = selectRange.executeQuery()) {
+            while (rs.next()) {
+              TileCoord coord = getResultCoord(rs);
+              if (forZoom.test(coord.x(), coord.y())) {
+                toDelete.add(coord);
+              }
+            }
+          }
+          for (var coord : toDelete) {
+            deleteOne.setInt(1, coord.z());
+            deleteOne.setInt(2, coord.x());
+            deleteOne.setInt(3, maxRow - coord.y());
+            deleteOne.addBatch();
+          }
+          deleteOne.executeBatch();
+          deleted += toDelete.size();
+        }
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Unable to delete tiles from " + table, e);
+    }
+    LOGGER.info("Deleted {} existing tiles to regenerate from z{} to z{}", deleted, minzoom, maxzoom);
+  }
+
+  /** Deletes rows from the tiles_data table that no tile references anymore after some got replaced. */
+  private void deleteOrphanedTileData() {
+    try (var statement = connection.createStatement()) {
+      int deleted = statement.executeUpdate("DELETE FROM %s WHERE %s NOT IN (SELECT %s FROM %s)".formatted(
+        TILES_DATA_TABLE, TILES_DATA_COL_DATA_ID, TILES_SHALLOW_COL_DATA_ID, TILES_SHALLOW_TABLE));
+      LOGGER.info("Deleted {} orphaned tile data entries", deleted);
+    } catch (SQLException e) {
+      throw new IllegalStateException("Unable to delete orphaned tile data", e);
+    }
+  }
+
+  /**
+   * Copies tiles from each shard database into this one with {@code ATTACH} and {@code INSERT ... SELECT}, then deletes
+   * the shards.
+   * <p>
+   * Tile data IDs are assigned from a counter shared by all writers and only the writer that assigns an ID writes its
+   * tile data, so each tile data row exists in exactly one shard and identical tile contents written by different
+   * shards reference the same ID.
+   */
+  private void mergeShards() {
+    for (var shard : shards) {
+      Path shardPath = shard.path;
+      try {
+        shard.close();
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to close shard " + shardPath, e);
+      }
+      LOGGER.info("Merging {} into {}", shardPath.getFileName(), path.getFileName());
+      try (var attach = connection.prepareStatement("ATTACH DATABASE ? AS shard")) {
+        attach.setString(1, shardPath.toAbsolutePath().toString());
+        attach.execute();
+      } catch (SQLException e) {
+        throw new IllegalStateException("Unable to attach " + shardPath, e);
+      }
+      String insert = append ? "INSERT OR REPLACE" : "INSERT";
+      if (compactDb) {
+        execute(
+          "INSERT INTO %s SELECT * FROM shard.%s".formatted(TILES_DATA_TABLE, TILES_DATA_TABLE),
+          "%s INTO %s SELECT * FROM shard.%s".formatted(insert, TILES_SHALLOW_TABLE, TILES_SHALLOW_TABLE)
+        );
+      } else {
+        execute("%s INTO %s SELECT * FROM shard.%s".formatted(insert, TILES_TABLE, TILES_TABLE));
+      }
+      execute("DETACH DATABASE shard");
+      FileUtils.delete(shardPath);
+    }
+    shards.clear();
+  }
+
   private Mbtiles execute(Collection<String> queries) {
     for (String query : queries) {
       try (var statement = connection.createStatement()) {
@@ -371,12 +628,26 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     );
   }
 
-  /** Returns a writer that queues up inserts into the tile database(s) into large batches before executing them. */
+  /**
+   * Returns a writer that queues up inserts into the tile database(s) into large batches before executing them.
+   * <p>
+   * When writing with multiple threads, the first writer inserts into this database and each additional writer inserts
+   * into its own shard database.
+   */
   public WriteableTileArchive.TileWriter newTileWriter() {
+    int index = tileWriterCounter.getAndIncrement();
+    Mbtiles target = this;
+    if (index > 0 && writers > 1) {
+      Path shardPath = shardPath(path, index);
+      FileUtils.delete(shardPath);
+      target = newWriteToFileDatabase(shardPath, arguments.copy().silence(), 1);
+      target.createTablesWithoutIndexes();
+      shards.add(target);
+    }
     if (compactDb) {
-      return new BatchedCompactTileWriter();
+      return target.new BatchedCompactTileWriter(tileDataIds);
     } else {
-      return new BatchedNonCompactTileWriter();
+      return target.new BatchedNonCompactTileWriter();
     }
   }
 
@@ -395,13 +666,17 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     return new Metadata();
   }
 
+  private static PreparedStatement prepareGetTile(Connection connection) throws SQLException {
+    return connection.prepareStatement("""
+      SELECT tile_data FROM %s
+      WHERE %s=? AND %s=? AND %s=?
+      """.formatted(TILES_TABLE, TILES_COL_X, TILES_COL_Y, TILES_COL_Z));
+  }
+
   private PreparedStatement getTileStatement() {
     if (getTileStatement == null) {
       try {
-        getTileStatement = connection.prepareStatement("""
-          SELECT tile_data FROM %s
-          WHERE %s=? AND %s=? AND %s=?
-          """.formatted(TILES_TABLE, TILES_COL_X, TILES_COL_Y, TILES_COL_Z));
+        getTileStatement = prepareGetTile(connection);
       } catch (SQLException throwables) {
         throw new IllegalStateException(throwables);
       }
@@ -409,10 +684,51 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     return getTileStatement;
   }
 
+  /**
+   * Returns the tile at {@code x, y, z}.
+   * <p>
+   * Read-only databases read from a pool of up to {@link #MAX_TILE_READERS} connections that each have their own
+   * prepared statement so concurrent reads don't block each other, other databases read from the single connection
+   * that they write through one at a time.
+   */
   @Override
   public byte[] getTile(int x, int y, int z) {
+    if (newReadConnection == null) {
+      synchronized (this) {
+        return getTile(getTileStatement(), x, y, z);
+      }
+    }
+    TileReader reader = borrowTileReader();
+    try {
+      return getTile(reader.statement, x, y, z);
+    } finally {
+      idleTileReaders.add(reader);
+      tileReaderPermits.release();
+    }
+  }
+
+  private TileReader borrowTileReader() {
+    try {
+      tileReaderPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for a connection to get tile", e);
+    }
+    TileReader reader = idleTileReaders.poll();
+    if (reader == null) {
+      try {
+        Connection readConnection = newReadConnection.get();
+        reader = new TileReader(readConnection, prepareGetTile(readConnection));
+      } catch (SQLException | RuntimeException e) {
+        tileReaderPermits.release();
+        throw new IllegalStateException("Could not open connection to get tile", e);
+      }
+    }
+    return reader;
+  }
+
+  private static byte[] getTile(PreparedStatement stmt, int x, int y, int z) {
     try {
-      PreparedStatement stmt = getTileStatement();
       stmt.setInt(1, x);
       stmt.setInt(2, (1 << z) - 1 - y);
       stmt.setInt(3, z);
@@ -468,7 +784,10 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
    *      schema</a>
    */
 
-     /** Contents of a row of the tiles_shallow table. */
+     /** A read-only connection and its prepared statement that one {@link #getTile} call uses at a time. */
+  private record TileReader(Connection connection, PreparedStatement statement) {}
+
+  /** Contents of a row of the tiles_shallow table. */
   private record TileShallowEntry(TileCoord coord, int tileDataId) {}
 
   /** Contents of a row of the tiles_data table. */
@@ -564,17 +883,21 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     private final PreparedStatement batchStatement;
     private final int batchLimit;
     private final String insertStmtTableName;
-    private final boolean insertStmtInsertIgnore;
+    private final String insertStmtConflictResolution;
     private final String insertStmtValuesPlaceHolder;
     private final String insertStmtColumnsCsv;
     private long count = 0;
 
 
-    protected BatchedTableWriterBase(String tableName, List<String> columns, boolean insertIgnore) {
+    /**
+     * @param conflictResolution {@code "OR IGNORE"} or {@code "OR REPLACE"} to handle rows that already exist, or an
+     *                           empty string to fail
+     */
+    protected BatchedTableWriterBase(String tableName, List<String> columns, String conflictResolution) {
       batchLimit = MAX_PARAMETERS_IN_PREPARED_STATEMENT / columns.size();
       batch = new ArrayList<>(batchLimit);
       insertStmtTableName = tableName;
-      insertStmtInsertIgnore = insertIgnore;
+      insertStmtConflictResolution = conflictResolution;
       insertStmtValuesPlaceHolder = columns.stream().map(c -> "?").collect(Collectors.joining(",", "(", ")"));
       insertStmtColumnsCsv = String.join(",", columns);
       batchStatement = createBatchInsertPreparedStatement(batchLimit);
@@ -595,7 +918,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     private PreparedStatement createBatchInsertPreparedStatement(int size) {
 
       final String sql = "INSERT %s INTO %s (%s) VALUES %s;".formatted(
-        insertStmtInsertIgnore ? "OR IGNORE" : "",
+        insertStmtConflictResolution,
         insertStmtTableName,
         insertStmtColumnsCsv,
         IntStream.range(0, size).mapToObj(i -> insertStmtValuesPlaceHolder).collect(Collectors.joining(", "))
@@ -649,7 +972,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     private static final List<String> COLUMNS = List.of(TILES_COL_Z, TILES_COL_X, TILES_COL_Y, TILES_COL_DATA);
 
     BatchedTileTableWriter() {
-      super(TILES_TABLE, COLUMNS, false);
+      super(TILES_TABLE, COLUMNS, append ? "OR REPLACE" : "");
     }
 
     @Override
@@ -675,7 +998,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
       List.of(TILES_SHALLOW_COL_Z, TILES_SHALLOW_COL_X, TILES_SHALLOW_COL_Y, TILES_SHALLOW_COL_DATA_ID);
 
     BatchedTileShallowTableWriter() {
-      super(TILES_SHALLOW_TABLE, COLUMNS, false);
+      super(TILES_SHALLOW_TABLE, COLUMNS, append ? "OR REPLACE" : "");
     }
 
     @Override
@@ -701,7 +1024,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     private static final List<String> COLUMNS = List.of(TILES_DATA_COL_DATA_ID, TILES_DATA_COL_DATA);
 
     BatchedTileDataTableWriter() {
-      super(TILES_DATA_TABLE, COLUMNS, true);
+      super(TILES_DATA_TABLE, COLUMNS, "OR IGNORE");
     }
 
     @Override
@@ -731,34 +1054,65 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
 
   }
 
+  /** Assigns tile data IDs, shared by all writers to an archive so IDs stay unique across shards. */
+  @ThreadSafe
+  private static class TileDataIds {
+
+    private final TileDataDeduplicator deduplicator = new TileDataDeduplicator();
+    private int tileDataIdCounter = 1;
+
+    /**
+     * Returns the ID of existing identical tile data, or a new ID negated if the data of {@code tile} still needs to be
+     * written.
+     */
+    synchronized int forTile(TileEncodingResult tile) {
+      long existing = deduplicator.find(tile);
+      if (existing != TileDataDeduplicator.NOT_FOUND) {
+        return (int) existing;
+      }
+      int id = tileDataIdCounter++;
+      deduplicator.put(tile, id);
+      return -id;
+    }
+
+    /** Makes identical tile data resolve to the existing tile data {@code id}. */
+    synchronized void seed(Hashing.Hash128 hash, byte[] data, int id) {
+      deduplicator.put(hash, data, id);
+    }
+
+    /** Makes new IDs start after {@code maxId}. */
+    synchronized void startAfter(int maxId) {
+      tileDataIdCounter = Math.max(tileDataIdCounter, maxId + 1);
+    }
+
+    synchronized int uniqueHashes() {
+      return deduplicator.size();
+    }
+
+    synchronized long collisions() {
+      return deduplicator.collisions();
+    }
+
+    synchronized long estimateMemoryUsageBytes() {
+      return deduplicator.estimateMemoryUsageBytes();
+    }
+  }
+
   private class BatchedCompactTileWriter implements TileWriter {
 
     private final BatchedTileShallowTableWriter batchedTileShallowTableWriter = new BatchedTileShallowTableWriter();
     private final BatchedTileDataTableWriter batchedTileDataTableWriter = new BatchedTileDataTableWriter();
-    private final LongIntHashMap tileDataIdByHash = new LongIntHashMap(1_000);
+    private final TileDataIds tileDataIds;
 
-    private int tileDataIdCounter = 1;
+    BatchedCompactTileWriter(TileDataIds tileDataIds) {
+      this.tileDataIds = tileDataIds;
+    }
 
     @Override
     public void write(TileEncodingResult encodingResult) {
-      int tileDataId;
-      boolean writeData;
-      OptionalLong tileDataHashOpt = encodingResult.tileDataHash();
-
-      if (tileDataHashOpt.isPresent()) {
-        long tileDataHash = tileDataHashOpt.getAsLong();
-        if (tileDataIdByHash.containsKey(tileDataHash)) {
-          tileDataId = tileDataIdByHash.get(tileDataHash);
-          writeData = false;
-        } else {
-          tileDataId = tileDataIdCounter++;
-          tileDataIdByHash.put(tileDataHash, tileDataId);
-          writeData = true;
-        }
-      } else {
-        tileDataId = tileDataIdCounter++;
-        writeData = true;
-      }
+      int tileDataId = tileDataIds.forTile(encodingResult);
+      boolean writeData = tileDataId < 0;
+      tileDataId = Math.abs(tileDataId);
       if (writeData) {
         batchedTileDataTableWriter.write(new TileDataEntry(tileDataId, encodingResult.tileData()));
       }
@@ -778,7 +1132,8 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
         LOGGER.debug("Shallow tiles written: {}", format.integer(batchedTileShallowTableWriter.count()));
         LOGGER.debug("Tile data written: {} ({} omitted)", format.integer(batchedTileDataTableWriter.count()),
           format.percent(1d - batchedTileDataTableWriter.count() * 1d / batchedTileShallowTableWriter.count()));
-        LOGGER.debug("Unique tile hashes: {}", format.integer(tileDataIdByHash.size()));
+        LOGGER.debug("Unique tile hashes: {}", format.integer(tileDataIds.uniqueHashes()));
+        LOGGER.debug("Tile hash collisions: {}", format.integer(tileDataIds.collisions()));
       }
     }
   }
@@ -796,7 +1151,8 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
             value);
         try (
           PreparedStatement statement = connection.prepareStatement(
-            "INSERT INTO " + METADATA_TABLE + " (" + METADATA_COL_NAME + "," + METADATA_COL_VALUE + ") VALUES(?, ?);")
+            "INSERT OR REPLACE INTO " + METADATA_TABLE + " (" + METADATA_COL_NAME + "," + METADATA_COL_VALUE +
+              ") VALUES(?, ?);")
         ) {
           statement.setString(1, name);
           statement.setString(2, value);
@@ -0,0 +1,104 @@
+package com.onthegomap.planetiler.pmtiles;
+
+import com.onthegomap.planetiler.util.MemoryEstimator;
+import com.onthegomap.planetiler.util.VarInt;
+import java.nio.ByteBuffer;
+
+/**
+ * An immutable PMTiles directory decoded into parallel primitive arrays, which takes much less memory than a list of
+ * {@link Pmtiles.Entry} objects and can be binary-searched without following pointers.
+ */
+final class DecodedDirectory implements MemoryEstimator.HasEstimate {
+
+  private final long[] tileIds;
+  private final long[] offsets;
+  private final int[] lengths;
+  private final int[] runLengths;
+
+  private DecodedDirectory(long[] tileIds, long[] offsets, int[] lengths, int[] runLengths) {
+    this.tileIds = tileIds;
+    this.offsets = offsets;
+    this.lengths = lengths;
+    this.runLengths = runLengths;
+  }
+
+  /** Decodes an uncompressed directory in the same format that {@link Pmtiles#directoryFromBytes(byte[])} reads. */
+  static DecodedDirectory fromBytes(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    int numEntries = (int) VarInt.getVarLong(buffer);
+    long[] tileIds = new long[numEntries];
+    long[] offsets = new long[numEntries];
+    int[] lengths = new int[numEntries];
+    int[] runLengths = new int[numEntries];
+
+    long lastId = 0;
+    for (int i = 0; i < numEntries; i++) {
+      lastId = tileIds[i] = lastId + VarInt.getVarLong(buffer);
+    }
+    for (int i = 0; i < numEntries; i++) {
+      runLengths[i] = (int) VarInt.getVarLong(buffer);
+    }
+    for (int i = 0; i < numEntries; i++) {
+      lengths[i] = (int) VarInt.getVarLong(buffer);
+    }
+    for (int i = 0; i < numEntries; i++) {
+      long tmp = VarInt.getVarLong(buffer);
+      offsets[i] = (i > 0 && tmp == 0) ? offsets[i - 1] + lengths[i - 1] : tmp - 1;
+    }
+    return new DecodedDirectory(tileIds, offsets, lengths, runLengths);
+  }
+
+  /**
+   * Returns the index of the entry for {@code tileId} using the same rules as
+   * {@link ReadablePmtiles#findTile(java.util.List, long)}, or -1 if there is none.
+   */
+  int find(long tileId) {
+    int m = 0;
+    int n = tileIds.length - 1;
+    while (m <= n) {
+      int k = (n + m) >>> 1;
+      long cmp = tileId - tileIds[k];
+      if (cmp > 0) {
+        m = k + 1;
+      } else if (cmp < 0) {
+        n = k - 1;
+      } else {
+        return k;
+      }
+    }
+    if (n >= 0 && (runLengths[n] == 0 || tileId - tileIds[n] < runLengths[n])) {
+      return n;
+    }
+    return -1;
+  }
+
+  int size() {
+    return tileIds.length;
+  }
+
+  long tileId(int i) {
+    return tileIds[i];
+  }
+
+  long offset(int i) {
+    return offsets[i];
+  }
+
+  int length(int i) {
+    return lengths[i];
+  }
+
+  int runLength(int i) {
+    return runLengths[i];
+  }
+
+  /** Returns true if entry {@code i} points to a leaf directory instead of tile data. */
+  boolean isLeaf(int i) {
+    return runLengths[i] == 0;
+  }
+
+  @Override
+  public long estimateMemoryUsageBytes() {
+    return 64 + tileIds.length * 24L;
+  }
+}
@@ -0,0 +1,151 @@
+package com.onthegomap.planetiler.pmtiles;
+
+import com.carrotsearch.hppc.ByteArrayList;
+import com.onthegomap.planetiler.util.ByteBufferUtil;
+import com.onthegomap.planetiler.util.VarInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * An append-only list of PMTiles directory entries stored off-heap in packed primitive columns, so that an archive with
+ * hundreds of millions of entries does not need one {@link Pmtiles.Entry} object for each on the heap.
+ * <p>
+ * Entries get stored in direct {@link ByteBuffer} segments of {@link #SEGMENT_ENTRIES} entries each. Within a segment,
+ * each column (tile ID, offset, length, run length) is stored contiguously.
+ * <p>
+ * Getters only use absolute reads, so once all entries have been added they can be read from multiple threads at once.
+ */
+@NotThreadSafe
+final class PackedEntries implements Closeable {
+
+  static final int SEGMENT_ENTRIES = 1 << 18;
+  private static final int OFFSETS_START = SEGMENT_ENTRIES * Long.BYTES;
+  private static final int LENGTHS_START = OFFSETS_START + SEGMENT_ENTRIES * Long.BYTES;
+  private static final int RUN_LENGTHS_START = LENGTHS_START + SEGMENT_ENTRIES * Integer.BYTES;
+  private static final int SEGMENT_BYTES = RUN_LENGTHS_START + SEGMENT_ENTRIES * Integer.BYTES;
+
+  private final List<ByteBuffer> segments = new ArrayList<>();
+  private long size = 0;
+
+  /** Returns a new packed copy of {@code entries}. */
+  static PackedEntries of(List<Pmtiles.Entry> entries) {
+    PackedEntries result = new PackedEntries();
+    for (var entry : entries) {
+      result.add(entry.tileId(), entry.offset(), entry.length(), entry.runLength());
+    }
+    return result;
+  }
+
+  private ByteBuffer segment(long index) {
+    return segments.get((int) (index / SEGMENT_ENTRIES));
+  }
+
+  private static int slot(long index) {
+    return (int) (index % SEGMENT_ENTRIES);
+  }
+
+  void add(long tileId, long offset, int length, int runLength) {
+    if (size / SEGMENT_ENTRIES >= segments.size()) {
+      segments.add(ByteBuffer.allocateDirect(SEGMENT_BYTES));
+    }
+    ByteBuffer segment = segment(size);
+    int i = slot(size);
+    segment.putLong(i * Long.BYTES, tileId);
+    segment.putLong(OFFSETS_START + i * Long.BYTES, offset);
+    segment.putInt(LENGTHS_START + i * Integer.BYTES, length);
+    segment.putInt(RUN_LENGTHS_START + i * Integer.BYTES, runLength);
+    size++;
+  }
+
+  /** Adds one to the run length of the last entry. */
+  void extendLastRun() {
+    long last = size - 1;
+    segment(last).putInt(RUN_LENGTHS_START + slot(last) * Integer.BYTES, runLength(last) + 1);
+  }
+
+  long size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  long tileId(long index) {
+    return segment(index).getLong(slot(index) * Long.BYTES);
+  }
+
+  long offset(long index) {
+    return segment(index).getLong(OFFSETS_START + slot(index) * Long.BYTES);
+  }
+
+  int length(long index) {
+    return segment(index).getInt(LENGTHS_START + slot(index) * Integer.BYTES);
+  }
+
+  int runLength(long index) {
+    return segment(index).getInt(RUN_LENGTHS_START + slot(index) * Integer.BYTES);
+  }
+
+  /**
+   * Returns a copy of these entries sorted by tile ID.
+   * <p>
+   * This materializes every entry on the heap so it should only be needed when tiles were not written in order.
+   */
+  PackedEntries sorted() {
+    List<Pmtiles.Entry> list = new ArrayList<>();
+    for (long i = 0; i < size; i++) {
+      list.add(new Pmtiles.Entry(tileId(i), offset(i), length(i), runLength(i)));
+    }
+    Collections.sort(list);
+    return of(list);
+  }
+
+  /**
+   * Serializes entries from {@code start} (inclusive) to {@code end} (exclusive) to an uncompressed directory, in the
+   * same format as {@link Pmtiles#directoryToBytes(List)}.
+   */
+  byte[] directoryToBytes(long start, long end) {
+    ByteArrayList dir = new ByteArrayList();
+
+    VarInt.putVarLong(end - start, dir);
+
+    long lastId = 0;
+    for (long i = start; i < end; i++) {
+      long tileId = tileId(i);
+      VarInt.putVarLong(tileId - lastId, dir);
+      lastId = tileId;
+    }
+
+    for (long i = start; i < end; i++) {
+      VarInt.putVarLong(runLength(i), dir);
+    }
+
+    for (long i = start; i < end; i++) {
+      VarInt.putVarLong(length(i), dir);
+    }
+
+    for (long i = start; i < end; i++) {
+      long offset = offset(i);
+      if (i > start && offset == offset(i - 1) + length(i - 1)) {
+        VarInt.putVarLong(0, dir);
+      } else {
+        VarInt.putVarLong(offset + 1, dir);
+      }
+    }
+
+    return dir.toArray();
+  }
+
+  @Override
+  public void close() throws IOException {
+    ByteBufferUtil.free(segments.toArray(ByteBuffer[]::new));
+    segments.clear();
+    size = 0;
+  }
+}
@@ -14,30 +14,69 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import javax.annotation.concurrent.ThreadSafe;
 import org.locationtech.jts.geom.Coordinate;
 
+/**
+ * Reads tiles from a PMTiles archive.
+ * <p>
+ * The root directory gets decoded once when the archive is opened, and leaf directories get decoded into a
+ * size-bounded least-recently-used cache the first time a tile lookup needs them, so random access only pays to
+ * decompress and parse each directory once. Iterating through all tiles reads leaf directories sequentially in large
+ * batches without going through the cache.
+ */
 public class ReadablePmtiles implements ReadableTileArchive {
+  /** Default maximum estimated size of decoded leaf directories to keep in memory. */
+  public static final long DEFAULT_DIRECTORY_CACHE_BYTES = 64L * 1024 * 1024;
+  /** Maximum number of bytes of adjacent leaf directories to fetch in a single read when iterating through tiles. */
+  private static final int READ_AHEAD_BYTES = 4 * 1024 * 1024;
   private final SeekableByteChannel channel;
   private final Pmtiles.Header header;
+  private final DecodedDirectory rootDir;
+  private final DirectoryCache leafDirs;
 
   public ReadablePmtiles(SeekableByteChannel channel) throws IOException {
+    this(channel, DEFAULT_DIRECTORY_CACHE_BYTES);
+  }
+
+  /**
+   * Opens a PMTiles archive from {@code channel}.
+   *
+   * @param channel             channel to read the archive from
+   * @param directoryCacheBytes maximum estimated size of decoded leaf directories to keep in memory
+   * @throws IOException if the header or root directory could not be read
+   */
+  public ReadablePmtiles(SeekableByteChannel channel, long directoryCacheBytes) throws IOException {
     this.channel = channel;
 
     this.header = Pmtiles.Header.fromBytes(getBytes(0, Pmtiles.HEADER_LEN));
+    this.rootDir = decodeDir(getBytes(header.rootDirOffset(), (int) header.rootDirLength()));
+    this.leafDirs = new DirectoryCache(directoryCacheBytes);
   }
 
   public static ReadableTileArchive newReadFromFile(Path path) throws IOException {
     return new ReadablePmtiles(FileChannel.open(path, StandardOpenOption.READ));
   }
 
-  private synchronized byte[] getBytes(long start, int length) throws IOException {
-    channel.position(start);
+  private byte[] getBytes(long start, int length) throws IOException {
     var buf = ByteBuffer.allocate(length);
-    channel.read(buf);
+    if (channel instanceof FileChannel fileChannel) {
+      // positional reads don't change the channel position, so concurrent readers don't need to wait on each other
+      while (buf.hasRemaining() && fileChannel.read(buf, start + buf.position()) >= 0) {
+        // keep reading until the buffer is full
+      }
+    } else {
+      synchronized (this) {
+        channel.position(start);
+        channel.read(buf);
+      }
+    }
     return buf.array();
   }
 
@@ -72,29 +111,17 @@ public class ReadablePmtiles implements ReadableTileArchive {
   public byte[] getTile(int x, int y, int z) {
     try {
       var tileId = TileCoord.ofXYZ(x, y, z).hilbertEncoded();
-
-      long dirOffset = header.rootDirOffset();
-      int dirLength = (int) header.rootDirLength();
+      DecodedDirectory dir = rootDir;
 
       for (int depth = 0; depth <= 3; depth++) {
-        byte[] dirBytes = getBytes(dirOffset, dirLength);
-        if (header.internalCompression() == Pmtiles.Compression.GZIP) {
-          dirBytes = Gzip.gunzip(dirBytes);
-        }
-
-        var dir = Pmtiles.directoryFromBytes(dirBytes);
-        var entry = findTile(dir, tileId);
-        if (entry != null) {
-          if (entry.runLength() > 0) {
-            return getBytes(header.tileDataOffset() + entry.offset(), entry.length());
-          } else {
-            dirOffset = header.leafDirectoriesOffset() + entry.offset();
-            dirLength = entry.length();
-          }
-        } else {
+        int i = dir.find(tileId);
+        if (i < 0) {
           return null;
+        } else if (!dir.isLeaf(i)) {
+          return getBytes(header.tileDataOffset() + dir.offset(i), dir.length(i));
+        } else {
+          dir = getLeafDir(header.leafDirectoriesOffset() + dir.offset(i), dir.length(i));
         }
-
       }
     } catch (IOException e) {
       throw new IllegalStateException("Could not get tile", e);
@@ -103,6 +130,22 @@ public class ReadablePmtiles implements ReadableTileArchive {
     return null;
   }
 
+  private DecodedDirectory getLeafDir(long offset, int length) throws IOException {
+    DecodedDirectory result = leafDirs.get(offset);
+    if (result == null) {
+      result = decodeDir(getBytes(offset, length));
+      leafDirs.put(offset, result);
+    }
+    return result;
+  }
+
+  private DecodedDirectory decodeDir(byte[] bytes) throws IOException {
+    if (header.internalCompression() == Pmtiles.Compression.GZIP) {
+      bytes = Gzip.gunzip(bytes);
+    }
+    return DecodedDirectory.fromBytes(bytes);
+  }
+
   public Pmtiles.Header getHeader() {
     return header;
   }
@@ -156,35 +199,58 @@ public class ReadablePmtiles implements ReadableTileArchive {
     }
   }
 
-  private List<Pmtiles.Entry> readDir(long offset, int length) {
-    try {
-      var buf = getBytes(offset, length);
-      if (header.internalCompression() == Pmtiles.Compression.GZIP) {
-        buf = Gzip.gunzip(buf);
+  /**
+   * Returns every entry that points to tile data under {@code dir} in tile ID order, reading runs of adjacent leaf
+   * directories with a single read of up to {@link #READ_AHEAD_BYTES}.
+   */
+  private Stream<TileRun> getTileRuns(DecodedDirectory dir) {
+    List<int[]> segments = new ArrayList<>();
+    for (int i = 0; i < dir.size(); ) {
+      int start = i++;
+      if (dir.isLeaf(start)) {
+        while (i < dir.size() && dir.isLeaf(i) &&
+          dir.offset(i) == dir.offset(i - 1) + dir.length(i - 1) &&
+          dir.offset(i) + dir.length(i) - dir.offset(start) <= READ_AHEAD_BYTES) {
+          i++;
+        }
       }
-      return Pmtiles.directoryFromBytes(buf);
-    } catch (IOException e) {
-      throw new UncheckedIOException(e);
+      segments.add(new int[]{start, i});
     }
+    return segments.stream().flatMap(segment -> {
+      int start = segment[0], end = segment[1];
+      if (!dir.isLeaf(start)) {
+        return Stream.of(new TileRun(dir.tileId(start), dir.offset(start), dir.length(start), dir.runLength(start)));
+      }
+      try {
+        long batchStart = dir.offset(start);
+        byte[] batch = getBytes(header.leafDirectoriesOffset() + batchStart,
+          (int) (dir.offset(end - 1) + dir.length(end - 1) - batchStart));
+        return IntStream.range(start, end).mapToObj(i -> {
+          int from = (int) (dir.offset(i) - batchStart);
+          try {
+            return decodeDir(Arrays.copyOfRange(batch, from, from + dir.length(i)));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }).flatMap(this::getTileRuns);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
   }
 
   // Warning: this will only work on z15 or less pmtiles which planetiler creates
-  private Stream<TileCoord> getTileCoords(List<Pmtiles.Entry> dir) {
-    return dir.stream().flatMap(entry -> entry.runLength() == 0 ?
-      getTileCoords(readDir(header.leafDirectoriesOffset() + entry.offset(), entry.length())) : IntStream
-        .range((int) entry.tileId(), (int) entry.tileId() + entry.runLength()).mapToObj(TileCoord::hilbertDecode));
+  private Stream<TileCoord> getTileCoords(DecodedDirectory dir) {
+    return getTileRuns(dir).flatMap(run -> IntStream
+      .range((int) run.tileId(), (int) run.tileId() + run.runLength()).mapToObj(TileCoord::hilbertDecode));
   }
 
-  private Stream<Tile> getTiles(List<Pmtiles.Entry> dir) {
-    return dir.stream().mapMulti((entry, next) -> {
+  private Stream<Tile> getTiles(DecodedDirectory dir) {
+    return getTileRuns(dir).mapMulti((run, next) -> {
       try {
-        if (entry.runLength == 0) {
-          getTiles(readDir(header.leafDirectoriesOffset() + entry.offset(), entry.length())).forEach(next);
-        } else {
-          var data = getBytes(header.tileDataOffset() + entry.offset(), entry.length());
-          for (int i = 0; i < entry.runLength(); i++) {
-            next.accept(new Tile(TileCoord.hilbertDecode((int) (entry.tileId() + i)), data));
-          }
+        var data = getBytes(header.tileDataOffset() + run.offset(), run.length());
+        for (int i = 0; i < run.runLength(); i++) {
+          next.accept(new Tile(TileCoord.hilbertDecode((int) (run.tileId() + i)), data));
         }
       } catch (IOException e) {
         throw new IllegalStateException("Failed to iterate through pmtiles archive ", e);
@@ -194,13 +260,11 @@ public class ReadablePmtiles implements ReadableTileArchive {
 
   @Override
   public CloseableIterator<TileCoord> getAllTileCoords() {
-    List<Pmtiles.Entry> rootDir = readDir(header.rootDirOffset(), (int) header.rootDirLength());
     return CloseableIterator.of(getTileCoords(rootDir));
   }
 
   @Override
   public CloseableIterator<Tile> getAllTiles() {
-    List<Pmtiles.Entry> rootDir = readDir(header.rootDirOffset(), (int) header.rootDirLength());
     return CloseableIterator.of(getTiles(rootDir));
   }
 
@@ -208,4 +272,38 @@ public class ReadablePmtiles implements ReadableTileArchive {
   public void close() throws IOException {
     channel.close();
   }
+
+  /** An entry in a directory that points to tile data. */
+  private record TileRun(long tileId, long offset, int length, int runLength) {}
+
+  /** A least-recently-used cache of decoded leaf directories by offset, limited by their estimated size. */
+  @ThreadSafe
+  private static class DirectoryCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<Long, DecodedDirectory> dirs = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    DirectoryCache(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    synchronized DecodedDirectory get(long offset) {
+      return dirs.get(offset);
+    }
+
+    synchronized void put(long offset, DecodedDirectory dir) {
+      long size = dir.estimateMemoryUsageBytes();
+      if (size > maxBytes) {
+        return;
+      }
+      DecodedDirectory old = dirs.put(offset, dir);
+      bytes += size - (old == null ? 0 : old.estimateMemoryUsageBytes());
+      var iterator = dirs.values().iterator();
+      while (bytes > maxBytes && iterator.hasNext()) {
+        bytes -= iterator.next().estimateMemoryUsageBytes();
+        iterator.remove();
+      }
+    }
+  }
 }
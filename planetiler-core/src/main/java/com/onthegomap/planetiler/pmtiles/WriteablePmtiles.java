@@ -1,19 +1,20 @@
 package com.onthegomap.planetiler.pmtiles;
 
 import com.carrotsearch.hppc.ByteArrayList;
-import com.carrotsearch.hppc.LongLongHashMap;
 import com.onthegomap.planetiler.archive.TileArchiveMetadata;
+import com.onthegomap.planetiler.archive.TileDataDeduplicator;
 import com.onthegomap.planetiler.archive.TileEncodingResult;
 import com.onthegomap.planetiler.archive.WriteableTileArchive;
-import com.onthegomap.planetiler.collection.Hppc;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.geo.GeoUtils;
 import com.onthegomap.planetiler.geo.TileCoord;
 import com.onthegomap.planetiler.geo.TileOrder;
+import com.onthegomap.planetiler.util.ByteBufferUtil;
 import com.onthegomap.planetiler.util.FileUtils;
 import com.onthegomap.planetiler.util.Format;
 import com.onthegomap.planetiler.util.Gzip;
 import com.onthegomap.planetiler.util.SeekableInMemoryByteChannel;
+import com.onthegomap.planetiler.util.VarInt;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
@@ -23,12 +24,11 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.OptionalLong;
 import java.util.TreeMap;
 import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,10 +40,18 @@ import org.slf4j.LoggerFactory;
 public final class WriteablePmtiles implements WriteableTileArchive {
 
   static final int INIT_SECTION = 16384;
+  private static final int MAX_ROOT_BYTES = INIT_SECTION - Pmtiles.HEADER_LEN;
+  // gzip header and trailer plus the deflate stored-block header if the root directory does not compress at all
+  private static final int GZIP_OVERHEAD = 32;
+  static final int MIN_LEAF_SIZE = 4096;
+  private static final int WRITE_BUFFER_BYTES = 1 << 20;
   private static final Logger LOGGER = LoggerFactory.getLogger(WriteablePmtiles.class);
-  final LongLongHashMap hashToOffset = Hppc.newLongLongHashMap();
-  final ArrayList<Pmtiles.Entry> entries = new ArrayList<>();
+  final TileDataDeduplicator hashToOffset = new TileDataDeduplicator();
+  PackedEntries entries = new PackedEntries();
   private final SeekableByteChannel out;
+  // tile data gets copied into one direct buffer and written out in large chunks, instead of handing the channel a new
+  // heap buffer for each tile that it would copy into a temporary direct buffer anyway
+  private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
   private long currentOffset = 0;
   private long numUnhashedTiles = 0;
   private long numAddressedTiles = 0;
@@ -57,23 +65,90 @@ public final class WriteablePmtiles implements WriteableTileArchive {
     this.bytesWritten = bytesWritten;
   }
 
-  private static Directories makeDirectoriesWithLeaves(List<Pmtiles.Entry> subEntries, int leafSize, int attemptNum)
-    throws IOException {
-    LOGGER.info("Building directories with {} entries per leaf, attempt {}...", leafSize, attemptNum);
-    ArrayList<Pmtiles.Entry> rootEntries = new ArrayList<>();
-    ByteArrayList leavesOutputStream = new ByteArrayList();
-    int leavesLength = 0;
-    int numLeaves = 0;
-
-    for (int i = 0; i < subEntries.size(); i += leafSize) {
-      numLeaves++;
-      int end = i + leafSize;
-      if (i + leafSize > subEntries.size()) {
-        end = subEntries.size();
+  /**
+   * Returns the fewest entries per leaf (and at least {@code minLeafSize}) for which the gzipped root directory fits in
+   * {@code maxRootBytes}, without encoding or compressing any leaves.
+   * <p>
+   * Each root entry takes a varint tile ID delta, 1 byte run length (0 for leaves), a varint leaf length, and 1 byte
+   * for the offset since leaves are contiguous. Everything but the leaf lengths is known up front, so this gzips a
+   * candidate root directory with those lengths left out and adds a conservative estimate for them: the most bytes
+   * the length of a leaf can take, plus one more since the lengths barely compress. The result never exceeds
+   * {@link #leafSizeForUncompressedRoot}, which guarantees the root fits even if it does not compress at all.
+   */
+  static int leafSizeForRoot(PackedEntries entries, int maxRootBytes, int minLeafSize) throws IOException {
+    int worstCase = leafSizeForUncompressedRoot(entries, maxRootBytes, minLeafSize);
+    // every root entry takes at least 4 bytes
+    int leafSize = (int) Math.max(minLeafSize, Math.ceil(entries.size() * 4d / (maxRootBytes - GZIP_OVERHEAD)));
+    while (leafSize < worstCase && estimateCompressedRootBytes(entries, leafSize) >= maxRootBytes) {
+      leafSize = (int) Math.ceil(leafSize * 1.05);
+    }
+    return Math.min(leafSize, worstCase);
+  }
+
+  /**
+   * Returns the fewest entries per leaf (and at least {@code minLeafSize}) for which the root directory fits in
+   * {@code maxRootBytes} even if gzip can't compress it at all.
+   */
+  static int leafSizeForUncompressedRoot(PackedEntries entries, int maxRootBytes, int minLeafSize) {
+    int budget = maxRootBytes - GZIP_OVERHEAD;
+    int leafSize = (int) Math.max(minLeafSize, Math.ceil(entries.size() * 4d / budget));
+    while (rootBytesUpperBound(entries, leafSize) > budget) {
+      leafSize = (int) Math.ceil(leafSize * 1.05);
+    }
+    return leafSize;
+  }
+
+  static int leafSizeForRoot(PackedEntries entries) throws IOException {
+    return leafSizeForRoot(entries, MAX_ROOT_BYTES, MIN_LEAF_SIZE);
+  }
+
+  private static long rootBytesUpperBound(PackedEntries entries, int leafSize) {
+    long numLeaves = (entries.size() + leafSize - 1) / leafSize;
+    long bytes = VarInt.varLongSize(numLeaves);
+    long lastId = 0;
+    for (long i = 0; i < entries.size(); i += leafSize) {
+      long tileId = entries.tileId(i);
+      bytes += VarInt.varLongSize(tileId - lastId) + 1 + 5 + 1;
+      lastId = tileId;
+    }
+    return bytes;
+  }
+
+  private static long estimateCompressedRootBytes(PackedEntries entries, int leafSize) throws IOException {
+    int numLeaves = (int) ((entries.size() + leafSize - 1) / leafSize);
+    List<Pmtiles.Entry> rootEntries = new ArrayList<>(numLeaves);
+    for (long i = 0; i < entries.size(); i += leafSize) {
+      rootEntries.add(new Pmtiles.Entry(entries.tileId(i), 0, 0, 0));
+    }
+    // tile ID delta, run length, length, and offset varints, plus deflate stored block headers if a leaf can't compress
+    long maxLeafBytes = 5 + leafSize * 30L;
+    maxLeafBytes += maxLeafBytes / 16_000 * 5 + GZIP_OVERHEAD;
+    int lengthBytes = VarInt.varLongSize(maxLeafBytes) + 1;
+    return Gzip.gzip(Pmtiles.directoryToBytes(rootEntries)).length + (long) numLeaves * lengthBytes;
+  }
+
+  static Directories makeDirectoriesWithLeaves(PackedEntries subEntries, int leafSize) throws IOException {
+    int numLeaves = (int) ((subEntries.size() + leafSize - 1) / leafSize);
+    LOGGER.info("Building {} leaf directories with {} entries per leaf...", numLeaves, leafSize);
+    byte[][] leaves = new byte[numLeaves][];
+
+    // entries are only read here, so leaves can get encoded and compressed in parallel straight from the packed columns
+    IntStream.range(0, numLeaves).parallel().forEach(leaf -> {
+      long start = (long) leaf * leafSize;
+      long end = Math.min(start + leafSize, subEntries.size());
+      try {
+        leaves[leaf] = Gzip.gzip(subEntries.directoryToBytes(start, end));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
-      byte[] leafBytes = Pmtiles.directoryToBytes(subEntries, i, end);
-      leafBytes = Gzip.gzip(leafBytes);
-      rootEntries.add(new Pmtiles.Entry(subEntries.get(i).tileId(), leavesLength, leafBytes.length, 0));
+    });
+
+    ArrayList<Pmtiles.Entry> rootEntries = new ArrayList<>(numLeaves);
+    ByteArrayList leavesOutputStream = new ByteArrayList();
+    long leavesLength = 0;
+    for (int leaf = 0; leaf < numLeaves; leaf++) {
+      byte[] leafBytes = leaves[leaf];
+      rootEntries.add(new Pmtiles.Entry(subEntries.tileId((long) leaf * leafSize), leavesLength, leafBytes.length, 0));
       leavesOutputStream.add(leafBytes);
       leavesLength += leafBytes.length;
     }
@@ -83,7 +158,7 @@ public final class WriteablePmtiles implements WriteableTileArchive {
 
     LOGGER.info("Built directories with {} leaves, {}B root directory", rootEntries.size(), rootBytes.length);
 
-    return new Directories(rootBytes, leavesOutputStream.toArray(), numLeaves, leafSize, attemptNum);
+    return new Directories(rootBytes, leavesOutputStream.toArray(), numLeaves, leafSize, 1);
   }
 
   /**
@@ -94,27 +169,28 @@ public final class WriteablePmtiles implements WriteableTileArchive {
    * @throws IOException if compression fails
    */
   static Directories makeDirectories(List<Pmtiles.Entry> entries) throws IOException {
+    try (var packed = PackedEntries.of(entries)) {
+      return makeDirectories(packed);
+    }
+  }
+
+  /** Same as {@link #makeDirectories(List)} but reads entries from packed off-heap columns. */
+  static Directories makeDirectories(PackedEntries entries) throws IOException {
     int maxEntriesRootOnly = 16384;
-    int attemptNum = 1;
     if (entries.size() < maxEntriesRootOnly) {
-      byte[] testBytes = Pmtiles.directoryToBytes(entries, 0, entries.size());
+      byte[] testBytes = entries.directoryToBytes(0, entries.size());
       testBytes = Gzip.gzip(testBytes);
 
-      if (testBytes.length < INIT_SECTION - Pmtiles.HEADER_LEN) {
-        return new Directories(testBytes, new byte[0], 0, 0, attemptNum);
+      if (testBytes.length < MAX_ROOT_BYTES) {
+        return new Directories(testBytes, new byte[0], 0, 0, 1);
       }
     }
 
-    double estimatedLeafSize = entries.size() / 3_500d;
-    int leafSize = (int) Math.max(estimatedLeafSize, 4096);
-
-    while (true) {
-      Directories temp = makeDirectoriesWithLeaves(entries, leafSize, attemptNum++);
-      if (temp.root.length < INIT_SECTION - Pmtiles.HEADER_LEN) {
-        return temp;
-      }
-      leafSize *= 1.2;
+    Directories result = makeDirectoriesWithLeaves(entries, leafSizeForRoot(entries));
+    if (result.root.length >= MAX_ROOT_BYTES) {
+      throw new IllegalStateException("Root directory too large: " + result.root.length + "B");
     }
+    return result;
   }
 
   public static WriteablePmtiles newWriteToFile(Path path) throws IOException {
@@ -142,10 +218,15 @@ public final class WriteablePmtiles implements WriteableTileArchive {
   public void finish(TileArchiveMetadata tileArchiveMetadata) {
     if (!isClustered) {
       LOGGER.info("Tile data was not written in order, sorting entries...");
-      Collections.sort(entries);
+      try (var unsorted = entries) {
+        entries = unsorted.sorted();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
       LOGGER.info("Done sorting.");
     }
     try {
+      flushTileData();
       Directories directories = makeDirectories(entries);
       // use treemap to ensure consistent ouput between runs
       var otherMetadata = new TreeMap<>(tileArchiveMetadata.toMap());
@@ -227,6 +308,9 @@ public final class WriteablePmtiles implements WriteableTileArchive {
         LOGGER.info("# addressed tiles: {}", numAddressedTiles);
         LOGGER.info("# of tile entries: {}", entries.size());
         LOGGER.info("# of tile contents: {}", (hashToOffset.size() + numUnhashedTiles));
+        if (hashToOffset.collisions() > 0) {
+          LOGGER.info("# of content hash collisions: {}", hashToOffset.collisions());
+        }
         LOGGER.info("Root directory: {}B", format.storage(directories.root.length, false));
 
         LOGGER.info("# leaves: {}", directories.numLeaves);
@@ -251,9 +335,38 @@ public final class WriteablePmtiles implements WriteableTileArchive {
     return bytesWritten.getAsLong();
   }
 
+  @Override
+  public long estimateMemoryUsageBytes() {
+    return hashToOffset.estimateMemoryUsageBytes();
+  }
+
+  private void writeTileData(byte[] data) throws IOException {
+    if (data.length > writeBuffer.remaining()) {
+      flushTileData();
+    }
+    if (data.length > writeBuffer.capacity()) {
+      out.write(ByteBuffer.wrap(data));
+    } else {
+      writeBuffer.put(data);
+    }
+  }
+
+  private void flushTileData() throws IOException {
+    writeBuffer.flip();
+    while (writeBuffer.hasRemaining()) {
+      out.write(writeBuffer);
+    }
+    writeBuffer.clear();
+  }
+
   @Override
   public void close() throws IOException {
-    out.close();
+    try {
+      out.close();
+    } finally {
+      entries.close();
+      ByteBufferUtil.free(writeBuffer);
+    }
   }
 
   public WriteableTileArchive.TileWriter newTileWriter() {
@@ -293,55 +406,48 @@ public final class WriteablePmtiles implements WriteableTileArchive {
   }
 
   private class DeduplicatingTileWriter implements TileWriter {
-    Pmtiles.Entry lastEntry = null;
 
     @Override
     public void write(TileEncodingResult encodingResult) {
       numAddressedTiles++;
       boolean writeTileData;
       long offset;
-      OptionalLong tileDataHashOpt = encodingResult.tileDataHash();
       var data = encodingResult.tileData();
       TileCoord coord = encodingResult.coord();
 
       long tileId = coord.hilbertEncoded();
 
+      long last = entries.size() - 1;
       if (!entries.isEmpty()) {
-        if (tileId < lastEntry.tileId()) {
+        if (tileId < entries.tileId(last)) {
           isClustered = false;
-        } else if (tileId == lastEntry.tileId()) {
+        } else if (tileId == entries.tileId(last)) {
           LOGGER.error("Duplicate tile detected in writer");
         }
       }
 
-      if (tileDataHashOpt.isPresent()) {
-        long tileDataHash = tileDataHashOpt.getAsLong();
-        if (hashToOffset.containsKey(tileDataHash)) {
-          offset = hashToOffset.get(tileDataHash);
-          writeTileData = false;
-          if (lastEntry != null && lastEntry.tileId() + lastEntry.runLength() == tileId &&
-            lastEntry.offset() == offset) {
-            lastEntry.runLength++;
-            return;
-          }
-        } else {
-          hashToOffset.put(tileDataHash, currentOffset);
-          offset = currentOffset;
-          writeTileData = true;
+      long existingOffset = hashToOffset.find(encodingResult);
+      if (existingOffset != TileDataDeduplicator.NOT_FOUND) {
+        offset = existingOffset;
+        writeTileData = false;
+        if (!entries.isEmpty() && entries.tileId(last) + entries.runLength(last) == tileId &&
+          entries.offset(last) == offset) {
+          entries.extendLastRun();
+          return;
         }
       } else {
-        numUnhashedTiles++;
+        if (!hashToOffset.put(encodingResult, currentOffset)) {
+          numUnhashedTiles++;
+        }
         offset = currentOffset;
         writeTileData = true;
       }
 
-      var newEntry = new Pmtiles.Entry(tileId, offset, data.length, 1);
-      entries.add(newEntry);
-      lastEntry = newEntry;
+      entries.add(tileId, offset, data.length, 1);
 
       if (writeTileData) {
         try {
-          out.write(ByteBuffer.wrap(data));
+          writeTileData(data);
         } catch (IOException e) {
           throw new UncheckedIOException(e);
         }
@@ -149,7 +149,8 @@ public class SourceFeatureProcessor<F extends SourceFeature> {
       config,
       rendered -> next.accept(encoder.apply(rendered)),
       stats,
-      encoder
+      encoder,
+      writer.renderCache()
     );
   }
 
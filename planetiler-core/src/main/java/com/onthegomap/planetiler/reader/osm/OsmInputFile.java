@@ -5,6 +5,7 @@ import com.onthegomap.planetiler.reader.FileFormatException;
 import com.onthegomap.planetiler.util.ByteBufferUtil;
 import com.onthegomap.planetiler.util.DiskBacked;
 import com.onthegomap.planetiler.util.FileUtils;
+import com.onthegomap.planetiler.util.PartialFile;
 import crosby.binary.Fileformat.BlobHeader;
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -30,6 +31,7 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
 
   private final Path path;
   private final boolean lazy;
+  private volatile PartialFile inProgress = null;
 
   /**
    * Creates a new OSM input file reader.
@@ -47,6 +49,34 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
     this(path, false);
   }
 
+  /**
+   * Reads from {@code file} while it is still being written instead of waiting for it to finish and show up at
+   * {@link #getPath()}.
+   * <p>
+   * Readers block until each block they need is available, so processing can overlap with downloading the file.
+   *
+   * @return this input file for chaining
+   */
+  public OsmInputFile readWhileWriting(PartialFile file) {
+    this.inProgress = file;
+    return this;
+  }
+
+  private void awaitBytes(long bytes) throws IOException {
+    var partial = inProgress;
+    if (partial != null) {
+      partial.awaitBytes(bytes);
+    }
+  }
+
+  /** Fails if writing an in-progress file failed after reading all of its blocks, i.e. from a checksum mismatch. */
+  private void awaitComplete() throws IOException {
+    var partial = inProgress;
+    if (partial != null) {
+      partial.awaitComplete();
+    }
+  }
+
   private static int readInt(FileChannel channel) throws IOException {
     ByteBuffer buf = ByteBuffer.allocate(4);
     int read = channel.read(buf);
@@ -88,11 +118,13 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
     }
   }
 
-  private static BlobHeader readBlobHeader(FileChannel channel) throws IOException {
+  private BlobHeader readBlobHeader(FileChannel channel) throws IOException {
+    awaitBytes(channel.position() + 4);
     int headerSize = readInt(channel);
     if (headerSize > 64 * 1024) {
       throw new IllegalArgumentException("Header longer than 64 KiB");
     }
+    awaitBytes(channel.position() + headerSize);
     byte[] headerBytes = readBytes(channel, headerSize);
     return BlobHeader.parseFrom(headerBytes);
   }
@@ -115,6 +147,7 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
   public OsmHeader getHeader() {
     try (var channel = openChannel()) {
       BlobHeader header = readBlobHeader(channel);
+      awaitBytes(channel.position() + header.getDatasize());
       byte[] blobBytes = readBytes(channel, header.getDatasize());
       return PbfDecoder.decodeHeader(blobBytes);
     } catch (IOException e) {
@@ -129,12 +162,14 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
 
   @Override
   public long diskUsageBytes() {
-    return FileUtils.size(path);
+    var partial = inProgress;
+    return partial != null ? partial.size() : FileUtils.size(path);
   }
 
   private FileChannel openChannel() {
     try {
-      return FileChannel.open(path, StandardOpenOption.READ);
+      var partial = inProgress;
+      return partial != null ? partial.openChannel() : FileChannel.open(path, StandardOpenOption.READ);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
@@ -152,6 +187,7 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
         final long size = channel.size();
         while (channel.position() < size) {
           BlobHeader header = readBlobHeader(channel);
+          awaitBytes(channel.position() + header.getDatasize());
           byte[] blockBytes = readBytes(channel, header.getDatasize());
           String headerType = header.getType();
           if ("OSMData".equals(headerType)) {
@@ -162,6 +198,7 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
             LOGGER.warn("Unrecognized OSM PBF blob header type: {}", headerType);
           }
         }
+        awaitComplete();
       } catch (IOException e) {
         throw new UncheckedIOException(e);
       }
@@ -200,6 +237,8 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
           int blockSize = header.getDatasize();
           String headerType = header.getType();
           long blockStartPosition = channel.position();
+          // workers read the block later, so it needs to be fully available before passing it on
+          awaitBytes(blockStartPosition + blockSize);
           if ("OSMData".equals(headerType)) {
             consumer.accept(new LazyBlock(blockStartPosition, blockSize, lazyReadChannel));
           } else if ("OSMHeader".equals(headerType)) {
@@ -209,6 +248,7 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
           }
           channel.position(blockStartPosition + blockSize);
         }
+        awaitComplete();
       } catch (IOException e) {
         throw new UncheckedIOException(e);
       }
@@ -24,8 +24,11 @@ import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
 import org.locationtech.jts.geom.LinearRing;
@@ -55,6 +58,11 @@ public class OsmMultipolygon {
 
   private static final double MIN_CLOSE_RING_GAP = 0.1 / GeoUtils.WORLD_CIRCUMFERENCE_METERS;
   private static final Comparator<Ring> BY_AREA_DESCENDING = Comparator.comparingDouble(ring -> -ring.area);
+  /**
+   * When a ring needs to be tested against at least this many smaller rings, run the containment tests in parallel.
+   * Below that, the overhead of splitting the work up outweighs the benefit.
+   */
+  static final int PARALLEL_CONTAINMENT_MIN_RINGS = 256;
 
   /** A closed linestring that tracks parent and child rings relationships. */
   private static class Ring {
@@ -241,11 +249,11 @@ public class OsmMultipolygon {
     for (int i = 0; i < numPolygons; i++) {
       Ring outer = polygons.get(i);
       if (i < numPolygons - 1) {
-        PreparedPolygon prepared = new PreparedPolygon(outer.geom);
         // since the rings are sorted by area descending, the inner loop is only smaller rings
+        boolean[] contained = containedByRing(outer, polygons, i + 1);
         for (int j = i + 1; j < numPolygons; j++) {
           Ring inner = polygons.get(j);
-          if (prepared.contains(inner.geom)) {
+          if (contained[j - i - 1]) {
             // keep searching until we find the smallest ring that contains this one
             // that one is the direct parent
             if (inner.containedBy != null) {
@@ -268,6 +276,32 @@ public class OsmMultipolygon {
     return shells;
   }
 
+  /**
+   * Returns whether {@code outer} contains each ring in {@code polygons} starting at {@code from}.
+   * <p>
+   * Containment tests only read the ring geometries, so for giant relations like country boundaries or coastlines with
+   * thousands of rings they run in parallel, then the caller applies the results in order so the output is the same
+   * as testing them one at a time.
+   */
+  private static boolean[] containedByRing(Ring outer, List<Ring> polygons, int from) {
+    int count = polygons.size() - from;
+    boolean[] result = new boolean[count];
+    PreparedPolygon prepared = new PreparedPolygon(outer.geom);
+    Envelope outerEnvelope = outer.geom.getEnvelopeInternal();
+    IntConsumer test = j -> {
+      Polygon inner = polygons.get(from + j).geom;
+      result[j] = outerEnvelope.contains(inner.getEnvelopeInternal()) && prepared.contains(inner);
+    };
+    if (count >= PARALLEL_CONTAINMENT_MIN_RINGS) {
+      IntStream.range(0, count).parallel().forEach(test);
+    } else {
+      for (int j = 0; j < count; j++) {
+        test.accept(j);
+      }
+    }
+    return result;
+  }
+
   private static boolean tryClose(LongArrayList segment, OsmReader.NodeLocationProvider nodeCache,
     double minGap) {
     int size = segment.size();
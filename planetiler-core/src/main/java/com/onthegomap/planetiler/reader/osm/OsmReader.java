@@ -484,7 +484,8 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
       config,
       rendered -> next.accept(encoder.apply(rendered)),
       stats,
-      encoder
+      encoder,
+      writer.renderCache()
     );
   }
 
@@ -51,14 +51,25 @@ public class FeatureRenderer implements Consumer<FeatureCollector.Feature>, Clos
   private final Consumer<RenderedFeature> consumer;
   private final Stats stats;
   private final Closeable closeable;
+  private final RenderCache renderCache;
 
-  /** Constructs a new feature render that will send rendered features to {@code consumer}. */
+  /**
+   * Constructs a new feature render that will send rendered features to {@code consumer} and re-use sliced geometries
+   * from {@code renderCache} if it is not {@code null}.
+   */
   public FeatureRenderer(PlanetilerConfig config, Consumer<RenderedFeature> consumer, Stats stats,
-    Closeable closeable) {
+    Closeable closeable, RenderCache renderCache) {
     this.config = config;
     this.consumer = consumer;
     this.stats = stats;
     this.closeable = closeable;
+    this.renderCache = renderCache;
+  }
+
+  /** Constructs a new feature render that will send rendered features to {@code consumer}. */
+  public FeatureRenderer(PlanetilerConfig config, Consumer<RenderedFeature> consumer, Stats stats,
+    Closeable closeable) {
+    this(config, consumer, stats, closeable, null);
   }
 
   public FeatureRenderer(PlanetilerConfig config, Consumer<RenderedFeature> consumer, Stats stats) {
@@ -142,12 +153,17 @@ public class FeatureRenderer implements Consumer<FeatureCollector.Feature>, Clos
 
   private void encodeAndEmitFeature(FeatureCollector.Feature feature, long id, Map<String, Object> attrs,
     TileCoord tile, Geometry geom, RenderedFeature.Group groupInfo, int scale) {
+    emitFeature(feature, id, attrs, tile, VectorTile.encodeGeometry(geom, scale), groupInfo);
+  }
+
+  private void emitFeature(FeatureCollector.Feature feature, long id, Map<String, Object> attrs,
+    TileCoord tile, VectorTile.VectorGeometry geometry, RenderedFeature.Group groupInfo) {
     consumer.accept(new RenderedFeature(
       tile,
       new VectorTile.Feature(
         feature.getLayer(),
         id,
-        VectorTile.encodeGeometry(geom, scale),
+        geometry,
         attrs,
         groupInfo == null ? VectorTile.Feature.NO_GROUP : groupInfo.group()
       ),
@@ -175,6 +191,12 @@ public class FeatureRenderer implements Consumer<FeatureCollector.Feature>, Clos
     boolean area = input instanceof Polygonal;
     double worldLength = (area || input.getNumGeometries() > 1) ? 0 : input.getLength();
     String numPointsAttr = feature.getNumPointsAttr();
+    boolean cascade = config.cascadeSimplify();
+    // results of cascading depend on the previous zoom levels, so only cache when each zoom starts from the input
+    boolean useCache = renderCache != null && !cascade && renderCache.shouldCache(input);
+    // when cascading, the simplified geometry from the last zoom level we rendered and the scale it was rendered at
+    Geometry previous = null;
+    double previousScale = 0;
     for (int z = feature.getMaxZoom(); z >= feature.getMinZoom(); z--) {
       double scale = 1 << z;
       double tolerance = feature.getPixelToleranceAtZoom(z) / 256d;
@@ -190,30 +212,51 @@ public class FeatureRenderer implements Consumer<FeatureCollector.Feature>, Clos
       double buffer = feature.getBufferPixelsAtZoom(z) / 256;
       TileExtents.ForZoom extents = config.bounds().tileExtents().getForZoom(z);
 
-      // TODO potential optimization: iteratively simplify z+1 to get z instead of starting with original geom each time
-      // simplify only takes 4-5 minutes of wall time when generating the planet though, so not a big deal
-      Geometry scaled = AffineTransformation.scaleInstance(scale, scale).transform(input);
+      RenderCache.Key cacheKey = useCache ? new RenderCache.Key(input, z, buffer, tolerance, minSize) : null;
+      RenderCache.Value cached = cacheKey != null ? renderCache.get(cacheKey) : null;
       TiledGeometry sliced;
-      Geometry geom = DouglasPeuckerSimplifier.simplify(scaled, tolerance);
-      List<List<CoordinateSequence>> groups = GeometryCoordinateSequences.extractGroups(geom, minSize);
-      try {
-        sliced = TiledGeometry.sliceIntoTiles(groups, buffer, area, z, extents);
-      } catch (GeometryException e) {
+      int numPoints;
+      if (cached != null) {
+        sliced = cached.sliced();
+        numPoints = cached.numPoints();
+      } else {
+        Geometry scaled;
+        if (cascade && previous != null) {
+          // simplify from the already-simplified higher zoom geometry, which has far fewer points than the original
+          double relativeScale = scale / previousScale;
+          scaled = AffineTransformation.scaleInstance(relativeScale, relativeScale).transform(previous);
+        } else {
+          scaled = AffineTransformation.scaleInstance(scale, scale).transform(input);
+        }
+        Geometry geom = DouglasPeuckerSimplifier.simplify(scaled, tolerance);
+        List<List<CoordinateSequence>> groups = GeometryCoordinateSequences.extractGroups(geom, minSize);
         try {
-          geom = GeoUtils.fixPolygon(geom);
-          groups = GeometryCoordinateSequences.extractGroups(geom, minSize);
           sliced = TiledGeometry.sliceIntoTiles(groups, buffer, area, z, extents);
-        } catch (GeometryException ex) {
-          ex.log(stats, "slice_line_or_polygon", "Error slicing feature at z" + z + ": " + feature);
-          // omit from this zoom level, but maybe the next will be better
-          continue;
+        } catch (GeometryException e) {
+          try {
+            geom = GeoUtils.fixPolygon(geom);
+            groups = GeometryCoordinateSequences.extractGroups(geom, minSize);
+            sliced = TiledGeometry.sliceIntoTiles(groups, buffer, area, z, extents);
+          } catch (GeometryException ex) {
+            ex.log(stats, "slice_line_or_polygon", "Error slicing feature at z" + z + ": " + feature);
+            // omit from this zoom level, but maybe the next will be better
+            continue;
+          }
+        }
+        numPoints = geom.getNumPoints();
+        if (cascade) {
+          previous = geom;
+          previousScale = scale;
+        }
+        if (cacheKey != null) {
+          renderCache.put(cacheKey, new RenderCache.Value(sliced, numPoints));
         }
       }
       Map<String, Object> attrs = feature.getAttrsAtZoom(sliced.zoomLevel());
       if (numPointsAttr != null) {
         // if profile wants the original number off points that the simplified but untiled geometry started with
         attrs = new HashMap<>(attrs);
-        attrs.put(numPointsAttr, geom.getNumPoints());
+        attrs.put(numPointsAttr, numPoints);
       }
       writeTileFeatures(z, feature.getId(), feature, sliced, attrs);
     }
@@ -229,10 +272,8 @@ public class FeatureRenderer implements Consumer<FeatureCollector.Feature>, Clos
       try {
         List<List<CoordinateSequence>> geoms = entry.getValue();
 
-        Geometry geom;
-        int scale = 0;
         if (feature.isPolygon()) {
-          geom = GeometryCoordinateSequences.reassemblePolygons(geoms);
+          Geometry geom = GeometryCoordinateSequences.reassemblePolygons(geoms);
           /*
            * Use the very expensive, but necessary JTS Geometry#buffer(0) trick to repair invalid polygons (with self-
            * intersections) and JTS GeometryPrecisionReducer utility to snap polygon nodes to the vector tile grid
@@ -245,21 +286,26 @@ public class FeatureRenderer implements Consumer<FeatureCollector.Feature>, Clos
           // JTS utilities "fix" the geometry to be clockwise outer/CCW inner but vector tiles flip Y coordinate,
           // so we need outer CCW/inner clockwise
           geom = geom.reverse();
+          if (!geom.isEmpty()) {
+            encodeAndEmitFeature(feature, id, attrs, tile, geom, null, 0);
+            emitted++;
+          }
         } else {
-          geom = GeometryCoordinateSequences.reassembleLineStrings(geoms);
           // Store lines with extra precision (2^scale) in intermediate feature storage so that
           // rounding does not introduce artificial endpoint intersections and confuse line merge
           // post-processing.  Features need to be "unscaled" in FeatureGroup after line merging,
           // and before emitting to the output archive.
-          scale = Math.max(config.maxzoom(), 14) - zoom;
+          int scale = Math.max(config.maxzoom(), 14) - zoom;
           // need 14 bits to represent tile coordinates (4096 * 2 for buffer * 2 for zigzag encoding)
           // so cap the scale factor to avoid overflowing 32-bit integer space
           scale = Math.min(31 - 14, scale);
-        }
-
-        if (!geom.isEmpty()) {
-          encodeAndEmitFeature(feature, id, attrs, tile, geom, null, scale);
-          emitted++;
+          // lines don't need any JTS processing, so encode the sliced coordinate sequences directly instead of
+          // building an intermediate JTS geometry
+          VectorTile.VectorGeometry encoded = VectorTile.encodeLineStrings(geoms, scale);
+          if (encoded != null) {
+            emitFeature(feature, id, attrs, tile, encoded, null);
+            emitted++;
+          }
         }
       } catch (GeometryException e) {
         e.log(stats, "write_tile_features", "Error writing tile " + tile + " feature " + feature);
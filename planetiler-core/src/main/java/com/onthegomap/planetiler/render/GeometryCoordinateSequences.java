@@ -11,7 +11,6 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.LinearRing;
-import org.locationtech.jts.geom.MultiLineString;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
@@ -97,20 +96,6 @@ class GeometryCoordinateSequences {
     }
   }
 
-  /** Returns a {@link LineString} or {@link MultiLineString} containing all coordinate sequences in {@code geoms}. */
-  static Geometry reassembleLineStrings(List<List<CoordinateSequence>> geoms) {
-    List<LineString> lineStrings = new ArrayList<>();
-    for (List<CoordinateSequence> inner : geoms) {
-      for (CoordinateSequence coordinateSequence : inner) {
-        if (coordinateSequence.size() > 1) {
-          lineStrings.add(GeoUtils.JTS_FACTORY.createLineString(coordinateSequence));
-        }
-      }
-    }
-    return GeoUtils.combineLineStrings(lineStrings);
-  }
-
-
   /**
    * Returns a {@link Polygon} or {@link MultiPolygon} from all groups of exterior/interior rings in {@code groups}.
    *
@@ -132,13 +117,16 @@ class GeometryCoordinateSequences {
     }
   }
 
-  /** Returns a {@link Polygon} built from all outer/inner rings in {@code group}, reversing all inner rings. */
+  /**
+   * Returns a {@link Polygon} built from all outer/inner rings in {@code group}, reversing copies of all inner rings so
+   * that {@code group} can be reassembled again later.
+   */
   private static Polygon reassemblePolygon(List<CoordinateSequence> group) throws GeometryException {
     try {
       LinearRing first = GeoUtils.JTS_FACTORY.createLinearRing(group.getFirst());
       LinearRing[] rest = new LinearRing[group.size() - 1];
       for (int j = 1; j < group.size(); j++) {
-        CoordinateSequence seq = group.get(j);
+        CoordinateSequence seq = group.get(j).copy();
         CoordinateSequences.reverse(seq);
         rest[j - 1] = GeoUtils.JTS_FACTORY.createLinearRing(seq);
       }
@@ -0,0 +1,138 @@
+package com.onthegomap.planetiler.render;
+
+import com.onthegomap.planetiler.stats.Stats;
+import com.onthegomap.planetiler.util.MemoryEstimator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * A size-bounded least-recently-used cache of {@link TiledGeometry} results that {@link FeatureRenderer} can re-use
+ * when the same world geometry gets rendered more than once with the same settings, for example when a profile emits
+ * the same large polygon into several layers or several sources contain identical geometries.
+ * <p>
+ * Entries are keyed by the exact input geometry (using {@link Geometry#equalsExact(Geometry)}) along with every
+ * parameter that affects how it gets simplified and sliced at a zoom level. Cached results are shared between threads
+ * so callers must not modify them.
+ * <p>
+ * Entries are split by hash into independently locked segments so that render threads rarely contend on the same lock.
+ * Any entry up to the full size limit can get cached, and when the cache is full least-recently-used entries get
+ * evicted from the segment that just grew first, then from the others, so eviction order is only approximately LRU.
+ */
+@ThreadSafe
+public class RenderCache implements MemoryEstimator.HasEstimate {
+
+  /** Geometries with fewer points than this are cheap enough to re-render that caching them is not worth it. */
+  static final int MIN_POINTS = 100;
+  private static final long ENTRY_OVERHEAD_BYTES = 200;
+  private static final int SEGMENTS = 16;
+
+  private final Stats stats;
+  private final long maxBytes;
+  private final Segment[] segments = new Segment[SEGMENTS];
+  private final AtomicLong bytes = new AtomicLong(0);
+
+  private RenderCache(long maxBytes, Stats stats) {
+    this.stats = stats;
+    this.maxBytes = maxBytes;
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  /** Returns a new cache that holds up to {@code maxBytes} of estimated geometry data. */
+  public static RenderCache create(long maxBytes, Stats stats) {
+    return new RenderCache(maxBytes, stats);
+  }
+
+  /** Returns {@code true} if {@code geometry} is large enough to be worth caching. */
+  boolean shouldCache(Geometry geometry) {
+    return geometry.getNumPoints() >= MIN_POINTS;
+  }
+
+  private static int segmentIndex(Key key) {
+    int hash = key.hashCode();
+    return (hash ^ (hash >>> 16)) & (SEGMENTS - 1);
+  }
+
+  /** Returns the cached result of rendering {@code key}, or {@code null} if it is not cached. */
+  Value get(Key key) {
+    Value result = segments[segmentIndex(key)].get(key);
+    stats.renderCacheLookup(result != null);
+    return result;
+  }
+
+  /** Stores the result of rendering {@code key}, evicting the least-recently-used entries to stay under the limit. */
+  void put(Key key, Value value) {
+    long size = ENTRY_OVERHEAD_BYTES + key.geometry.getNumPoints() * 16L + value.sliced.estimateMemoryUsageBytes();
+    if (size > maxBytes) {
+      return;
+    }
+    int index = segmentIndex(key);
+    Value sized = value.withSize(size);
+    long total = bytes.addAndGet(segments[index].put(key, sized));
+    // only lock one segment at a time while evicting so that threads evicting concurrently can't deadlock
+    for (int i = 0; i < SEGMENTS && total > maxBytes; i++) {
+      long freed = segments[(index + i) & (SEGMENTS - 1)].evict(total - maxBytes, sized);
+      total = bytes.addAndGet(-freed);
+    }
+  }
+
+  @Override
+  public long estimateMemoryUsageBytes() {
+    return bytes.get();
+  }
+
+  /**
+   * One stripe of the cache with its own lock, so that threads rendering different geometries rarely contend on the
+   * same lock.
+   */
+  private static class Segment {
+
+    private final Map<Key, Value> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    synchronized Value get(Key key) {
+      return entries.get(key);
+    }
+
+    /** Stores {@code value} and returns the number of bytes the segment grew by. */
+    synchronized long put(Key key, Value value) {
+      Value old = entries.put(key, value);
+      return old == null ? value.bytes : value.bytes - old.bytes;
+    }
+
+    /**
+     * Evicts least-recently-used entries other than the one just stored as {@code keep} until at least {@code toFree} bytes are freed or the
+     * segment is empty, and returns the number of bytes freed.
+     */
+    synchronized long evict(long toFree, Value keep) {
+      long freed = 0;
+      var iterator = entries.entrySet().iterator();
+      while (freed < toFree && iterator.hasNext()) {
+        var entry = iterator.next();
+        if (entry.getValue() != keep) {
+          freed += entry.getValue().bytes;
+          iterator.remove();
+        }
+      }
+      return freed;
+    }
+  }
+
+  /** Everything that affects the result of simplifying and slicing a world geometry at a zoom level. */
+  record Key(Geometry geometry, int zoom, double buffer, double tolerance, double minSize) {}
+
+  /** The result of rendering a {@link Key}. */
+  record Value(TiledGeometry sliced, int numPoints, long bytes) {
+
+    Value(TiledGeometry sliced, int numPoints) {
+      this(sliced, numPoints, 0);
+    }
+
+    Value withSize(long size) {
+      return new Value(sliced, numPoints, size);
+    }
+  }
+}
@@ -29,6 +29,7 @@ import com.onthegomap.planetiler.geo.TileCoord;
 import com.onthegomap.planetiler.geo.TileExtents;
 import com.onthegomap.planetiler.geo.TilePredicate;
 import com.onthegomap.planetiler.util.Format;
+import com.onthegomap.planetiler.util.MemoryEstimator;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -67,7 +68,7 @@ import org.roaringbitmap.RoaringBitmap;
  * tiles at a zoom level for each input geometry.
  */
 @NotThreadSafe
-public class TiledGeometry {
+public class TiledGeometry implements MemoryEstimator.HasEstimate {
 
   private static final Format FORMAT = Format.defaultInstance();
   private static final double NEIGHBOR_BUFFER_EPS = 0.1d / 4096;
@@ -314,6 +315,26 @@ public class TiledGeometry {
     return tileContents;
   }
 
+  @Override
+  public long estimateMemoryUsageBytes() {
+    long result = MemoryEstimator.CLASS_HEADER_BYTES;
+    for (var groups : tileContents.values()) {
+      result += 64;
+      for (var group : groups) {
+        result += MemoryEstimator.estimateObjectArraySize(group.size());
+        for (var sequence : group) {
+          result += MemoryEstimator.estimateArraySize(sequence.size() * 2, 8);
+        }
+      }
+    }
+    if (filledRanges != null) {
+      for (var ranges : filledRanges.values()) {
+        result += 64 + ranges.bitmap().getSizeInBytes();
+      }
+    }
+    return result;
+  }
+
   /**
    * Slices a geometry into tiles and stores in member fields for a single "copy" of the world.
    * <p>
@@ -768,6 +789,29 @@ public class TiledGeometry {
       return new CoveredTiles(RoaringBitmap.or(a.bitmap, b.bitmap), a.z);
     }
 
+    /**
+     * Returns the tiles at {@code zoom} that contain at least one of the tiles in this set, without needing to re-slice
+     * the original geometry.
+     *
+     * @throws IllegalArgumentException if {@code zoom} is greater than the zoom level of this set.
+     */
+    public CoveredTiles atZoom(int zoom) {
+      if (zoom > z) {
+        throw new IllegalArgumentException("Cannot derive z" + zoom + " tiles from z" + z + " tiles");
+      } else if (zoom == z) {
+        return this;
+      }
+      int shift = z - zoom;
+      int maxTiles = 1 << zoom;
+      RoaringBitmap result = new RoaringBitmap();
+      bitmap.forEach((int i) -> {
+        int x = (i / maxTilesAtZoom) >> shift;
+        int y = (i % maxTilesAtZoom) >> shift;
+        result.add(x * maxTiles + y);
+      });
+      return new CoveredTiles(result, zoom);
+    }
+
     @Override
     public boolean test(int x, int y) {
       return bitmap.contains(x * maxTilesAtZoom + y);
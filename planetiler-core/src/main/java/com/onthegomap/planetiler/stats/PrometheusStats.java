@@ -122,6 +122,16 @@ class PrometheusStats implements Stats {
     processedElements.labels(elemType, layer).inc();
   }
 
+  private final io.prometheus.client.Counter renderCacheLookups = io.prometheus.client.Counter
+    .build(BASE + "renderer_cache_lookups", "Number of lookups in the render cache by whether they were a hit or miss")
+    .labelNames("result")
+    .register(registry);
+
+  @Override
+  public void renderCacheLookup(boolean hit) {
+    renderCacheLookups.labels(hit ? "hit" : "miss").inc();
+  }
+
   private final io.prometheus.client.Counter dataErrors = io.prometheus.client.Counter
     .build(BASE + "bad_input_data", "Number of data inconsistencies encountered in source data")
     .labelNames("type")
@@ -164,6 +174,17 @@ class PrometheusStats implements Stats {
     tilesWrittenBytes.labels(Integer.toString(zoom)).observe(bytes);
   }
 
+  private final Histogram tilesServedLatency = Histogram
+    .build(BASE + "serve_tile_latency_seconds", "Time to look up a tile for a request by zoom level and cache result")
+    .buckets(0.000_01, 0.000_1, 0.000_5, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1)
+    .labelNames("zoom", "cache")
+    .register(registry);
+
+  @Override
+  public void servedTile(int zoom, boolean cacheHit, long nanos) {
+    tilesServedLatency.labels(Integer.toString(zoom), cacheHit ? "hit" : "miss").observe(nanos / 1e9);
+  }
+
   @Override
   public Timers timers() {
     return timers;
@@ -108,12 +108,20 @@ public interface Stats extends AutoCloseable {
    */
   void emittedFeatures(int z, String layer, int numFeatures);
 
+  /** Records a lookup in the render cache, and whether it found a cached result. */
+  void renderCacheLookup(boolean hit);
+
   /** Records that an input element was processed and emitted some output features in {@code layer}. */
   void processedElement(String elemType, String layer);
 
   /** Records that a tile has been written to the archive output where compressed size is {@code bytes}. */
   void wroteTile(int zoom, int bytes);
 
+  /**
+   * Records that a tile server took {@code nanos} to look up a tile, and whether it was found in the in-memory cache.
+   */
+  void servedTile(int zoom, boolean cacheHit, long nanos);
+
   /** Returns the timers for all stages started with {@link #startStage(String)}. */
   Timers timers();
 
@@ -199,6 +207,9 @@ public interface Stats extends AutoCloseable {
     @Override
     public void wroteTile(int zoom, int bytes) {}
 
+    @Override
+    public void servedTile(int zoom, boolean cacheHit, long nanos) {}
+
     @Override
     public Timers timers() {
       return timers;
@@ -236,6 +247,9 @@ public interface Stats extends AutoCloseable {
     @Override
     public void processedElement(String elemType, String layer) {}
 
+    @Override
+    public void renderCacheLookup(boolean hit) {}
+
     @Override
     public void gauge(String name, Supplier<Number> value) {}
 
@@ -5,6 +5,7 @@ import com.onthegomap.planetiler.geo.TileOrder;
 import com.onthegomap.planetiler.stats.Counter;
 import com.onthegomap.planetiler.util.CloseShieldOutputStream;
 import com.onthegomap.planetiler.util.CountingOutputStream;
+import com.onthegomap.planetiler.util.ParallelGzipOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
@@ -12,6 +13,8 @@ import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -33,9 +36,16 @@ import java.util.concurrent.atomic.AtomicInteger;
  *
  * # now run planetiler with the options --append --output=/tmp/data/output.csv --tile_write_threads=3
  * </pre>
+ * <p>
+ * Pass {@code gzip=true} (i.e. {@code --csv_gzip=true} or {@code output.csv?gzip=true}) to gzip each file using
+ * {@link ParallelGzipOutputStream}, which compresses blocks on {@code gzip_threads} background threads instead of on
+ * the tile writer thread.
  */
 abstract class WriteableStreamArchive implements WriteableTileArchive {
 
+  static final String OPTION_GZIP = "gzip";
+  static final String OPTION_GZIP_THREADS = "gzip_threads";
+
   private final Counter.MultiThreadCounter bytesWritten = Counter.newMultiThreadCounter();
 
   private final OutputStream primaryOutputStream;
@@ -44,11 +54,28 @@ abstract class WriteableStreamArchive implements WriteableTileArchive {
   private final StreamArchiveConfig config;
 
   private final AtomicInteger tileWriterCounter = new AtomicInteger(0);
+  private final ExecutorService gzipExecutor;
+  private final int gzipThreads;
 
   private WriteableStreamArchive(OutputStreamSupplier outputStreamFactory, StreamArchiveConfig config) {
-    this.outputStreamFactory =
-      i -> new CountingOutputStream(outputStreamFactory.newOutputStream(i), bytesWritten.counterForThread()::incBy);
     this.config = config;
+    boolean gzip = config.moreOptions().getBoolean(OPTION_GZIP, "gzip the output", false);
+    this.gzipThreads = Math.max(1, config.moreOptions().getInteger(OPTION_GZIP_THREADS,
+      "number of threads to gzip the output with", Runtime.getRuntime().availableProcessors()));
+    this.gzipExecutor = gzip ?
+      Executors.newFixedThreadPool(gzipThreads, Thread.ofPlatform().name("gzip-", 1).daemon().factory()) : null;
+    this.outputStreamFactory = i -> {
+      OutputStream counting =
+        new CountingOutputStream(outputStreamFactory.newOutputStream(i), bytesWritten.counterForThread()::incBy);
+      if (gzipExecutor == null) {
+        return counting;
+      }
+      try {
+        return new ParallelGzipOutputStream(counting, gzipExecutor, gzipThreads);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
 
     this.primaryOutputStream = this.outputStreamFactory.newOutputStream(0);
   }
@@ -59,7 +86,13 @@ abstract class WriteableStreamArchive implements WriteableTileArchive {
 
   @Override
   public final void close() throws IOException {
-    primaryOutputStream.close();
+    try {
+      primaryOutputStream.close();
+    } finally {
+      if (gzipExecutor != null) {
+        gzipExecutor.shutdownNow();
+      }
+    }
   }
 
   @Override
@@ -16,11 +16,13 @@ public class CommonStringEncoder {
   private final Map<String, Integer> stringToId;
   private final String[] idToString;
   private final AtomicInteger stringId = new AtomicInteger(0);
+  private final SeenTwiceFilter seen;
 
   public CommonStringEncoder(int maxStrings) {
     this.maxStrings = maxStrings;
     stringToId = new ConcurrentHashMap<>(maxStrings);
     idToString = new String[maxStrings];
+    seen = new SeenTwiceFilter(maxStrings);
   }
 
   /**
@@ -60,6 +62,32 @@ public class CommonStringEncoder {
     return result;
   }
 
+  /**
+   * Returns a int value to each unique string passed in, or {@code -1} if there is no room left to store
+   * {@code string} or this is the first time it has been seen.
+   * <p>
+   * Strings only get stored the second time they are seen so that unique values like names don't fill up every ID
+   * before common values that first appear later in the input get a chance.
+   *
+   * @param string the string to store
+   * @return an int that can be converted back to a string by {@link #decode(int)}, or {@code -1}
+   */
+  public int tryEncode(String string) {
+    Integer result = stringToId.get(string);
+    if (result == null) {
+      if (stringId.get() >= maxStrings || !seen.seenBefore(string.hashCode())) {
+        return -1;
+      }
+      try {
+        result = encode(string);
+      } catch (IllegalArgumentException e) {
+        // another thread used up the last ID
+        return -1;
+      }
+    }
+    return result;
+  }
+
   /**
    * Variant of CommonStringEncoder based on byte rather than int for string indexing.
    */
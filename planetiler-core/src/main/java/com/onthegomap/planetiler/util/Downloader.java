@@ -1,6 +1,8 @@
 package com.onthegomap.planetiler.util;
 
 import static com.google.common.net.HttpHeaders.*;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.WRITE;
 
 import com.google.common.util.concurrent.RateLimiter;
@@ -8,9 +10,13 @@ import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.stats.Counter;
 import com.onthegomap.planetiler.stats.ProgressLoggers;
 import com.onthegomap.planetiler.worker.RunnableThatThrows;
-import com.onthegomap.planetiler.worker.Worker;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URLConnection;
 import java.net.http.HttpClient;
@@ -19,9 +25,16 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -31,6 +44,9 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntPredicate;
+import javax.annotation.concurrent.ThreadSafe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +56,12 @@ import org.slf4j.LoggerFactory;
  * After downloading a file once, it won't be downloaded again unless the {@code Content-Length} of the resource
  * changes.
  * <p>
+ * When the server supports range requests, files get downloaded in chunks and completed chunks get recorded in a
+ * sidecar file next to the partial download, so a failed download resumes where it left off instead of starting over.
+ * Each ranged request sends the {@code ETag} (or {@code Last-Modified} date) of the resource in an {@code If-Range}
+ * header to detect when it changes part way through. With {@code --download-verify-md5}, completed files are also
+ * checked against the checksum in a {@code .md5} file next to them on the server.
+ * <p>
  * For example:
  * {@snippet :
  * Downloader.create(PlanetilerConfig.defaults())
@@ -110,7 +132,7 @@ public class Downloader {
   private static InputStream openStreamRange(String urlString, PlanetilerConfig config, long start, long end)
     throws IOException {
     URLConnection connection = getUrlConnection(urlString, config);
-    connection.setRequestProperty(RANGE, "bytes=%d-%d".formatted(start, end));
+    connection.setRequestProperty(RANGE, "bytes=%d-%d".formatted(start, end - 1));
     return connection.getInputStream();
   }
 
@@ -122,6 +144,24 @@ public class Downloader {
     return openStreamRange(url, config, start, end);
   }
 
+  /**
+   * Returns an input stream for bytes {@code start} (inclusive) to {@code end} (exclusive) of {@code url}, that fails
+   * if the resource no longer matches {@code ifRange} validator from when the download started.
+   */
+  InputStream openStreamRange(String url, long start, long end, String ifRange) throws IOException {
+    if (ifRange == null) {
+      return openStreamRange(url, start, end);
+    }
+    URLConnection connection = getUrlConnection(url, config);
+    connection.setRequestProperty(RANGE, "bytes=%d-%d".formatted(start, end - 1));
+    connection.setRequestProperty(IF_RANGE, ifRange);
+    if (connection instanceof HttpURLConnection http && http.getResponseCode() != 206) {
+      http.disconnect();
+      throw new IOException(url + " changed since the download started, got status " + http.getResponseCode());
+    }
+    return connection.getInputStream();
+  }
+
   /**
    * Adds a new resource to download but does not start downloading it until {@link #run()} is called.
    * <p>
@@ -137,29 +177,57 @@ public class Downloader {
    * @return {@code this} for chaining
    */
   public Downloader add(String id, String url, Path output) {
+    toDownloadList.add(new ResourceToDownload(id, resolveUrl(url), output));
+    return this;
+  }
+
+  /**
+   * Adds a new resource to download like {@link #add(String, String, Path)}, but lets readers consume the file while
+   * it is still downloading and does not wait for it to finish in {@link #run()}.
+   *
+   * @param id     short name to use for this download when logging progress
+   * @param url    the external resource to fetch, with the same shortcuts as {@link #add(String, String, Path)}
+   * @param output where to download the file to
+   * @return a handle to read from the file as it downloads
+   */
+  public PartialFile addStreaming(String id, String url, Path output) {
+    var resource = new ResourceToDownload(id, resolveUrl(url), output);
+    resource.inProgress.streaming = true;
+    toDownloadList.add(resource);
+    return resource.inProgress;
+  }
+
+  private String resolveUrl(String url) {
     if (url.startsWith("geofabrik:")) {
-      url = Geofabrik.getDownloadUrl(url.replaceFirst("^geofabrik:", ""), config);
+      return Geofabrik.getDownloadUrl(url.replaceFirst("^geofabrik:", ""), config);
     } else if (url.startsWith("aws:")) {
-      url = AwsOsm.OSM_PDS.getDownloadUrl(url.replaceFirst("^aws:", ""), config);
+      return AwsOsm.OSM_PDS.getDownloadUrl(url.replaceFirst("^aws:", ""), config);
     } else if (url.startsWith("overture:")) {
-      url = AwsOsm.OVERTURE.getDownloadUrl(url.replaceFirst("^overture:", ""), config);
+      return AwsOsm.OVERTURE.getDownloadUrl(url.replaceFirst("^overture:", ""), config);
     }
-    toDownloadList.add(new ResourceToDownload(id, url, output));
-    return this;
+    return url;
   }
 
   /**
    * Starts downloading all resources in parallel, logging progress until complete.
+   * <p>
+   * Resources added with {@link #addStreaming(String, String, Path)} keep downloading in the background after this
+   * returns.
    *
    * @throws IllegalStateException if an error occurs downloading any resource, will be thrown after all resources
    *                               finish
    */
   public void run() {
-    var downloads = CompletableFuture
-      .allOf(toDownloadList.stream()
-        .map(this::downloadIfNecessary)
-        .toArray(CompletableFuture[]::new)
-      );
+    List<CompletableFuture<Void>> all = new ArrayList<>();
+    List<CompletableFuture<Void>> blocking = new ArrayList<>();
+    for (var resource : toDownloadList) {
+      var future = downloadIfNecessary(resource);
+      all.add(future);
+      if (!resource.inProgress.streaming) {
+        blocking.add(future);
+      }
+    }
+    var downloads = CompletableFuture.allOf(blocking.toArray(CompletableFuture[]::new));
 
     ProgressLoggers loggers = ProgressLoggers.create();
 
@@ -176,10 +244,12 @@ public class Downloader {
     }
     loggers.add(" ").addProcessStats()
       .awaitAndLog(downloads, config.logInterval());
-    executor.shutdown();
+    // streaming downloads still need the executor to fetch their remaining chunks
+    CompletableFuture.allOf(all.toArray(CompletableFuture[]::new)).whenComplete((result, error) -> executor.shutdown());
   }
 
   CompletableFuture<Void> downloadIfNecessary(ResourceToDownload resourceToDownload) {
+    var inProgress = resourceToDownload.inProgress;
     return CompletableFuture.runAsync(RunnableThatThrows.wrap(() -> {
       LogUtil.setStage("download", resourceToDownload.id);
       long existingSize = FileUtils.size(resourceToDownload.output);
@@ -196,20 +266,64 @@ public class Downloader {
         LOGGER.info("Downloading {}{} to {}", resourceToDownload.url, redirectInfo, resourceToDownload.output);
         FileUtils.delete(resourceToDownload.output);
         FileUtils.createParentDirectories(resourceToDownload.output);
-        FileUtils.delete(tmpPath);
-        FileUtils.deleteOnExit(tmpPath);
         diskSpaceCheck.addDisk(tmpPath, metadata.size, resourceToDownload.id);
         diskSpaceCheck.checkAgainstLimits(config.force(), false);
         httpDownload(resourceToDownload, tmpPath);
-        Files.move(tmpPath, resourceToDownload.output);
+        if (config.downloadVerifyMd5()) {
+          verifyMd5(resourceToDownload, tmpPath);
+        }
+        inProgress.moveIntoPlace(tmpPath, resourceToDownload.output);
+        FileUtils.delete(resourceToDownload.chunksPath());
         LOGGER.info("Finished downloading {} to {}", resourceToDownload.url, resourceToDownload.output);
       } catch (Exception e) { // NOSONAR
         LOGGER.error("Error downloading {} to {}", resourceToDownload.url, resourceToDownload.output, e);
+        // leave the partial download and list of completed chunks in place so the next attempt can resume
+        if (!metadata.resumable()) {
+          FileUtils.delete(tmpPath, resourceToDownload.chunksPath());
+        }
         throw e;
-      } finally {
-        FileUtils.delete(tmpPath);
       }
-    }), executor);
+    }), executor).whenComplete((result, error) -> {
+      if (error != null) {
+        // unblock anything waiting for the size when the HEAD request fails
+        resourceToDownload.metadata.completeExceptionally(error);
+      }
+      inProgress.finish(error);
+    });
+  }
+
+  /**
+   * Compares the MD5 checksum of {@code file} against the {@code .md5} file next to {@code resource} on the server, or
+   * logs a warning if there is no {@code .md5} file.
+   *
+   * @throws IllegalStateException if the checksums do not match
+   */
+  private void verifyMd5(ResourceToDownload resource, Path file) throws IOException {
+    String md5Url = resource.metadata().join().canonicalUrl() + ".md5";
+    String expected;
+    try (var is = openStream(md5Url)) {
+      // md5sum format: "<hex checksum>  <file name>"
+      expected = new String(is.readAllBytes(), StandardCharsets.UTF_8).trim().split("\\s+")[0];
+    } catch (IOException e) {
+      LOGGER.warn("Unable to verify {}, failed to read {}: {}", resource.output, md5Url, e.toString());
+      return;
+    }
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    try (var is = new DigestInputStream(Files.newInputStream(file), digest)) {
+      is.transferTo(OutputStream.nullOutputStream());
+    }
+    String actual = HexFormat.of().formatHex(digest.digest());
+    if (!actual.equalsIgnoreCase(expected)) {
+      FileUtils.delete(file, resource.chunksPath());
+      throw new IllegalStateException(
+        "Checksum of " + resource.url + " was " + actual + " but " + md5Url + " expected " + expected);
+    }
+    LOGGER.info("Verified {} checksum matches {}", resource.output, md5Url);
   }
 
   private ResourceMetadata httpHeadFollowRedirects(String url, int redirects) throws IOException, InterruptedException {
@@ -238,7 +352,12 @@ public class Downloader {
           contentLength = headers.firstValueAsLong(CONTENT_LENGTH).orElseThrow();
         }
         boolean supportsRangeRequest = headers.allValues(ACCEPT_RANGES).contains("bytes");
-        ResourceMetadata metadata = new ResourceMetadata(location, url, contentLength, supportsRangeRequest);
+        // weak etags can't be used in If-Range headers, so fall back to last modified date
+        Optional<String> validator = headers.firstValue(ETAG)
+          .filter(etag -> !etag.startsWith("W/"))
+          .or(() -> headers.firstValue(LAST_MODIFIED));
+        ResourceMetadata metadata =
+          new ResourceMetadata(location, url, contentLength, supportsRangeRequest, validator);
         return HttpResponse.BodyHandlers.replacing(metadata).apply(responseInfo);
       }).body();
   }
@@ -247,50 +366,75 @@ public class Downloader {
     throws ExecutionException, InterruptedException {
     var metadata = resource.metadata().get();
     String canonicalUrl = metadata.canonicalUrl();
-    record Range(long start, long end) {}
+    String ifRange = metadata.validator().orElse(null);
+    record Range(int index, long start, long end) {}
     List<Range> chunks = new ArrayList<>();
-    boolean ranges = metadata.acceptRange && config.downloadThreads() > 1;
+    // download in chunks whenever the server supports it, even with 1 thread, so a failed download can resume
+    boolean ranges = metadata.acceptRange;
     long chunkSize = ranges ? chunkSizeBytes : metadata.size;
     for (long start = 0; start < metadata.size; start += chunkSize) {
       long end = Math.min(start + chunkSize, metadata.size);
-      chunks.add(new Range(start, end));
+      chunks.add(new Range(chunks.size(), start, end));
+    }
+    var completed = DownloadedChunks.open(resource.chunksPath(), tmpPath, metadata, chunkSize);
+    resource.inProgress.start(chunks.size(), chunkSize, metadata.size, completed::isDone);
+    if (completed.count() > 0) {
+      LOGGER.info("Resuming download of {} with {}/{} chunks already downloaded", resource.url, completed.count(),
+        chunks.size());
     }
-    FileUtils.setLength(tmpPath, metadata.size);
     Semaphore perFileLimiter = new Semaphore(config.downloadThreads());
-    Worker.joinFutures(chunks.stream().map(range -> CompletableFuture.runAsync(RunnableThatThrows.wrap(() -> {
-      LogUtil.setStage("download", resource.id);
-      perFileLimiter.acquire();
-      var counter = resource.progress.counterForThread();
-      try (
-        var fc = FileChannel.open(tmpPath, WRITE);
-        var inputStream = (ranges || range.start > 0) ?
-          openStreamRange(canonicalUrl, range.start, range.end) :
-          openStream(canonicalUrl);
-      ) {
-        long offset = range.start;
-        byte[] buffer = new byte[16384];
-        int read;
-        while (offset < range.end && (read = inputStream.read(buffer, 0, 16384)) >= 0) {
-          counter.incBy(read);
-          if (rateLimiter != null) {
-            rateLimiter.acquire(read);
+    try (completed) {
+      // let the other chunks finish when one fails so the next attempt has less left to download
+      CompletableFuture.allOf(chunks.stream().filter(range -> !completed.isDone(range.index))
+        .map(range -> CompletableFuture.runAsync(RunnableThatThrows.wrap(() -> {
+          LogUtil.setStage("download", resource.id);
+          perFileLimiter.acquire();
+          try {
+            downloadRange(resource, tmpPath, ranges ?
+              openStreamRange(canonicalUrl, range.start, range.end, ifRange) :
+              openStream(canonicalUrl), range.index, range.start, range.end);
+            completed.markDone(range.index);
+          } finally {
+            perFileLimiter.release();
           }
-          int position = 0;
-          int remaining = read;
-          while (remaining > 0) {
-            int written = fc.write(ByteBuffer.wrap(buffer, position, remaining), offset);
-            if (written <= 0) {
-              throw new IOException("Failed to write to " + tmpPath);
-            }
-            position += written;
-            remaining -= written;
-            offset += written;
+        }), executor)).toArray(CompletableFuture[]::new)).get();
+    }
+  }
+
+  private void downloadRange(ResourceToDownload resource, Path tmpPath, InputStream stream, int chunk, long start,
+    long end) throws IOException {
+    var counter = resource.progress.counterForThread();
+    try (
+      var fc = FileChannel.open(tmpPath, WRITE);
+      var inputStream = stream
+    ) {
+      long offset = start;
+      byte[] buffer = new byte[16384];
+      int read;
+      while (offset < end && (read = inputStream.read(buffer, 0, (int) Math.min(16384, end - offset))) >= 0) {
+        counter.incBy(read);
+        if (rateLimiter != null) {
+          // one limiter shared by every chunk of every resource caps their combined bandwidth
+          rateLimiter.acquire(read);
+        }
+        int position = 0;
+        int remaining = read;
+        while (remaining > 0) {
+          int written = fc.write(ByteBuffer.wrap(buffer, position, remaining), offset);
+          if (written <= 0) {
+            throw new IOException("Failed to write to " + tmpPath);
           }
+          position += written;
+          remaining -= written;
+          offset += written;
         }
-      } finally {
-        perFileLimiter.release();
+        resource.inProgress.advance(chunk, offset);
+      }
+      if (offset < end) {
+        throw new IOException("Expected " + (end - start) + " bytes from " + resource.url + " but got " +
+          (offset - start));
       }
-    }), executor)).toArray(CompletableFuture[]::new)).get();
+    }
   }
 
   private HttpRequest.Builder newHttpRequest(String url) {
@@ -299,21 +443,236 @@ public class Downloader {
       .header(USER_AGENT, config.httpUserAgent());
   }
 
-  record ResourceMetadata(Optional<String> redirect, String canonicalUrl, long size, boolean acceptRange) {}
+  /**
+   * Tracks which chunks of a partial download have been written to disk in a sidecar file with a header line that
+   * identifies the resource, followed by the index of each completed chunk on its own line.
+   */
+  @ThreadSafe
+  private static class DownloadedChunks implements Closeable {
+
+    private final BitSet done;
+    private final Writer writer;
+
+    private DownloadedChunks(BitSet done, Writer writer) {
+      this.done = done;
+      this.writer = writer;
+    }
+
+    /**
+     * Returns the chunks of {@code tmpPath} that were already downloaded if the sidecar file at {@code chunksPath}
+     * matches the current version of the resource, otherwise deletes both files and starts a new download.
+     */
+    static DownloadedChunks open(Path chunksPath, Path tmpPath, ResourceMetadata metadata, long chunkSize)
+      throws IOException {
+      String header = metadata.size() + " " + chunkSize + " " + metadata.validator().orElse("");
+      BitSet done = new BitSet();
+      boolean resumable = metadata.resumable();
+      if (resumable && Files.exists(chunksPath) && Files.exists(tmpPath) &&
+        FileUtils.size(tmpPath) == metadata.size()) {
+        List<String> lines = Files.readAllLines(chunksPath, StandardCharsets.UTF_8);
+        if (!lines.isEmpty() && lines.getFirst().equals(header)) {
+          for (String line : lines.subList(1, lines.size())) {
+            // ignore a partially-written last line
+            if (!line.isBlank() && line.chars().allMatch(Character::isDigit)) {
+              done.set(Integer.parseInt(line));
+            }
+          }
+        }
+      }
+      if (done.isEmpty()) {
+        FileUtils.delete(tmpPath, chunksPath);
+        FileUtils.setLength(tmpPath, metadata.size());
+        if (!resumable) {
+          FileUtils.deleteOnExit(tmpPath);
+        }
+      }
+      Writer writer = null;
+      if (resumable) {
+        writer = Files.newBufferedWriter(chunksPath, StandardCharsets.UTF_8, CREATE, APPEND);
+        if (done.isEmpty()) {
+          writer.write(header + "\n");
+          writer.flush();
+        }
+      }
+      return new DownloadedChunks(done, writer);
+    }
+
+    synchronized boolean isDone(int chunk) {
+      return done.get(chunk);
+    }
+
+    synchronized int count() {
+      return done.cardinality();
+    }
+
+    synchronized void markDone(int chunk) throws IOException {
+      done.set(chunk);
+      if (writer != null) {
+        writer.write(chunk + "\n");
+        writer.flush();
+      }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+  }
+
+  record ResourceMetadata(
+    Optional<String> redirect, String canonicalUrl, long size, boolean acceptRange, Optional<String> validator
+  ) {
+
+    ResourceMetadata(Optional<String> redirect, String canonicalUrl, long size, boolean acceptRange) {
+      this(redirect, canonicalUrl, size, acceptRange, Optional.empty());
+    }
+
+    /**
+     * Returns true if a failed download can pick up where it left off, which requires a validator to tell whether the
+     * resource changed since the last attempt.
+     */
+    boolean resumable() {
+      return acceptRange && validator.isPresent();
+    }
+  }
+
+  /**
+   * Tracks how much of the start of a file has been written, when chunks are downloaded out of order, so that readers
+   * can consume it while the download is still in progress.
+   */
+  @ThreadSafe
+  static final class InProgressDownload implements PartialFile {
+
+    private final CompletableFuture<ResourceMetadata> metadata;
+    private final Path output;
+    private final Path tmpPath;
+    private volatile boolean streaming = false;
+    // end offset of the bytes written so far from the start of each chunk
+    private long[] chunkWritten;
+    private long chunkSize;
+    private long size;
+    private int firstIncompleteChunk = 0;
+    private long available = -1;
+    private boolean complete = false;
+    private Throwable failure = null;
+
+    private InProgressDownload(CompletableFuture<ResourceMetadata> metadata, Path output, Path tmpPath) {
+      this.metadata = metadata;
+      this.output = output;
+      this.tmpPath = tmpPath;
+    }
+
+    private synchronized void start(int numChunks, long chunkSize, long size, IntPredicate alreadyDownloaded) {
+      this.chunkSize = chunkSize;
+      this.size = size;
+      chunkWritten = new long[numChunks];
+      for (int i = 0; i < numChunks; i++) {
+        chunkWritten[i] = alreadyDownloaded.test(i) ? chunkEnd(i) : i * chunkSize;
+      }
+      updateAvailable();
+    }
+
+    private long chunkEnd(int chunk) {
+      return Math.min(size, (chunk + 1) * chunkSize);
+    }
+
+    private void updateAvailable() {
+      while (firstIncompleteChunk < chunkWritten.length &&
+        chunkWritten[firstIncompleteChunk] >= chunkEnd(firstIncompleteChunk)) {
+        firstIncompleteChunk++;
+      }
+      available = firstIncompleteChunk < chunkWritten.length ? chunkWritten[firstIncompleteChunk] : size;
+      notifyAll();
+    }
+
+    private synchronized void advance(int chunk, long offset) {
+      chunkWritten[chunk] = offset;
+      if (chunk == firstIncompleteChunk) {
+        updateAvailable();
+      }
+    }
+
+    private synchronized void moveIntoPlace(Path from, Path to) throws IOException {
+      // hold the lock so readers never try to open the file in between locations
+      Files.move(from, to);
+      complete = true;
+      notifyAll();
+    }
+
+    private synchronized void finish(Throwable error) {
+      if (error != null) {
+        failure = error;
+      } else {
+        complete = true;
+      }
+      notifyAll();
+    }
+
+    private void await(BooleanSupplier ready) throws IOException {
+      try {
+        while (!complete && failure == null && !ready.getAsBoolean()) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for " + output);
+      }
+      if (failure != null) {
+        throw new IOException("Failed to download " + output, failure);
+      }
+    }
+
+    @Override
+    public long size() {
+      return metadata.join().size();
+    }
+
+    @Override
+    public synchronized FileChannel openChannel() throws IOException {
+      await(() -> chunkWritten != null);
+      return FileChannel.open(complete ? output : tmpPath, StandardOpenOption.READ);
+    }
+
+    @Override
+    public synchronized void awaitBytes(long bytes) throws IOException {
+      await(() -> chunkWritten != null && available >= bytes);
+    }
+
+    @Override
+    public synchronized void awaitComplete() throws IOException {
+      await(() -> false);
+    }
+  }
 
   record ResourceToDownload(
     String id, String url, Path output, CompletableFuture<ResourceMetadata> metadata,
-    Counter.MultiThreadCounter progress
+    Counter.MultiThreadCounter progress, InProgressDownload inProgress
   ) {
 
     ResourceToDownload(String id, String url, Path output) {
-      this(id, url, output, new CompletableFuture<>(), Counter.newMultiThreadCounter());
+      this(id, url, output, new CompletableFuture<>());
     }
 
-    public Path tmpPath() {
+    private ResourceToDownload(String id, String url, Path output, CompletableFuture<ResourceMetadata> metadata) {
+      this(id, url, output, metadata, Counter.newMultiThreadCounter(),
+        new InProgressDownload(metadata, output, tmpPath(output)));
+    }
+
+    private static Path tmpPath(Path output) {
       return output.resolveSibling(output.getFileName() + "_inprogress");
     }
 
+    public Path tmpPath() {
+      return tmpPath(output);
+    }
+
+    /** Returns the path of the sidecar file that records which chunks of {@link #tmpPath()} have been downloaded. */
+    public Path chunksPath() {
+      return output.resolveSibling(output.getFileName() + "_inprogress.chunks");
+    }
+
     public long bytesDownloaded() {
       return progress.get();
     }
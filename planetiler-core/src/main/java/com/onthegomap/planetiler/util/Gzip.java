@@ -3,11 +3,19 @@ package com.onthegomap.planetiler.util;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import javax.annotation.concurrent.NotThreadSafe;
 
 public class Gzip {
 
+  /** Minimal gzip member header with no file name, modification time, or flags, and an unknown OS. */
+  static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+  static final int TRAILER_LENGTH = 8;
+
   public static byte[] gzip(byte[] in) throws IOException {
     var bos = new ByteArrayOutputStream(in.length);
     try (var gzipOS = new GZIPOutputStream(bos)) {
@@ -21,4 +29,64 @@ public class Gzip {
       return is.readAllBytes();
     }
   }
+
+  /**
+   * Writes the {@link #TRAILER_LENGTH}-byte gzip trailer with the CRC-32 and length (mod 2^32) of the uncompressed
+   * data to {@code out} starting at {@code offset}.
+   */
+  static void putTrailer(byte[] out, int offset, long crc, long length) {
+    putIntLE(out, offset, (int) crc);
+    putIntLE(out, offset + 4, (int) length);
+  }
+
+  private static void putIntLE(byte[] out, int offset, int value) {
+    out[offset] = (byte) value;
+    out[offset + 1] = (byte) (value >>> 8);
+    out[offset + 2] = (byte) (value >>> 16);
+    out[offset + 3] = (byte) (value >>> 24);
+  }
+
+  /**
+   * Compresses data to the gzip format from a single thread, reusing the same {@link Deflater} and output buffer
+   * across calls instead of allocating new ones for every call like {@link #gzip(byte[])}.
+   */
+  @NotThreadSafe
+  public static class Compressor implements AutoCloseable {
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private byte[] buffer = new byte[1 << 12];
+
+    /** Returns the gzipped bytes of {@code length} bytes of {@code in} starting at {@code offset}. */
+    public byte[] gzip(byte[] in, int offset, int length) {
+      deflater.reset();
+      deflater.setInput(in, offset, length);
+      deflater.finish();
+      crc.reset();
+      crc.update(in, offset, length);
+
+      System.arraycopy(HEADER, 0, buffer, 0, HEADER.length);
+      int position = HEADER.length;
+      while (!deflater.finished()) {
+        if (position == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        position += deflater.deflate(buffer, position, buffer.length - position);
+      }
+
+      byte[] result = Arrays.copyOf(buffer, position + TRAILER_LENGTH);
+      putTrailer(result, position, crc.getValue(), length);
+      return result;
+    }
+
+    /** Returns the gzipped bytes of {@code in}. */
+    public byte[] gzip(byte[] in) {
+      return gzip(in, 0, in.length);
+    }
+
+    @Override
+    public void close() {
+      deflater.end();
+    }
+  }
 }
@@ -1,5 +1,9 @@
 package com.onthegomap.planetiler.util;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
 /**
  * Static hash functions and hashing utilities.
  *
@@ -18,6 +22,10 @@ public final class Hashing {
   public static final long FNV1_64_INIT = 0xcbf29ce484222325L;
   private static final long FNV1_PRIME_64 = 1099511628211L;
 
+  private static final long MURMUR3_C1 = 0x87c37b91114253d5L;
+  private static final long MURMUR3_C2 = 0x4cf5ad432745937fL;
+  private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
   private Hashing() {}
 
   /**
@@ -78,4 +86,89 @@ public final class Hashing {
     return fnv1a64(FNV1_64_INIT, data);
   }
 
+  /**
+   * Computes the 128-bit MurmurHash3 (x64 variant, seed 0) of {@code data}.
+   * <p>
+   * The result matches Guava's {@code Hashing.murmur3_128()} but avoids allocating a hasher for each call.
+   *
+   * @param data the data to generate the hash for
+   * @return the hash
+   */
+  public static Hash128 murmur3x64_128(byte[] data) {
+    final int length = data.length;
+    final int blocks = length / 16;
+    long h1 = 0;
+    long h2 = 0;
+
+    for (int i = 0; i < blocks; i++) {
+      long k1 = (long) LONG_LE.get(data, i * 16);
+      long k2 = (long) LONG_LE.get(data, i * 16 + 8);
+
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    int tail = blocks * 16;
+    long k1 = 0;
+    long k2 = 0;
+    int remaining = length & 15;
+    for (int i = remaining - 1; i >= 8; i--) {
+      k2 ^= (data[tail + i] & 0xffL) << ((i - 8) * 8);
+    }
+    for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+      k1 ^= (data[tail + i] & 0xffL) << (i * 8);
+    }
+    if (remaining > 8) {
+      h2 ^= mixK2(k2);
+    }
+    if (remaining > 0) {
+      h1 ^= mixK1(k1);
+    }
+
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    h1 += h2;
+    h2 += h1;
+    return new Hash128(h1, h2);
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= MURMUR3_C1;
+    k1 = Long.rotateLeft(k1, 31);
+    return k1 * MURMUR3_C2;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= MURMUR3_C2;
+    k2 = Long.rotateLeft(k2, 33);
+    return k2 * MURMUR3_C1;
+  }
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  /**
+   * A 128-bit hash split into two longs.
+   *
+   * @param low  the first 64 bits, which are also good enough to use as a hash key on their own
+   * @param high the last 64 bits
+   */
+  public record Hash128(long low, long high) {}
 }
@@ -0,0 +1,266 @@
+package com.onthegomap.planetiler.util;
+
+import static com.google.common.net.HttpHeaders.CONTENT_RANGE;
+import static com.google.common.net.HttpHeaders.RANGE;
+import static com.google.common.net.HttpHeaders.USER_AGENT;
+
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A read-only {@link SeekableByteChannel} over a remote file that fetches the bytes it needs with HTTP range requests.
+ * <p>
+ * Fetched bytes get stored in fixed-size pages in a memory-mapped temp file, and the least-recently used page gets
+ * evicted when the cache fills up, so repeated reads of directories or nearby tiles do not go back to the server. When
+ * a read needs several missing pages in a row, they get fetched together in a single request.
+ */
+@ThreadSafe
+public class HttpRangeChannel implements SeekableByteChannel {
+
+  private static final Pattern CONTENT_RANGE_TOTAL = Pattern.compile("^bytes \\d+-\\d+/(\\d+)$");
+  private static final long SEGMENT_BYTES = 1L << 30;
+
+  private final URI uri;
+  private final HttpClient client;
+  private final String userAgent;
+  private final Duration timeout;
+  private final int pageSize;
+  private final Path cachePath;
+  private final FileChannel cacheChannel;
+  private final MappedByteBuffer[] segments;
+  private final int slotsPerSegment;
+  private final Map<Long, Integer> pageToSlot;
+  private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+  private final AtomicLong requests = new AtomicLong(0);
+  private final long size;
+  private long position = 0;
+  private boolean open = true;
+
+  /**
+   * Opens a channel to {@code uri}.
+   *
+   * @param uri        remote file that supports range requests
+   * @param config     planetiler config with the user agent and timeout to use
+   * @param tmpDir     directory to store the page cache in
+   * @param pageSize   number of bytes to fetch and cache at a time, must divide evenly into 1GB
+   * @param cacheBytes maximum size of the page cache
+   * @throws IOException if the remote file could not be read or does not support range requests
+   */
+  public HttpRangeChannel(URI uri, PlanetilerConfig config, Path tmpDir, int pageSize, long cacheBytes)
+    throws IOException {
+    if (pageSize <= 0 || SEGMENT_BYTES % pageSize != 0) {
+      throw new IllegalArgumentException("page size must divide evenly into " + SEGMENT_BYTES + ", got " + pageSize);
+    }
+    this.uri = uri;
+    this.userAgent = config.httpUserAgent();
+    this.timeout = config.httpTimeout();
+    this.pageSize = pageSize;
+    this.client = HttpClient.newBuilder()
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .connectTimeout(timeout)
+      .build();
+    int numSlots = (int) Math.max(1, Math.min(Integer.MAX_VALUE, cacheBytes / pageSize));
+    slotsPerSegment = (int) (SEGMENT_BYTES / pageSize);
+    pageToSlot = new LinkedHashMap<>(16, 0.75f, true);
+    for (int i = 0; i < numSlots; i++) {
+      freeSlots.add(i);
+    }
+    FileUtils.createDirectory(tmpDir);
+    cachePath = Files.createTempFile(tmpDir, "http_cache", ".bin");
+    FileUtils.deleteOnExit(cachePath);
+    cacheChannel = FileChannel.open(cachePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long cacheLength = (long) numSlots * pageSize;
+    segments = new MappedByteBuffer[(int) ((cacheLength + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+    try {
+      for (int i = 0; i < segments.length; i++) {
+        long start = i * SEGMENT_BYTES;
+        long length = Math.min(SEGMENT_BYTES, cacheLength - start);
+        segments[i] = cacheChannel.map(FileChannel.MapMode.READ_WRITE, start, length);
+      }
+      // fetch the first page up front to find out the size of the file
+      this.size = fetchPages(0, 1, -1);
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /** Returns the number of HTTP requests made so far. */
+  public long requests() {
+    return requests.get();
+  }
+
+  private ByteBuffer slot(int slot) {
+    int offset = (slot % slotsPerSegment) * pageSize;
+    return segments[slot / slotsPerSegment].duplicate().position(offset).limit(offset + pageSize).slice();
+  }
+
+  private int allocateSlot(long page) {
+    Integer slot = freeSlots.poll();
+    if (slot == null) {
+      var eldest = pageToSlot.entrySet().iterator().next();
+      slot = eldest.getValue();
+      pageToSlot.remove(eldest.getKey());
+    }
+    pageToSlot.put(page, slot);
+    return slot;
+  }
+
+  /**
+   * Fetches {@code count} pages starting at {@code firstPage} in a single range request and stores them in the cache.
+   *
+   * @return the total size of the remote file
+   */
+  private long fetchPages(long firstPage, int count, long knownSize) throws IOException {
+    long start = firstPage * pageSize;
+    long end = start + (long) count * pageSize;
+    if (knownSize >= 0) {
+      end = Math.min(end, knownSize);
+    }
+    var request = HttpRequest.newBuilder(uri)
+      .timeout(timeout)
+      .header(USER_AGENT, userAgent)
+      .header(RANGE, "bytes=%d-%d".formatted(start, end - 1))
+      .GET()
+      .build();
+    HttpResponse<byte[]> response;
+    try {
+      requests.incrementAndGet();
+      response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted fetching " + uri);
+    }
+    if (response.statusCode() != 206) {
+      throw new IOException(
+        "Expected 206 partial content from " + uri + " but got " + response.statusCode() +
+          ", server must support range requests");
+    }
+    long total = knownSize;
+    if (total < 0) {
+      String contentRange = response.headers().firstValue(CONTENT_RANGE).orElse("");
+      var matcher = CONTENT_RANGE_TOTAL.matcher(contentRange);
+      if (!matcher.matches()) {
+        throw new IOException("Unable to get size of " + uri + " from Content-Range: " + contentRange);
+      }
+      total = Long.parseLong(matcher.group(1));
+    }
+    byte[] body = response.body();
+    for (int i = 0; i < count && i * pageSize < body.length; i++) {
+      var page = slot(allocateSlot(firstPage + i));
+      page.put(body, i * pageSize, Math.min(pageSize, body.length - i * pageSize));
+    }
+    return total;
+  }
+
+  @Override
+  public synchronized int read(ByteBuffer dst) throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    if (position >= size) {
+      return -1;
+    }
+    long end = Math.min(size, position + dst.remaining());
+    long firstPage = position / pageSize;
+    long lastPage = (end - 1) / pageSize;
+    // fetch each run of consecutive missing pages with one request
+    for (long page = firstPage; page <= lastPage; ) {
+      if (pageToSlot.containsKey(page)) {
+        page++;
+      } else {
+        long runStart = page;
+        while (page <= lastPage && !pageToSlot.containsKey(page) && page - runStart < freeSlotsOrCapacity()) {
+          page++;
+        }
+        fetchPages(runStart, (int) (page - runStart), size);
+      }
+    }
+    int read = 0;
+    while (position < end) {
+      long page = position / pageSize;
+      Integer slot = pageToSlot.get(page);
+      if (slot == null) {
+        // evicted by a later page in this read when the read is larger than the cache
+        fetchPages(page, 1, size);
+        slot = pageToSlot.get(page);
+      }
+      int offset = (int) (position - page * pageSize);
+      int length = (int) Math.min(pageSize - offset, end - position);
+      dst.put(slot(slot).position(offset).limit(offset + length));
+      position += length;
+      read += length;
+    }
+    return read;
+  }
+
+  private int freeSlotsOrCapacity() {
+    return freeSlots.size() + pageToSlot.size();
+  }
+
+  @Override
+  public int write(ByteBuffer src) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public synchronized long position() {
+    return position;
+  }
+
+  @Override
+  public synchronized SeekableByteChannel position(long newPosition) {
+    this.position = newPosition;
+    return this;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public SeekableByteChannel truncate(long size) {
+    throw new NonWritableChannelException();
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (open) {
+      open = false;
+      for (var segment : segments) {
+        if (segment != null) {
+          ByteBufferUtil.free(segment);
+        }
+      }
+      cacheChannel.close();
+      FileUtils.delete(cachePath);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package com.onthegomap.planetiler.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * An output stream that writes a standard single-member gzip file, but compresses blocks of input in parallel on
+ * {@code executor} like <a href="https://zlib.net/pigz/">pigz</a>.
+ * <p>
+ * Input gets split into blocks of {@code blockSize} bytes that are each deflated independently, primed with the last
+ * 32kb of input before it as a dictionary so the compression ratio stays close to a single-threaded stream. Every block
+ * except the last ends with a sync flush so it ends on a byte boundary and the compressed blocks can be concatenated
+ * into one deflate stream. The CRC of the uncompressed data gets computed on the writing thread, which is much faster
+ * than compression.
+ * <p>
+ * Compressed blocks get written out in order as they complete, and writes block once more than {@code maxPending}
+ * blocks are waiting to be compressed, which bounds memory usage.
+ */
+@NotThreadSafe
+public class ParallelGzipOutputStream extends OutputStream {
+
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 17;
+  private static final int DICTIONARY_SIZE = 1 << 15;
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final int level;
+  private final int blockSize;
+  private final int maxPending;
+  private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+  private final CRC32 crc = new CRC32();
+  private long totalLength = 0;
+  private byte[] block;
+  private int blockLength = 0;
+  private byte[] dictionary = null;
+  private boolean closed = false;
+
+  public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int level, int blockSize,
+    int maxPending) throws IOException {
+    this.out = out;
+    this.executor = executor;
+    this.level = level;
+    this.blockSize = blockSize;
+    this.maxPending = Math.max(1, maxPending);
+    this.block = new byte[blockSize];
+    out.write(Gzip.HEADER);
+  }
+
+  public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int threads) throws IOException {
+    this(out, executor, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE, threads * 2);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    block[blockLength++] = (byte) b;
+    if (blockLength == blockSize) {
+      submitBlock(false);
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int toCopy = Math.min(len, blockSize - blockLength);
+      System.arraycopy(b, off, block, blockLength, toCopy);
+      blockLength += toCopy;
+      off += toCopy;
+      len -= toCopy;
+      if (blockLength == blockSize) {
+        submitBlock(false);
+      }
+    }
+  }
+
+  /**
+   * Flushes compressed blocks that were already written to the underlying stream, but does not cut the current block
+   * short or wait for pending blocks to finish compressing.
+   * <p>
+   * Writers like Jackson's {@code SequenceWriter} flush after every value, so ending a block on each flush would
+   * compress every value on its own and serialize compression. All remaining input gets written out in {@link #close()}.
+   */
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private void submitBlock(boolean last) throws IOException {
+    byte[] input = block;
+    int length = blockLength;
+    byte[] dict = dictionary;
+    crc.update(input, 0, length);
+    totalLength += length;
+    dictionary = nextDictionary(dict, input, length);
+    pending.addLast(executor.submit(() -> compress(input, length, dict, last)));
+    block = new byte[blockSize];
+    blockLength = 0;
+
+    while (!pending.isEmpty() && (pending.size() > maxPending || pending.peekFirst().isDone())) {
+      writeNextBlock();
+    }
+  }
+
+  /** Returns the last 32kb of input after appending {@code length} bytes of {@code input} to {@code dict}. */
+  private static byte[] nextDictionary(byte[] dict, byte[] input, int length) {
+    if (length >= DICTIONARY_SIZE || dict == null) {
+      return Arrays.copyOfRange(input, Math.max(0, length - DICTIONARY_SIZE), length);
+    }
+    int fromDict = Math.min(dict.length, DICTIONARY_SIZE - length);
+    byte[] result = Arrays.copyOfRange(dict, dict.length - fromDict, dict.length + length);
+    System.arraycopy(input, 0, result, fromDict, length);
+    return result;
+  }
+
+  private byte[] compress(byte[] input, int length, byte[] dict, boolean last) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      if (dict != null && dict.length > 0) {
+        deflater.setDictionary(dict);
+      }
+      deflater.setInput(input, 0, length);
+      if (last) {
+        deflater.finish();
+      }
+      byte[] result = new byte[Math.max(64, length / 2)];
+      int position = 0;
+      while (true) {
+        if (position == result.length) {
+          result = Arrays.copyOf(result, result.length * 2);
+        }
+        position += deflater.deflate(result, position, result.length - position,
+          last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+        // a sync flush is complete once it leaves space in the output buffer
+        if (last ? deflater.finished() : position < result.length) {
+          break;
+        }
+      }
+      return Arrays.copyOf(result, position);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeNextBlock() throws IOException {
+    try {
+      out.write(pending.removeFirst().get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      submitBlock(true);
+      while (!pending.isEmpty()) {
+        writeNextBlock();
+      }
+      byte[] trailer = new byte[Gzip.TRAILER_LENGTH];
+      Gzip.putTrailer(trailer, 0, crc.getValue(), totalLength);
+      out.write(trailer);
+    } finally {
+      pending.forEach(future -> future.cancel(true));
+      out.close();
+    }
+  }
+}
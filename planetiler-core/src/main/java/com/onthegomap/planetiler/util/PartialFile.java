@@ -0,0 +1,36 @@
+package com.onthegomap.planetiler.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file that is still being written from start to end by another thread (i.e. a download in progress), which readers
+ * can start consuming sequentially before the whole file is available.
+ */
+public interface PartialFile {
+
+  /** Returns the size of the file once it is complete. */
+  long size();
+
+  /**
+   * Opens a read-only channel to the file that stays valid after the file is complete, even if it gets moved into
+   * place.
+   *
+   * @throws IOException if the file could not be opened or writing it failed
+   */
+  FileChannel openChannel() throws IOException;
+
+  /**
+   * Blocks until the first {@code bytes} bytes of the file are available to read.
+   *
+   * @throws IOException if writing the file failed before those bytes were available
+   */
+  void awaitBytes(long bytes) throws IOException;
+
+  /**
+   * Blocks until the whole file has been written and verified.
+   *
+   * @throws IOException if writing the file failed
+   */
+  void awaitComplete() throws IOException;
+}
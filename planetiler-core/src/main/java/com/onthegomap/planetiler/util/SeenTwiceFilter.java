@@ -0,0 +1,41 @@
+package com.onthegomap.planetiler.util;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A fixed-size table of hashes that dictionaries use to only admit a value the second time they see it, so that unique
+ * values like names don't fill up the dictionary before common values get a chance.
+ * <p>
+ * Each hash maps to one slot that remembers the last hash seen there, so a collision only causes a value to be admitted
+ * one sighting later. Threads race on slots without locking, which can also only delay admitting a value.
+ */
+@ThreadSafe
+public class SeenTwiceFilter implements MemoryEstimator.HasEstimate {
+
+  private static final int MAX_SLOTS = 1 << 20;
+  private final int[] seenOnce;
+
+  /** Returns a filter with enough slots for a dictionary of up to {@code maxValues} values. */
+  public SeenTwiceFilter(int maxValues) {
+    seenOnce = new int[maxValues <= 0 ? 0 :
+      Math.min(MAX_SLOTS, Integer.highestOneBit(Math.max(1, maxValues - 1)) << 1)];
+  }
+
+  /** Returns {@code true} if a value with {@code hash} was seen before, otherwise records it and returns false. */
+  public boolean seenBefore(int hash) {
+    if (seenOnce.length == 0) {
+      return false;
+    }
+    int slot = (hash ^ (hash >>> 16)) & (seenOnce.length - 1);
+    if (seenOnce[slot] == hash) {
+      return true;
+    }
+    seenOnce[slot] = hash;
+    return false;
+  }
+
+  @Override
+  public long estimateMemoryUsageBytes() {
+    return MemoryEstimator.estimateIntArraySize(seenOnce.length);
+  }
+}
@@ -0,0 +1,251 @@
+package com.onthegomap.planetiler.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.onthegomap.planetiler.archive.ReadableTileArchive;
+import com.onthegomap.planetiler.archive.TileArchiveConfig;
+import com.onthegomap.planetiler.archive.TileArchives;
+import com.onthegomap.planetiler.archive.TileCompression;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.stats.Stats;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves {@code /{z}/{x}/{y}} tile requests from an archive over HTTP, to check how a build performs right after
+ * generating it.
+ * <p>
+ * Each request runs on its own virtual thread and recently-requested tiles are kept in an in-memory
+ * {@link HotTileCache}, pre-filled with the most popular tiles from the {@link TileWeights} file when it exists.
+ * Request latency by zoom and cache hit/miss gets reported through {@link Stats#servedTile}.
+ * <p>
+ * To run:
+ *
+ * <pre>{@code
+ * java -jar planetiler.jar serve [--port=8080] [--cache_size_mb=512] {path/to/archive}
+ * }</pre>
+ */
+public class TileServer implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TileServer.class);
+  private static final Pattern TILE_PATH = Pattern.compile("^/(\\d{1,2})/(\\d{1,5})/(\\d{1,5})(\\.[a-z]+)?$");
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final ReadableTileArchive archive;
+  private final HotTileCache cache;
+  private final Stats stats;
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final String contentType;
+  private final boolean gzipped;
+  private final byte[] metadataJson;
+
+  /**
+   * Starts serving tiles from {@code archive} on {@code address}.
+   *
+   * @param archive    archive to read tiles from, which must support concurrent reads
+   * @param weights    tile traffic to pre-fill the cache with, heaviest tiles first
+   * @param cacheBytes maximum total size of tiles to keep in memory
+   * @param address    address to listen on, use port 0 to pick a free port
+   * @param stats      where to report request latencies
+   * @throws IOException if the server cannot listen on {@code address}
+   */
+  public TileServer(ReadableTileArchive archive, TileWeights weights, long cacheBytes, InetSocketAddress address,
+    Stats stats) throws IOException {
+    this.archive = archive;
+    this.stats = stats;
+    this.cache = new HotTileCache(cacheBytes);
+    var metadata = archive.metadata();
+    this.gzipped = metadata != null && metadata.tileCompression() == TileCompression.GZIP;
+    String format = metadata == null ? null : metadata.format();
+    this.contentType = switch (format == null ? "pbf" : format) {
+      case "png" -> "image/png";
+      case "jpg", "jpeg" -> "image/jpeg";
+      case "webp" -> "image/webp";
+      default -> "application/vnd.mapbox-vector-tile";
+    };
+    this.metadataJson = MAPPER.writeValueAsBytes(metadata == null ? Map.of() : metadata.toMap());
+    prefill(weights);
+    server = HttpServer.create(address, 0);
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+    LOGGER.info("Serving tiles from http://{}:{}/{z}/{x}/{y}", address.getHostString(), port());
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 1) {
+      System.err.println("Usage: serve [options] {path/to/archive}");
+      System.exit(1);
+    }
+    // last arg is the path to the archive
+    var arguments = Arguments.fromArgsOrConfigFile(Arrays.copyOf(args, args.length - 1));
+    var config = PlanetilerConfig.from(arguments);
+    var stats = arguments.getStats();
+    String host = arguments.getString("bind", "address to listen on", "127.0.0.1");
+    int port = arguments.getInteger("port", "port to listen on", 8080);
+    long cacheBytes = arguments.getLong("cache_size_mb", "size of in-memory hot tile cache in MB", 512) << 20;
+    var weights = Files.exists(config.tileWeights()) ? TileWeights.readFromFile(config.tileWeights()) :
+      new TileWeights();
+    var input = TileArchiveConfig.from(args[args.length - 1]);
+    try (
+      var archive = TileArchives.newReader(input, config);
+      var server = new TileServer(archive, weights, cacheBytes, new InetSocketAddress(host, port), stats)
+    ) {
+      server.awaitShutdown();
+    }
+  }
+
+  /** Blocks until the JVM receives a shutdown signal, for example when the user presses Ctrl-C. */
+  public void awaitShutdown() throws InterruptedException {
+    CountDownLatch shutdown = new CountDownLatch(1);
+    Runtime.getRuntime().addShutdownHook(new Thread(shutdown::countDown));
+    shutdown.await();
+  }
+
+  /** Returns the port this server is listening on. */
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  HotTileCache cache() {
+    return cache;
+  }
+
+  private void prefill(TileWeights weights) {
+    // fill half the cache with the most popular tiles, leave the rest for whatever gets requested
+    long budget = cache.maxBytes / 2;
+    int loaded = 0;
+    for (TileCoord coord : weights.heaviestTiles()) {
+      if (cache.bytes() >= budget) {
+        break;
+      }
+      byte[] tile = archive.getTile(coord);
+      if (tile != null) {
+        cache.put(coord, tile);
+        loaded++;
+      }
+    }
+    if (loaded > 0) {
+      LOGGER.info("Pre-loaded {} popular tiles into cache", loaded);
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String path = exchange.getRequestURI().getPath();
+      var matcher = TILE_PATH.matcher(path);
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+      } else if ("/metadata.json".equals(path)) {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        send(exchange, 200, metadataJson);
+      } else if (!matcher.matches()) {
+        exchange.sendResponseHeaders(404, -1);
+      } else {
+        int z = Integer.parseInt(matcher.group(1));
+        int x = Integer.parseInt(matcher.group(2));
+        int y = Integer.parseInt(matcher.group(3));
+        if (z > PlanetilerConfig.MAX_MAXZOOM || x >= (1 << z) || y >= (1 << z)) {
+          exchange.sendResponseHeaders(400, -1);
+        } else {
+          serveTile(exchange, TileCoord.ofXYZ(x, y, z));
+        }
+      }
+    } catch (RuntimeException e) {
+      LOGGER.warn("Error handling {}", exchange.getRequestURI(), e);
+      exchange.sendResponseHeaders(500, -1);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void serveTile(HttpExchange exchange, TileCoord coord) throws IOException {
+    long start = System.nanoTime();
+    byte[] tile = cache.get(coord);
+    boolean hit = tile != null;
+    if (!hit) {
+      tile = archive.getTile(coord);
+      if (tile != null) {
+        cache.put(coord, tile);
+      }
+    }
+    stats.servedTile(coord.z(), hit, System.nanoTime() - start);
+    if (tile == null) {
+      exchange.sendResponseHeaders(204, -1);
+    } else {
+      var headers = exchange.getResponseHeaders();
+      headers.add("Content-Type", contentType);
+      if (gzipped) {
+        headers.add("Content-Encoding", "gzip");
+      }
+      send(exchange, 200, tile);
+    }
+  }
+
+  private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.sendResponseHeaders(status, body.length);
+    try (var os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.close();
+  }
+
+  /** An LRU cache of encoded tiles limited by their total size in bytes. */
+  @ThreadSafe
+  static class HotTileCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<TileCoord, byte[]> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    HotTileCache(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    synchronized byte[] get(TileCoord coord) {
+      return tiles.get(coord);
+    }
+
+    synchronized void put(TileCoord coord, byte[] tile) {
+      if (tile.length > maxBytes) {
+        return;
+      }
+      byte[] old = tiles.put(coord, tile);
+      bytes += tile.length - (old == null ? 0 : old.length);
+      var iterator = tiles.values().iterator();
+      while (bytes > maxBytes && iterator.hasNext()) {
+        bytes -= iterator.next().length;
+        iterator.remove();
+      }
+    }
+
+    synchronized long bytes() {
+      return bytes;
+    }
+
+    synchronized boolean contains(TileCoord coord) {
+      return tiles.containsKey(coord);
+    }
+  }
+}
@@ -19,6 +19,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -49,6 +50,15 @@ public class TileWeights {
     return weights.getOrDefault(coord, 0L);
   }
 
+  /** Returns all tiles with a weight, heaviest first. */
+  public List<TileCoord> heaviestTiles() {
+    return weights.entrySet().stream()
+      .sorted(Map.Entry.<TileCoord, Long>comparingByValue().reversed()
+        .thenComparingInt(e -> e.getKey().encoded()))
+      .map(Map.Entry::getKey)
+      .toList();
+  }
+
   /** Returns the sum of all tile weights at a specific zoom */
   public long getZoomWeight(int zoom) {
     return byZoom.getOrDefault(zoom, 0L);
@@ -105,4 +105,9 @@ public class VarInt {
       byteArrayList.add((byte) (bits | 0x80));
     }
   }
+
+  /** Returns the number of bytes that {@link #putVarLong(long, ByteArrayList)} uses to encode {@code v}. */
+  public static int varLongSize(long v) {
+    return v == 0 ? 1 : (63 - Long.numberOfLeadingZeros(v)) / 7 + 1;
+  }
 }
@@ -9,6 +9,7 @@ import com.carrotsearch.hppc.LongHashSet;
 import com.carrotsearch.hppc.LongObjectMap;
 import com.carrotsearch.hppc.LongSet;
 import com.carrotsearch.hppc.cursors.LongObjectCursor;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -26,6 +27,7 @@ import com.onthegomap.planetiler.stats.Timer;
 import com.onthegomap.planetiler.worker.WorkerPipeline;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
@@ -37,10 +39,15 @@ import java.net.http.HttpResponse.BodyHandlers;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -55,7 +62,7 @@ import org.slf4j.LoggerFactory;
  * A utility to download name translations from wikidata for all OSM elements with a
  * <a href="https://wiki.openstreetmap.org/wiki/Key:wikidata">wikidata tag</a>.
  */
-public class Wikidata {
+public class Wikidata implements Closeable {
 
   private static final ObjectMapper objectMapper = new ObjectMapper();
   private static final Logger LOGGER = LoggerFactory.getLogger(Wikidata.class);
@@ -68,19 +75,46 @@ public class Wikidata {
   private final Counter.Readable wikidatas = Counter.newMultiThreadCounter();
   private final Counter.Readable batches = Counter.newMultiThreadCounter();
   private final LongSet visited = new LongHashSet();
-  private final List<Long> qidsToFetch;
+  private List<Long> qidsToFetch;
   private final Writer writer;
+  private final Writer checkpoint;
   private final Client client;
   private final int batchSize;
   private final Profile profile;
   private final PlanetilerConfig config;
+  private final ExecutorService requests;
+  private final Semaphore inFlight;
+  private final int concurrency;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
 
   Wikidata(Writer writer, Client client, int batchSize, Profile profile, PlanetilerConfig config) {
+    this(writer, null, client, batchSize, 1, profile, config);
+  }
+
+  /**
+   * Creates a new fetcher.
+   *
+   * @param writer      where to write translations
+   * @param checkpoint  where to record fetched QIDs that have no translations, or {@code null} to not record them
+   * @param client      HTTP client to send requests with
+   * @param batchSize   number of QIDs to request at once
+   * @param concurrency number of batches to request concurrently, when {@code 1} requests block the calling thread
+   * @param profile     profile that decides which elements need translations
+   * @param config      planetiler config
+   */
+  Wikidata(Writer writer, Writer checkpoint, Client client, int batchSize, int concurrency, Profile profile,
+    PlanetilerConfig config) {
     this.writer = writer;
+    this.checkpoint = checkpoint;
     this.client = client;
     this.batchSize = batchSize;
+    this.concurrency = concurrency;
     this.profile = profile;
     this.config = config;
+    this.requests = concurrency > 1 ?
+      Executors.newFixedThreadPool(concurrency, Thread.ofPlatform().name("wikidata-fetch-", 1).daemon().factory()) :
+      null;
+    this.inFlight = new Semaphore(concurrency);
     qidsToFetch = new ArrayList<>(batchSize);
   }
 
@@ -115,14 +149,19 @@ public class Wikidata {
     int processThreads = Math.max(1, config.threads() - 1);
     LOGGER.info("Starting with " + processThreads + " process threads");
 
-    WikidataTranslations oldMappings = load(outfile);
+    WikidataTranslations oldMappings = loadJson(outfile);
+    Path checkpointPath = checkpointPath(outfile);
+    LongSet completed = loadCheckpoint(checkpointPath);
+    HttpClient client = HttpClient.newBuilder().connectTimeout(config.httpTimeout()).build();
     try (
       Writer writer = Files.newBufferedWriter(outfile);
-      OsmBlockSource osmSource = infile.get()
+      Writer checkpoint = Files.newBufferedWriter(checkpointPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      OsmBlockSource osmSource = infile.get();
+      Wikidata fetcher = new Wikidata(writer, checkpoint, Client.wrap(client), 5_000, config.wikidataFetchThreads(),
+        profile, config)
     ) {
-      HttpClient client = HttpClient.newBuilder().connectTimeout(config.httpTimeout()).build();
-      Wikidata fetcher = new Wikidata(writer, Client.wrap(client), 5_000, profile, config);
       fetcher.loadExisting(oldMappings);
+      fetcher.skip(completed);
 
       String pbfParsePrefix = "pbfwikidata";
       var pipeline = WorkerPipeline.start("wikidata", stats)
@@ -155,14 +194,54 @@ public class Wikidata {
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
+    // only needed to resume a failed run
+    FileUtils.delete(checkpointPath);
 
     timer.stop();
   }
 
   /**
-   * Returns translations parsed from {@code path} that was written by a previous run of the downloader.
+   * Returns translations from {@code path} that was written by a previous run of the downloader.
+   * <p>
+   * The first time this is called for a file, it gets converted to a compact binary cache alongside it that later
+   * calls memory-map and decode lazily, until the downloader changes the file again. Callers should close the result
+   * when they are done with it to unmap the cache.
    */
   public static WikidataTranslations load(Path path) {
+    Timer timer = Timer.start();
+    Path cachePath = WikidataBinaryCache.pathFor(path);
+    if (Files.exists(cachePath) && isUpToDate(cachePath, path)) {
+      try {
+        var cache = WikidataBinaryCache.open(cachePath);
+        LOGGER.info("loaded " + cache.size() + " mappings from " + cachePath.toAbsolutePath() + " in " + timer.stop());
+        return new WikidataTranslations(cache);
+      } catch (IOException e) {
+        LOGGER.info("error loading " + cachePath.toAbsolutePath() + ", falling back to " + path + ": " + e);
+      }
+    }
+    WikidataTranslations result = loadJson(path);
+    if (Files.exists(path)) {
+      try {
+        WikidataBinaryCache.write(result.getAll(), cachePath);
+        LOGGER.info("wrote binary cache of wikidata translations to " + cachePath.toAbsolutePath());
+      } catch (IOException e) {
+        LOGGER.warn("error writing " + cachePath.toAbsolutePath() + ": " + e);
+      }
+    }
+    return result;
+  }
+
+  private static boolean isUpToDate(Path cachePath, Path jsonPath) {
+    try {
+      return !Files.exists(jsonPath) ||
+        Files.getLastModifiedTime(cachePath).compareTo(Files.getLastModifiedTime(jsonPath)) >= 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /** Returns translations parsed from the JSON file at {@code path}, ignoring any binary cache. */
+  private static WikidataTranslations loadJson(Path path) {
     Timer timer = Timer.start();
     if (!Files.exists(path)) {
       LOGGER.info("no wikidata translations found, run with --fetch-wikidata to download");
@@ -183,15 +262,28 @@ public class Wikidata {
   /**
    * Returns translations parsed from {@code reader} where each line is a JSON array where first element is the ID and
    * second element is a map from language to translation.
+   * <p>
+   * Skips the last line if it is malformed, since it may have been only partially written when a previous run crashed.
    */
   static WikidataTranslations load(BufferedReader reader) throws IOException {
     WikidataTranslations mappings = new WikidataTranslations();
-    String line;
-    while ((line = reader.readLine()) != null) {
-      JsonNode node = objectMapper.readTree(line);
+    String line = reader.readLine();
+    while (line != null) {
+      String next = reader.readLine();
+      JsonNode node;
+      try {
+        node = objectMapper.readTree(line);
+      } catch (JsonProcessingException e) {
+        if (next != null) {
+          throw e;
+        }
+        LOGGER.warn("ignoring partially written last line of wikidata translations: " + e);
+        break;
+      }
       long id = Long.parseLong(node.get(0).asText());
       ObjectNode theseMappings = (ObjectNode) node.get(1);
       theseMappings.fields().forEachRemaining(entry -> mappings.put(id, entry.getKey(), entry.getValue().asText()));
+      line = next;
     }
     return mappings;
   }
@@ -249,21 +341,19 @@ public class Wikidata {
     }
   }
 
+  /** Requests any remaining QIDs, then blocks until all requests in progress finish. */
   void flush() {
-    try {
-      Timer timer = Timer.start();
-      LongObjectMap<Map<String, String>> results = queryWikidata(qidsToFetch);
-      batches.inc();
-      LOGGER.info("Fetched batch {} ({} qids) {}", batches.get(), qidsToFetch.size(), timer.stop());
-      writeTranslations(results);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throwFatalException(e);
-    } catch (IOException e) {
-      throwFatalException(e);
+    submitBatch();
+    if (requests != null) {
+      try {
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throwFatalException(e);
+      }
     }
-    wikidatas.incBy(qidsToFetch.size());
-    qidsToFetch.clear();
+    throwIfFailed();
   }
 
   void fetch(long id) {
@@ -272,8 +362,69 @@ public class Wikidata {
       qidsToFetch.add(id);
     }
     if (qidsToFetch.size() >= batchSize) {
-      flush();
+      submitBatch();
+    }
+  }
+
+  /** Marks {@code qids} as already fetched so they will not be requested again. */
+  void skip(LongSet qids) {
+    visited.addAll(qids);
+  }
+
+  private void throwIfFailed() {
+    Throwable e = failure.get();
+    if (e != null) {
+      throwFatalException(e);
+    }
+  }
+
+  /**
+   * Hands the current batch off to a request thread, blocking while {@code concurrency} requests are already in
+   * progress, or sends it on this thread when {@code concurrency} is 1.
+   */
+  private void submitBatch() {
+    throwIfFailed();
+    if (qidsToFetch.isEmpty()) {
+      return;
+    }
+    List<Long> batch = qidsToFetch;
+    qidsToFetch = new ArrayList<>(batchSize);
+    if (requests == null) {
+      fetchBatch(batch);
+      return;
+    }
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throwFatalException(e);
+    }
+    requests.execute(() -> {
+      try {
+        fetchBatch(batch);
+      } catch (Throwable e) { // NOSONAR - rethrown from the thread that submits the next batch
+        failure.compareAndSet(null, e);
+      } finally {
+        inFlight.release();
+      }
+    });
+  }
+
+  private void fetchBatch(List<Long> batch) {
+    try {
+      Timer timer = Timer.start();
+      LongObjectMap<Map<String, String>> results = queryWikidata(batch);
+      batches.inc();
+      LOGGER.info("Fetched batch {} ({} qids) {}", batches.get(), batch.size(), timer.stop());
+      writeTranslations(results);
+      writeCheckpoint(batch, results);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throwFatalException(e);
+    } catch (IOException e) {
+      throwFatalException(e);
     }
+    wikidatas.incBy(batch.size());
   }
 
   /**
@@ -339,8 +490,60 @@ public class Wikidata {
     }
   }
 
+  /** Returns the path of the file that records QIDs without translations while fetching into {@code outfile}. */
+  static Path checkpointPath(Path outfile) {
+    return outfile.resolveSibling(outfile.getFileName() + ".checkpoint");
+  }
+
+  /** Returns the QIDs without translations that a previous failed run recorded as fetched in {@code path}. */
+  static LongSet loadCheckpoint(Path path) {
+    LongSet result = new LongHashSet();
+    if (Files.exists(path)) {
+      try (BufferedReader reader = Files.newBufferedReader(path)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          // ignore the last line if it was only partially written
+          if (line.endsWith(";")) {
+            for (String qid : line.substring(0, line.length() - 1).split(",")) {
+              result.add(Long.parseLong(qid));
+            }
+          }
+        }
+        LOGGER.info("skipping " + result.size() + " qids without translations requested by a previous run");
+      } catch (IOException | NumberFormatException e) {
+        LOGGER.warn("error reading " + path.toAbsolutePath() + ", starting from scratch: " + e);
+        result.clear();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Records the QIDs in {@code batch} that have no translations in {@code results}.
+   * <p>
+   * QIDs with translations are not recorded since a resumed run skips them only if their translations load back from
+   * the output file, which might have lost its last writes if the previous run crashed.
+   */
+  private synchronized void writeCheckpoint(List<Long> batch, LongObjectMap<Map<String, String>> results)
+    throws IOException {
+    List<Long> withoutTranslations = batch.stream().filter(id -> !results.containsKey(id)).toList();
+    if (checkpoint != null && !withoutTranslations.isEmpty()) {
+      checkpoint.write(withoutTranslations.stream().map(Object::toString).collect(Collectors.joining(",")));
+      checkpoint.write(";");
+      checkpoint.write(System.lineSeparator());
+      checkpoint.flush();
+    }
+  }
+
+  @Override
+  public void close() {
+    if (requests != null) {
+      requests.shutdownNow();
+    }
+  }
+
   /** Flushes a batch of translations to disk. */
-  private void writeTranslations(LongObjectMap<Map<String, String>> results) throws IOException {
+  private synchronized void writeTranslations(LongObjectMap<Map<String, String>> results) throws IOException {
     for (LongObjectCursor<Map<String, String>> cursor : results) {
       writer.write(objectMapper.writeValueAsString(List.of(
         Long.toString(cursor.key),
@@ -380,20 +583,48 @@ public class Wikidata {
     InputStream send(HttpRequest req) throws IOException, InterruptedException;
   }
 
-  public static class WikidataTranslations implements Translations.TranslationProvider {
+  /**
+   * Name translations downloaded from wikidata, optionally backed by a memory-mapped binary cache that gets unmapped
+   * when this is closed.
+   */
+  public static class WikidataTranslations implements Translations.TranslationProvider, Closeable {
 
     private final LongObjectMap<Map<String, String>> data = Hppc.newLongObjectHashMap();
+    private final WikidataBinaryCache cache;
 
-    public WikidataTranslations() {}
+    public WikidataTranslations() {
+      this(null);
+    }
+
+    WikidataTranslations(WikidataBinaryCache cache) {
+      this.cache = cache;
+    }
 
     /** Returns a map from language code to translated name for {@code qid}. */
     public Map<String, String> get(long qid) {
-      return data.get(qid);
+      Map<String, String> result = data.get(qid);
+      if (result == null && cache != null) {
+        result = cache.get(qid);
+      }
+      return result;
     }
 
-    /** Returns all maps from language code to translated name for {@code qid}. */
+    /**
+     * Returns all maps from language code to translated name for {@code qid}.
+     * <p>
+     * When backed by a binary cache, this decodes every translation onto the heap.
+     */
     public LongObjectMap<Map<String, String>> getAll() {
-      return data;
+      if (cache == null) {
+        return data;
+      }
+      LongObjectMap<Map<String, String>> result = Hppc.newLongObjectHashMap(cache.size() + data.size());
+      for (int i = 0; i < cache.size(); i++) {
+        long qid = cache.qidAt(i);
+        result.put(qid, cache.get(qid));
+      }
+      result.putAll(data);
+      return result;
     }
 
     /** Stores a name translation for {@code qid} in {@code lang}. */
@@ -401,6 +632,10 @@ public class Wikidata {
       Map<String, String> map = data.get(qid);
       if (map == null) {
         data.put(qid, map = new TreeMap<>());
+        Map<String, String> cached = cache == null ? null : cache.get(qid);
+        if (cached != null) {
+          map.putAll(cached);
+        }
       }
       map.put(lang, value);
     }
@@ -413,5 +648,13 @@ public class Wikidata {
       }
       return null;
     }
+
+    /** Unmaps the binary cache backing these translations, after which they can no longer be read. */
+    @Override
+    public void close() throws IOException {
+      if (cache != null) {
+        cache.close();
+      }
+    }
   }
 }
@@ -0,0 +1,252 @@
+package com.onthegomap.planetiler.util;
+
+import com.carrotsearch.hppc.ByteArrayList;
+import com.carrotsearch.hppc.LongObjectMap;
+import com.carrotsearch.hppc.ObjectIntMap;
+import com.onthegomap.planetiler.collection.Hppc;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A compact binary copy of wikidata name translations that gets memory-mapped and decoded lazily one QID at a time,
+ * so loading translations is nearly instant and they do not take up space on the heap.
+ * <p>
+ * File layout:
+ * <ul>
+ * <li>header: magic number, version, number of QIDs, number of languages, offset of QID index and offset of language
+ * dictionary</li>
+ * <li>one record per QID: number of translations (varint), then for each: language ID (varint), length (varint) and
+ * UTF-8 bytes of the name. Records never cross a {@link #SEGMENT_BYTES} boundary so each one can be read from a single
+ * mapped segment.</li>
+ * <li>sorted QIDs as longs, followed by the offset of each QID's record as longs</li>
+ * <li>language codes as length-prefixed UTF-8 strings</li>
+ * </ul>
+ * <p>
+ * {@link #close()} unmaps the file, so callers must stop reading from the cache before closing it.
+ */
+@ThreadSafe
+final class WikidataBinaryCache implements Closeable {
+
+  private static final int MAGIC = 0x50544944; // "PTID"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 32;
+  static final long SEGMENT_BYTES = 1L << 30;
+
+  private final MappedByteBuffer[] segments;
+  private final int numQids;
+  private final long indexOffset;
+  private final String[] langs;
+  private volatile boolean closed = false;
+
+  private WikidataBinaryCache(MappedByteBuffer[] segments, int numQids, long indexOffset, String[] langs) {
+    this.segments = segments;
+    this.numQids = numQids;
+    this.indexOffset = indexOffset;
+    this.langs = langs;
+  }
+
+  /** Returns the path of the binary cache for wikidata translations JSON file at {@code jsonPath}. */
+  static Path pathFor(Path jsonPath) {
+    return jsonPath.resolveSibling(jsonPath.getFileName() + ".bin");
+  }
+
+  /**
+   * Writes {@code translations} to a binary cache at {@code path}.
+   * <p>
+   * Writes to a temporary file first then moves it into place so readers never see a partially-written file.
+   */
+  static void write(LongObjectMap<Map<String, String>> translations, Path path) throws IOException {
+    long[] qids = new long[translations.size()];
+    int n = 0;
+    for (var cursor : translations.keys()) {
+      qids[n++] = cursor.value;
+    }
+    Arrays.sort(qids);
+    long[] offsets = new long[qids.length];
+    ObjectIntMap<String> langIds = Hppc.newObjectIntHashMap();
+    List<String> langs = new ArrayList<>();
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    ByteArrayList record = new ByteArrayList();
+    AtomicLong position = new AtomicLong(0);
+    try (
+      var channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+      var out = new DataOutputStream(new CountingOutputStream(
+        new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16),
+        position::addAndGet
+      ))
+    ) {
+      out.write(new byte[HEADER_BYTES]);
+      for (int i = 0; i < qids.length; i++) {
+        Map<String, String> names = translations.get(qids[i]);
+        record.elementsCount = 0;
+        VarInt.putVarLong(names.size(), record);
+        for (var entry : names.entrySet()) {
+          String lang = entry.getKey();
+          int langId = langIds.getOrDefault(lang, -1);
+          if (langId < 0) {
+            langIds.put(lang, langId = langs.size());
+            langs.add(lang);
+          }
+          byte[] bytes = entry.getValue().getBytes(StandardCharsets.UTF_8);
+          VarInt.putVarLong(langId, record);
+          VarInt.putVarLong(bytes.length, record);
+          record.add(bytes);
+        }
+        long segmentEnd = (position.get() / SEGMENT_BYTES + 1) * SEGMENT_BYTES;
+        if (position.get() + record.size() > segmentEnd) {
+          out.write(new byte[(int) (segmentEnd - position.get())]);
+        }
+        offsets[i] = position.get();
+        out.write(record.buffer, 0, record.size());
+      }
+      // align so longs in the index never cross a segment boundary
+      out.write(new byte[(int) ((8 - position.get() % 8) % 8)]);
+      long indexOffset = position.get();
+      for (long qid : qids) {
+        out.writeLong(qid);
+      }
+      for (long offset : offsets) {
+        out.writeLong(offset);
+      }
+      long langOffset = position.get();
+      for (String lang : langs) {
+        byte[] bytes = lang.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+      }
+      out.flush();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .putInt(qids.length)
+        .putInt(langs.size())
+        .putLong(indexOffset)
+        .putLong(langOffset)
+        .flip();
+      channel.write(header, 0);
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Memory-maps the binary cache at {@code path}.
+   *
+   * @throws IOException if the file cannot be read or was not written by this version of the cache
+   */
+  static WikidataBinaryCache open(Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      if (size < HEADER_BYTES || channel.read(header, 0) != HEADER_BYTES) {
+        throw new IOException("Truncated wikidata cache " + path);
+      }
+      header.flip();
+      int magic = header.getInt();
+      int version = header.getInt();
+      if (magic != MAGIC || version != VERSION) {
+        throw new IOException("Unsupported wikidata cache " + path + " version=" + version);
+      }
+      int numQids = header.getInt();
+      int numLangs = header.getInt();
+      long indexOffset = header.getLong();
+      long langOffset = header.getLong();
+      var segments = ByteBufferUtil.mapFile(channel, size, SEGMENT_BYTES, false);
+      ByteBuffer langBuffer = ByteBuffer.allocate((int) (size - langOffset));
+      while (langBuffer.hasRemaining() && channel.read(langBuffer, langOffset + langBuffer.position()) >= 0) {
+        // keep reading until the buffer is full
+      }
+      langBuffer.flip();
+      String[] langs = new String[numLangs];
+      for (int i = 0; i < numLangs; i++) {
+        byte[] bytes = new byte[langBuffer.getShort() & 0xffff];
+        langBuffer.get(bytes);
+        langs[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      return new WikidataBinaryCache(segments, numQids, indexOffset, langs);
+    }
+  }
+
+  private long getLong(long offset) {
+    checkOpen();
+    return segments[(int) (offset / SEGMENT_BYTES)].getLong((int) (offset % SEGMENT_BYTES));
+  }
+
+  private ByteBuffer bufferAt(long offset) {
+    checkOpen();
+    return segments[(int) (offset / SEGMENT_BYTES)].duplicate().position((int) (offset % SEGMENT_BYTES));
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("wikidata cache is closed");
+    }
+  }
+
+  /** Returns the number of QIDs in this cache. */
+  int size() {
+    return numQids;
+  }
+
+  /** Returns the QID stored at {@code index} in sorted order. */
+  long qidAt(int index) {
+    return getLong(indexOffset + index * 8L);
+  }
+
+  /** Returns a map from language code to translated name for {@code qid}, or {@code null} if it is missing. */
+  Map<String, String> get(long qid) {
+    int lo = 0, hi = numQids - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      long value = qidAt(mid);
+      if (value < qid) {
+        lo = mid + 1;
+      } else if (value > qid) {
+        hi = mid - 1;
+      } else {
+        return decode(getLong(indexOffset + (numQids + (long) mid) * 8L));
+      }
+    }
+    return null;
+  }
+
+  private Map<String, String> decode(long offset) {
+    ByteBuffer buffer = bufferAt(offset);
+    int count = (int) VarInt.getVarLong(buffer);
+    Map<String, String> result = new TreeMap<>();
+    for (int i = 0; i < count; i++) {
+      String lang = langs[(int) VarInt.getVarLong(buffer)];
+      byte[] bytes = new byte[(int) VarInt.getVarLong(buffer)];
+      buffer.get(bytes);
+      result.put(lang, new String(bytes, StandardCharsets.UTF_8));
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      ByteBufferUtil.free(segments);
+      Arrays.fill(segments, null);
+    }
+  }
+}
@@ -24,6 +24,7 @@ import static com.onthegomap.planetiler.geo.GeoUtils.JTS_FACTORY;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.DynamicTest.dynamicTest;
 
@@ -114,6 +115,27 @@ class VectorTileTest {
     return new VectorTile.Feature(layer, 1, VectorTile.encodeGeometry(geom), attrs);
   }
 
+  @Test
+  void testEncodeLineStringsFromCoordinateSequences() {
+    var line1 = newLineString(1, 2, 3, 4, 5, 6);
+    var line2 = newLineString(10, 20, 30, 40);
+    var point = newPoint(7, 8);
+    for (int scale : new int[]{0, 2}) {
+      assertEquals(
+        VectorTile.encodeGeometry(line1, scale),
+        VectorTile.encodeLineStrings(List.of(List.of(line1.getCoordinateSequence())), scale)
+      );
+      assertEquals(
+        VectorTile.encodeGeometry(newMultiLineString(line1, line2), scale),
+        VectorTile.encodeLineStrings(List.of(
+          List.of(line1.getCoordinateSequence()),
+          List.of(point.getCoordinateSequence(), line2.getCoordinateSequence())
+        ), scale)
+      );
+    }
+    assertNull(VectorTile.encodeLineStrings(List.of(List.of(point.getCoordinateSequence())), 0));
+  }
+
   @Test
   void testNullAttributeValue() {
     VectorTile vtm = new VectorTile();
@@ -2,10 +2,12 @@ package com.onthegomap.planetiler.archive;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -44,6 +46,17 @@ class TileArchiveConfigTest {
       TileArchiveConfig.from("file:///output.mbtiles?format=pmtiles").format());
   }
 
+  @Test
+  void testRemotePmtiles() {
+    var config = TileArchiveConfig.from("https://example.com/tiles/output.pmtiles?http_cache_size_mb=10");
+    assertEquals(TileArchiveConfig.Format.PMTILES, config.format());
+    assertEquals(TileArchiveConfig.Scheme.HTTPS, config.scheme());
+    assertEquals(Map.of("http_cache_size_mb", "10"), config.options());
+    assertEquals(URI.create("https://example.com/tiles/output.pmtiles"), config.getRemoteUri());
+    assertNull(config.getLocalPath());
+    assertFalse(config.exists());
+  }
+
   @ParameterizedTest
   @EnumSource(TileArchiveConfig.Format.class)
   void testByFormatParam(TileArchiveConfig.Format format) {
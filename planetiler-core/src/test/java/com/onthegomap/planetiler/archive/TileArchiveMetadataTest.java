@@ -171,6 +171,44 @@ class TileArchiveMetadataTest {
     assertThrows(JsonMappingException.class, () -> jsonMapperStrict.readValue(s3, TileArchiveMetadata.class));
   }
 
+  @Test
+  void testMergedWith() {
+    var previous = new TileArchiveMetadata("name", "description", null, "1", null, "pbf",
+      new Envelope(0, 1, 0, 1), null, 0, 10,
+      TileArchiveMetadata.TileArchiveMetadataJson.create(List.of(
+        new LayerAttrStats.VectorLayer("a", Map.of("x", LayerAttrStats.FieldType.NUMBER), 0, 10),
+        new LayerAttrStats.VectorLayer("b", Map.of(), 5, 10)
+      )),
+      Map.of("previous", "1", "both", "previous"), TileCompression.GZIP);
+    var current = new TileArchiveMetadata(null, null, "attribution", "2", null, null,
+      new Envelope(2, 3, 0, 1), null, 5, 14,
+      TileArchiveMetadata.TileArchiveMetadataJson.create(List.of(
+        new LayerAttrStats.VectorLayer("a", Map.of("x", LayerAttrStats.FieldType.STRING,
+          "y", LayerAttrStats.FieldType.BOOLEAN), 2, 14),
+        new LayerAttrStats.VectorLayer("c", Map.of(), 5, 14)
+      )),
+      Map.of("both", "current"), TileCompression.GZIP);
+
+    var merged = current.mergedWith(previous);
+    assertEquals("name", merged.name());
+    assertEquals("description", merged.description());
+    assertEquals("attribution", merged.attribution());
+    assertEquals("2", merged.version());
+    assertEquals("pbf", merged.format());
+    assertEquals(new Envelope(0, 3, 0, 1), merged.bounds());
+    assertEquals(1.5, merged.center().getX(), 1e-5);
+    assertEquals(0, merged.minzoom());
+    assertEquals(14, merged.maxzoom());
+    assertEquals(Map.of("previous", "1", "both", "current"), merged.others());
+    assertEquals(List.of(
+      new LayerAttrStats.VectorLayer("a", Map.of("x", LayerAttrStats.FieldType.STRING,
+        "y", LayerAttrStats.FieldType.BOOLEAN), 0, 14),
+      new LayerAttrStats.VectorLayer("b", Map.of(), 5, 10),
+      new LayerAttrStats.VectorLayer("c", Map.of(), 5, 14)
+    ), merged.vectorLayers());
+    assertSame(current, current.mergedWith(null));
+  }
+
   @Test
   void testAddMetadataWorldBounds() {
     var bounds = GeoUtils.WORLD_LAT_LON_BOUNDS;
@@ -0,0 +1,77 @@
+package com.onthegomap.planetiler.archive;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.util.Hashing;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import org.junit.jupiter.api.Test;
+
+class TileDataDeduplicatorTest {
+
+  private static TileEncodingResult tile(byte[] data, long hash, long high) {
+    return new TileEncodingResult(TileCoord.ofXYZ(0, 0, 0), data, data.length,
+      Optional.of(new Hashing.Hash128(hash, high)), List.of());
+  }
+
+  @Test
+  void testFindsIdenticalContents() {
+    var dedupe = new TileDataDeduplicator();
+    assertEquals(TileDataDeduplicator.NOT_FOUND, dedupe.find(tile(new byte[]{1}, 1, 2)));
+    assertTrue(dedupe.put(tile(new byte[]{1}, 1, 2), 10));
+    assertEquals(10, dedupe.find(tile(new byte[]{1}, 1, 2)));
+    assertEquals(1, dedupe.size());
+    assertEquals(0, dedupe.collisions());
+  }
+
+  @Test
+  void testIgnoresTilesWithoutHash() {
+    var dedupe = new TileDataDeduplicator();
+    var tile = new TileEncodingResult(TileCoord.ofXYZ(0, 0, 0), new byte[]{1}, OptionalLong.empty());
+    assertFalse(dedupe.put(tile, 10));
+    assertEquals(TileDataDeduplicator.NOT_FOUND, dedupe.find(tile));
+    assertEquals(0, dedupe.size());
+  }
+
+  @Test
+  void testUpperHashBitsMustMatch() {
+    var dedupe = new TileDataDeduplicator();
+    dedupe.put(tile(new byte[]{1}, 1, 2), 10);
+    assertEquals(TileDataDeduplicator.NOT_FOUND, dedupe.find(tile(new byte[]{2}, 1, 3)));
+    assertEquals(1, dedupe.collisions());
+    // first contents keep the hash
+    assertFalse(dedupe.put(tile(new byte[]{2}, 1, 3), 11));
+    assertEquals(10, dedupe.find(tile(new byte[]{1}, 1, 2)));
+  }
+
+  @Test
+  void testCachedBytesMustMatch() {
+    var dedupe = new TileDataDeduplicator();
+    dedupe.put(tile(new byte[]{1}, 1, 2), 10);
+    assertEquals(TileDataDeduplicator.NOT_FOUND, dedupe.find(tile(new byte[]{2}, 1, 2)));
+    assertEquals(1, dedupe.collisions());
+  }
+
+  @Test
+  void testTrustsFullHashOnceEvictedFromCache() {
+    var dedupe = new TileDataDeduplicator(2);
+    dedupe.put(tile(new byte[]{1}, 1, 2), 10);
+    dedupe.put(tile(new byte[]{2, 2}, 3, 4), 11);
+    // contents of the first tile got evicted so the 128-bit hash is all there is to compare
+    assertEquals(10, dedupe.find(tile(new byte[]{1}, 1, 2)));
+    assertEquals(11, dedupe.find(tile(new byte[]{2, 2}, 3, 4)));
+    assertEquals(TileDataDeduplicator.NOT_FOUND, dedupe.find(tile(new byte[]{3, 3}, 3, 4)));
+  }
+
+  @Test
+  void testEstimatesMemoryUsage() {
+    var dedupe = new TileDataDeduplicator();
+    long empty = dedupe.estimateMemoryUsageBytes();
+    for (int i = 0; i < 1_000; i++) {
+      dedupe.put(tile(new byte[]{1}, i, i), i);
+    }
+    assertTrue(dedupe.estimateMemoryUsageBytes() > empty + 1_000 * 16);
+  }
+}
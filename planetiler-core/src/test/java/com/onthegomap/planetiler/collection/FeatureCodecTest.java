@@ -0,0 +1,153 @@
+package com.onthegomap.planetiler.collection;
+
+import static com.onthegomap.planetiler.TestUtils.newLineString;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.render.RenderedFeature;
+import com.onthegomap.planetiler.util.CommonStringEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class FeatureCodecTest {
+
+  private final CommonStringEncoder keys = new CommonStringEncoder(100);
+  private final CommonStringEncoder values = new CommonStringEncoder(100);
+  private final AttributeSetDictionary attrSets = new AttributeSetDictionary(1);
+  private final FeatureCodec.Encoder encoder = new FeatureCodec.Encoder(keys, values, attrSets);
+
+  @ParameterizedTest
+  @CsvSource({
+    "0, 1",
+    "1, 1",
+    "-1, 1",
+    "9223372036854775807, 1",
+    "-9223372036854775808, 1",
+    "1, 0",
+  })
+  void testRoundTrip(long id, int maxAttrSets) {
+    var attrSets = new AttributeSetDictionary(maxAttrSets);
+    var encoder = new FeatureCodec.Encoder(keys, values, attrSets);
+    Map<String, Object> attrs = new HashMap<>();
+    attrs.put("string", "value ü");
+    attrs.put("int", -3);
+    attrs.put("long", Long.MAX_VALUE);
+    attrs.put("float", 1.5f);
+    attrs.put("double", -2.25);
+    attrs.put("true", true);
+    attrs.put("false", false);
+    attrs.put("null", null);
+    attrs.put("other", new StringBuilder("other"));
+    var geometry = VectorTile.encodeGeometry(newLineString(0, 0, 10, -10, 5, 5), 2);
+    var feature = new VectorTile.Feature("layer", id, geometry, attrs);
+
+    byte[] first = encoder.encode(feature, null);
+    // attribute sets only get added to the dictionary the second time they are seen
+    byte[] second = encoder.encode(feature, null);
+    var decoded = FeatureCodec.decode(second, false, "layer", keys, values, attrSets);
+    var decodedFirst = FeatureCodec.decode(first, false, "layer", keys, values, attrSets);
+    if (maxAttrSets > 0) {
+      assertTrue(second.length < first.length);
+      var shared = assertInstanceOf(CopyOnWriteAttrs.class, decoded.attrs()).shared();
+      assertSame(shared, attrSets.decode(0));
+      assertSame(shared,
+        assertInstanceOf(CopyOnWriteAttrs.class,
+          FeatureCodec.decode(second, false, "layer", keys, values, attrSets).attrs()).shared());
+    } else {
+      assertInstanceOf(HashMap.class, decoded.attrs());
+    }
+    assertEquals(decodedFirst.attrs(), decoded.attrs());
+
+    assertEquals(id, decoded.id());
+    assertEquals("layer", decoded.layer());
+    assertEquals(VectorTile.Feature.NO_GROUP, decoded.group());
+    assertEquals(geometry.geomType(), decoded.geometry().geomType());
+    assertEquals(geometry.scale(), decoded.geometry().scale());
+    assertArrayEquals(geometry.commands(), decoded.geometry().commands());
+    assertEquals(Map.of(
+      "string", "value ü",
+      "int", -3L,
+      "long", Long.MAX_VALUE,
+      "float", 1.5d,
+      "double", -2.25d,
+      "true", true,
+      "false", false,
+      "other", "other"
+    ), decoded.attrs());
+  }
+
+  @Test
+  void testSharesRepeatedAttributeSets() {
+    var geometry = VectorTile.encodeGeometry(newLineString(0, 0, 1, 1));
+    Map<String, Object> attrs = new HashMap<>(Map.of("class", "residential", "layer", 1));
+    byte[] first = encoder.encode(new VectorTile.Feature("layer", 1, geometry, attrs), null);
+    // sets only get added to the dictionary the second time they are seen
+    byte[] a = encoder.encode(new VectorTile.Feature("layer", 1, geometry, attrs), null);
+    attrs.put("brunnel", null);
+    byte[] b = encoder.encode(new VectorTile.Feature("layer", 2, geometry, attrs), null);
+    // dictionary only has room for 1 set
+    encoder.encode(new VectorTile.Feature("layer", 3, geometry, Map.of("class", "primary")), null);
+    byte[] c = encoder.encode(new VectorTile.Feature("layer", 3, geometry, Map.of("class", "primary")), null);
+
+    var decodedFirst = FeatureCodec.decode(first, false, "layer", keys, values, attrSets);
+    var decodedA = FeatureCodec.decode(a, false, "layer", keys, values, attrSets);
+    var decodedB = FeatureCodec.decode(b, false, "layer", keys, values, attrSets);
+    var decodedC = FeatureCodec.decode(c, false, "layer", keys, values, attrSets);
+    assertEquals(Map.of("class", "residential", "layer", 1L), decodedFirst.attrs());
+    assertEquals(Map.of("class", "residential", "layer", 1L), decodedA.attrs());
+    assertEquals(Map.of("class", "residential", "layer", 1L), decodedB.attrs());
+    assertEquals(Map.of("class", "primary"), decodedC.attrs());
+    assertTrue(a.length < first.length);
+    assertEquals(a.length, b.length);
+    assertTrue(c.length > a.length);
+
+    // features with the same attribute set share one decoded map
+    var shared = assertInstanceOf(CopyOnWriteAttrs.class, decodedA.attrs()).shared();
+    assertSame(shared, assertInstanceOf(CopyOnWriteAttrs.class, decodedB.attrs()).shared());
+    assertThrows(UnsupportedOperationException.class, () -> shared.put("other", "value"));
+
+    // profiles can modify attributes of each feature without affecting other features
+    decodedA.attrs().put("other", "value");
+    assertEquals(Map.of("class", "residential", "layer", 1L, "other", "value"), decodedA.attrs());
+    decodedB.attrs().entrySet().removeIf(entry -> entry.getKey().equals("layer"));
+    assertEquals(Map.of("class", "residential"), decodedB.attrs());
+    assertEquals(Map.of("class", "residential", "layer", 1L), shared);
+    assertEquals(Map.of("class", "residential", "layer", 1L),
+      FeatureCodec.decode(a, false, "layer", keys, values, attrSets).attrs());
+  }
+
+  @Test
+  void testSharesRepeatedStringValues() {
+    var noAttrSets = new AttributeSetDictionary(0);
+    var encoder = new FeatureCodec.Encoder(keys, values, noAttrSets);
+    var geometry = VectorTile.encodeGeometry(newLineString(0, 0, 1, 1));
+    // values only get stored the second time they are seen
+    byte[] first = encoder.encode(new VectorTile.Feature("layer", 0, geometry, Map.of("class", "x")), null);
+    byte[] a = encoder.encode(new VectorTile.Feature("layer", 1, geometry, Map.of("name", "a", "class", "x")), null);
+    byte[] b = encoder.encode(new VectorTile.Feature("layer", 2, geometry, Map.of("name", "b", "class", "x")), null);
+    assertEquals(Map.of("class", "x"), FeatureCodec.decode(first, false, "layer", keys, values, noAttrSets).attrs());
+
+    var decodedA = FeatureCodec.decode(a, false, "layer", keys, values, noAttrSets).attrs();
+    var decodedB = FeatureCodec.decode(b, false, "layer", keys, values, noAttrSets).attrs();
+    assertEquals(Map.of("name", "a", "class", "x"), decodedA);
+    assertEquals(Map.of("name", "b", "class", "x"), decodedB);
+    assertSame(decodedA.get("class"), decodedB.get("class"));
+  }
+
+  @Test
+  void testGroupInfo() {
+    var feature = new VectorTile.Feature("layer", 1, VectorTile.encodeGeometry(newLineString(0, 0, 1, 1)), Map.of());
+    byte[] encoded = encoder.encode(feature, new RenderedFeature.Group(-5, 10));
+
+    assertEquals(new RenderedFeature.Group(-5, 10), FeatureCodec.peekAtGroupInfo(encoded));
+    assertEquals(-5, FeatureCodec.decode(encoded, true, "layer", keys, values, attrSets).group());
+  }
+}
@@ -5,6 +5,7 @@ import static com.onthegomap.planetiler.TestUtils.newPoint;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.DynamicTest.dynamicTest;
 
@@ -20,6 +21,8 @@ import com.onthegomap.planetiler.stats.Stats;
 import com.onthegomap.planetiler.util.CloseableConsumer;
 import com.onthegomap.planetiler.util.Gzip;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -31,6 +34,7 @@ import org.junit.jupiter.api.DynamicTest;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestFactory;
 import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.ArgumentsProvider;
@@ -177,6 +181,32 @@ class FeatureGroupTest {
       )))), getFeaturesParallel());
   }
 
+  @Test
+  void testIndexedTiles(@TempDir Path tmpDir) throws IOException {
+    put(3, "layer3", Map.of("a", 1.5d, "b", "string"), newPoint(5, 6));
+    put(3, "layer4", Map.of("a", 1.5d, "b", "string"), newPoint(5, 6));
+    put(1, "layer", Map.of("a", 1, "b", 2L), newPoint(1, 2));
+    put(1, "layer2", Map.of("c", 3d, "d", true), newPoint(3, 4));
+    var expected = getFeatures();
+    try (var indexed = features.indexTiles(tmpDir.resolve("indexed.db"))) {
+      assertEquals(
+        List.of(TileCoord.decode(1), TileCoord.decode(3)),
+        indexed.tileCoords().stream().toList()
+      );
+      Map<Integer, Map<String, List<Feature>>> actual = new TreeMap<>();
+      for (int tile : List.of(1, 3)) {
+        for (var feature : VectorTile.decode(indexed.get(TileCoord.decode(tile)).getVectorTile().encode())) {
+          actual.computeIfAbsent(tile, i -> new TreeMap<>())
+            .computeIfAbsent(feature.layer(), l -> new ArrayList<>())
+            .add(new Feature(feature.attrs(), decodeSilently(feature.geometry())));
+        }
+      }
+      assertEquals(expected, actual);
+      assertNull(indexed.get(TileCoord.decode(2)));
+    }
+    assertFalse(Files.exists(tmpDir.resolve("indexed.db")));
+  }
+
   @Test
   void testPutPointsWithSortKey() {
     putWithSortKey(
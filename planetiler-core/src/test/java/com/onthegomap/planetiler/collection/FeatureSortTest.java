@@ -1,9 +1,13 @@
 package com.onthegomap.planetiler.collection;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.stats.Stats;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -14,6 +18,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 class FeatureSortTest {
 
@@ -93,6 +98,34 @@ class FeatureSortTest {
     assertEquals(List.of(newEntry(1), newEntry(2), newEntry(3), newEntry(4)), sorter.toList());
   }
 
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void testRejectsChunkWithOtherVersion(boolean mmap) throws IOException {
+    FeatureSort sorter = newSorter(1, 100, false, mmap);
+    try (var writer = sorter.writerForThread()) {
+      writer.accept(newEntry(1));
+    }
+    Path chunk = tmpDir.resolve("chunk1");
+    byte[] bytes = Files.readAllBytes(chunk);
+    bytes[0] = FeatureCodec.VERSION + 1;
+    Files.write(chunk, bytes);
+    assertThrows(RuntimeException.class, sorter::sort);
+  }
+
+  @Test
+  void testReleaseDeletesChunks() {
+    FeatureSort sorter = newSorter(1, 0, false, false);
+    var writer = sorter.writerForThread();
+    writer.accept(newEntry(2));
+    writer.accept(newEntry(1));
+    sorter.sort();
+    assertEquals(List.of(newEntry(1), newEntry(2)), sorter.toList());
+    assertTrue(sorter.diskUsageBytes() > 0);
+    sorter.release();
+    assertEquals(0, sorter.diskUsageBytes());
+    assertEquals(0, sorter.chunksToRead());
+  }
+
   @Test
   void testMultipleWritersThatGetCombined() {
     FeatureSort sorter = newSorter(2, 2_000_000, false, false);
@@ -0,0 +1,63 @@
+package com.onthegomap.planetiler.collection;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class IndexedFeatureStoreTest {
+
+  @TempDir
+  Path tmpDir;
+
+  private static SortableFeature feature(int tile, int value) {
+    return new SortableFeature(FeatureGroup.encodeKey(tile, (byte) 0, value, false), new byte[]{(byte) value});
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 20, 1_000_000})
+  void testReadTiles(int indexInterval) throws IOException {
+    List<SortableFeature> features = new ArrayList<>();
+    for (int tile : List.of(0, 1, 5, 6, 100)) {
+      for (int i = 0; i < tile % 4 + 1; i++) {
+        features.add(feature(tile, i));
+      }
+    }
+    try (var store = IndexedFeatureStore.write(features.iterator(), tmpDir.resolve("store"), indexInterval)) {
+      assertTrue(store.indexSize() >= 1);
+      for (int tile = -1; tile <= 101; tile++) {
+        int thisTile = tile;
+        var expected = features.stream().filter(f -> FeatureGroup.extractTileFromKey(f.key()) == thisTile).toList();
+        var actual = store.getTile(tile);
+        assertEquals(expected.size(), actual.size(), "tile " + tile);
+        for (int i = 0; i < expected.size(); i++) {
+          assertEquals(expected.get(i).key(), actual.get(i).key());
+          assertArrayEquals(expected.get(i).value(), actual.get(i).value());
+        }
+      }
+      try (var iter = store.tileIds()) {
+        assertEquals(List.of(0, 1, 5, 6, 100), iter.stream().toList());
+      }
+    }
+  }
+
+  @Test
+  void testEmpty() throws IOException {
+    try (
+      var store = IndexedFeatureStore.write(Collections.emptyIterator(), tmpDir.resolve("store"), 10)
+    ) {
+      assertEquals(0, store.indexSize());
+      assertEquals(List.of(), store.getTile(0));
+      assertEquals(List.of(), store.tileIds().stream().toList());
+    }
+  }
+}
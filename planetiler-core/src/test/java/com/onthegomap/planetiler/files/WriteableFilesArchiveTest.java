@@ -12,6 +12,7 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -21,6 +22,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 class WriteableFilesArchiveTest {
 
@@ -61,6 +63,53 @@ class WriteableFilesArchiveTest {
     }
   }
 
+  @ParameterizedTest
+  @CsvSource({
+    "0, 1",
+    "1, 1",
+    "4, 3",
+    "4, 256",
+  })
+  void testWriteFromMultipleWritersInBackground(int ioThreads, int batchSize, @TempDir Path tempDir)
+    throws Exception {
+    final Path tilesDir = tempDir.resolve("tiles");
+    final Arguments options = Arguments.of(Map.of(
+      FilesArchiveUtils.OPTION_IO_THREADS, Integer.toString(ioThreads),
+      FilesArchiveUtils.OPTION_WRITE_BATCH_SIZE, Integer.toString(batchSize)
+    ));
+    int writers = 3;
+    int z = 5;
+    try (var archive = WriteableFilesArchive.newWriter(tilesDir, options, false)) {
+      archive.initialize();
+      List<Thread> threads = new ArrayList<>();
+      for (int w = 0; w < writers; w++) {
+        int writer = w;
+        threads.add(Thread.ofPlatform().start(() -> {
+          try (var tileWriter = archive.newTileWriter()) {
+            // all writers share the same x folders
+            for (int x = 0; x < (1 << z); x++) {
+              for (int y = writer; y < (1 << z); y += writers) {
+                tileWriter.write(new TileEncodingResult(TileCoord.ofXYZ(x, y, z), new byte[]{(byte) (x + y)},
+                  OptionalLong.empty()));
+              }
+            }
+          }
+        }));
+      }
+      for (var thread : threads) {
+        thread.join();
+      }
+      archive.finish(TestUtils.MAX_METADATA_DESERIALIZED);
+      assertEquals(1 << (2 * z), archive.bytesWritten() - Files.size(tilesDir.resolve("metadata.json")));
+    }
+    for (int x = 0; x < (1 << z); x++) {
+      for (int y = 0; y < (1 << z); y++) {
+        assertArrayEquals(new byte[]{(byte) (x + y)},
+          Files.readAllBytes(tilesDir.resolve(Paths.get(Integer.toString(z), Integer.toString(x), y + ".pbf"))));
+      }
+    }
+  }
+
   @ParameterizedTest
   @CsvSource(textBlock = """
     {z}/{x}/{y}.pbf,    3/1/2.pbf
@@ -221,15 +270,23 @@ class WriteableFilesArchiveTest {
     );
   }
 
-  @Test
-  void testFailsIfTileExistsAsDir(@TempDir Path tempDir) throws IOException {
+  @ParameterizedTest
+  @ValueSource(ints = {0, 2})
+  void testFailsIfTileExistsAsDir(int ioThreads, @TempDir Path tempDir) throws IOException {
     final Path tilesDir = tempDir.resolve("tiles");
     final Path tileAsDirPath = tilesDir.resolve(Paths.get("0", "0", "0.pbf"));
     Files.createDirectories(tileAsDirPath);
-    try (var archive = WriteableFilesArchive.newWriter(tilesDir, Arguments.of(), false)) {
-      try (var writer = archive.newTileWriter()) {
-        final var r = new TileEncodingResult(TileCoord.ofXYZ(0, 0, 0), new byte[]{0}, OptionalLong.empty());
-        assertThrows(UncheckedIOException.class, () -> writer.write(r));
+    final Arguments options = Arguments.of(Map.of(FilesArchiveUtils.OPTION_IO_THREADS, Integer.toString(ioThreads)));
+    try (var archive = WriteableFilesArchive.newWriter(tilesDir, options, false)) {
+      final var writer = archive.newTileWriter();
+      final var tile = new TileEncodingResult(TileCoord.ofXYZ(0, 0, 0), new byte[]{0}, OptionalLong.empty());
+      if (ioThreads == 0) {
+        // without I/O threads, each tile gets written immediately
+        assertThrows(UncheckedIOException.class, () -> writer.write(tile));
+      } else {
+        writer.write(tile);
+        // tiles get written in batches, so the failure surfaces once the last batch gets flushed
+        assertThrows(UncheckedIOException.class, writer::close);
       }
     }
   }
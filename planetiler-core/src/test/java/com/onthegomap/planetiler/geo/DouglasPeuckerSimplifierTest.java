@@ -46,6 +46,26 @@ class DouglasPeuckerSimplifierTest {
     ), 1);
   }
 
+  @Test
+  void testSimplifyLongLine() {
+    // square wave with noise below the simplification threshold
+    double[] coords = new double[2000];
+    for (int i = 0; i < 1000; i++) {
+      double noise = i % 4 == 2 ? 0.5 : 0;
+      boolean high = i >= 300 && i < 700;
+      coords[i * 2] = i;
+      coords[i * 2 + 1] = high ? 10 - noise : noise;
+    }
+    testSimplify(newLineString(coords), newLineString(
+      0, 0,
+      299, 0,
+      300, 10,
+      699, 10,
+      700, 0,
+      999, 0
+    ), 1);
+  }
+
   @Test
   void testKeepAPoint() {
     testSimplify(newLineString(
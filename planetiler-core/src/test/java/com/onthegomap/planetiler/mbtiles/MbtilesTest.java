@@ -7,21 +7,30 @@ import com.google.common.math.IntMath;
 import com.onthegomap.planetiler.TestUtils;
 import com.onthegomap.planetiler.archive.Tile;
 import com.onthegomap.planetiler.archive.TileArchiveMetadata;
+import com.onthegomap.planetiler.archive.TileArchiveWriter;
 import com.onthegomap.planetiler.archive.TileCompression;
 import com.onthegomap.planetiler.archive.TileEncodingResult;
 import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.geo.GeoUtils;
 import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.geo.TileExtents;
 import com.onthegomap.planetiler.util.LayerAttrStats;
 import java.io.IOException;
 import java.math.RoundingMode;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -116,6 +125,243 @@ class MbtilesTest {
     testWriteTiles(tmpDir.resolve("archive.mbtiles"), 10, false, false, true);
   }
 
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void testMultipleWritersMergeShards(boolean compactDb, @TempDir Path tmpDir) throws IOException, SQLException {
+    Path path = tmpDir.resolve("archive.mbtiles");
+    int writers = 3;
+    int perWriter = 50;
+    Set<Tile> expected = new TreeSet<>();
+    var options = Arguments.of("compact", Boolean.toString(compactDb));
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, options, writers)) {
+      db.initialize();
+      for (int w = 0; w < writers; w++) {
+        try (var writer = db.newTileWriter()) {
+          for (int i = 0; i < perWriter; i++) {
+            // the same 10 tile contents get repeated across all writers
+            var entry = new Tile(TileCoord.ofXYZ(w * perWriter + i, 0, 14), new byte[]{(byte) (i % 10)});
+            writer.write(new TileEncodingResult(entry.coord(), entry.bytes(), OptionalLong.of(i % 10)));
+            expected.add(entry);
+          }
+        }
+      }
+      assertTrue(path.resolveSibling("archive.mbtiles1").toFile().exists());
+      db.finish(new TileArchiveMetadata(null, null, null, null, null, null, null, null, null, null, null, Map.of(),
+        TileCompression.GZIP));
+
+      assertFalse(path.resolveSibling("archive.mbtiles1").toFile().exists());
+      assertFalse(path.resolveSibling("archive.mbtiles2").toFile().exists());
+      assertEquals(expected, TestUtils.getTiles(db));
+      assertEquals(compactDb, TestUtils.isCompactDb(db));
+      if (compactDb) {
+        assertEquals(10, TestUtils.getTilesDataCount(db));
+      }
+      for (var expectedEntry : expected) {
+        var tile = expectedEntry.coord();
+        assertArrayEquals(expectedEntry.bytes(), db.getTile(tile.x(), tile.y(), tile.z()));
+      }
+    }
+    // the merged output has the same tables and indexes as an archive written from a single writer
+    try (
+      Mbtiles merged = Mbtiles.newReadOnlyDatabase(path);
+      Mbtiles single = Mbtiles.newInMemoryDatabase(compactDb)
+    ) {
+      single.initialize();
+      assertEquals(getSchema(single), getSchema(merged));
+    }
+  }
+
+  private static List<String> getSchema(Mbtiles db) throws SQLException {
+    List<String> result = new ArrayList<>();
+    try (
+      Statement statement = db.connection().createStatement();
+      var rs = statement.executeQuery("select sql from sqlite_master where sql is not null order by name")
+    ) {
+      while (rs.next()) {
+        result.add(rs.getString(1).replaceAll("\\s+", " "));
+      }
+    }
+    return result;
+  }
+
+  @Test
+  void testMultipleWritersDeleteShardsWhenClosedWithoutFinishing(@TempDir Path tmpDir) throws IOException {
+    Path path = tmpDir.resolve("archive.mbtiles");
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, Arguments.of(), 2)) {
+      db.initialize();
+      writeTiles(db, Map.of(TileCoord.ofXYZ(0, 0, 1), 1));
+      writeTiles(db, Map.of(TileCoord.ofXYZ(1, 0, 1), 1));
+      assertTrue(Files.exists(Mbtiles.shardPath(path, 1)));
+    }
+    assertFalse(Files.exists(Mbtiles.shardPath(path, 1)));
+  }
+
+  private static void writeTiles(Mbtiles db, Map<TileCoord, Integer> tiles) throws IOException {
+    try (var writer = db.newTileWriter()) {
+      for (var entry : tiles.entrySet()) {
+        byte[] data = new byte[]{(byte) (int) entry.getValue()};
+        var hash = TileArchiveWriter.generateContentHash(data);
+        writer.write(new TileEncodingResult(entry.getKey(), data, data.length, Optional.of(hash), List.of()));
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void testAppendReplacesTilesAndMergesMetadata(boolean compactDb, @TempDir Path tmpDir)
+    throws IOException, SQLException {
+    Path path = tmpDir.resolve("archive.mbtiles");
+    var a = TileCoord.ofXYZ(0, 0, 1);
+    var b = TileCoord.ofXYZ(1, 0, 1);
+    var c = TileCoord.ofXYZ(0, 0, 2);
+    var d = TileCoord.ofXYZ(1, 0, 2);
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, Arguments.of("compact", Boolean.toString(compactDb)))) {
+      db.initialize();
+      writeTiles(db, Map.of(a, 1, b, 2, c, 2));
+      db.finish(new TileArchiveMetadata("name", null, null, null, null, null, null, null, 0, 1, null, Map.of(),
+        TileCompression.GZIP));
+    }
+    // compact option gets ignored when appending, layout comes from the existing file
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, Arguments.of(), 1, true)) {
+      db.initialize();
+      writeTiles(db, Map.of(a, 3, b, 2, d, 2));
+      db.finish(new TileArchiveMetadata(null, "description", null, null, null, null, null, null, 2, 2, null, Map.of(),
+        TileCompression.GZIP));
+    }
+    try (Mbtiles db = Mbtiles.newReadOnlyDatabase(path)) {
+      assertEquals(Set.of(
+        new Tile(a, new byte[]{3}),
+        new Tile(b, new byte[]{2}),
+        new Tile(c, new byte[]{2}),
+        new Tile(d, new byte[]{2})
+      ), TestUtils.getTiles(db));
+      assertEquals(compactDb, TestUtils.isCompactDb(db));
+      if (compactDb) {
+        // data for tile "1" is gone and new tiles with data "2" reuse the existing entry
+        assertEquals(2, TestUtils.getTilesDataCount(db));
+      }
+      var metadata = db.metadata();
+      assertEquals("name", metadata.name());
+      assertEquals("description", metadata.description());
+      assertEquals(0, metadata.minzoom());
+      assertEquals(2, metadata.maxzoom());
+    }
+  }
+
+  @Test
+  void testConcurrentReadsFromReadOnlyDatabase(@TempDir Path tmpDir) throws Exception {
+    Path path = tmpDir.resolve("archive.mbtiles");
+    Map<TileCoord, Integer> tiles = new HashMap<>();
+    for (int x = 0; x < 16; x++) {
+      for (int y = 0; y < 16; y++) {
+        tiles.put(TileCoord.ofXYZ(x, y, 4), x * 16 + y);
+      }
+    }
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, Arguments.of())) {
+      db.initialize();
+      writeTiles(db, tiles);
+      db.finish(new TileArchiveMetadata("name", null, null, null, null, null, null, null, 4, 4, null, Map.of(),
+        TileCompression.GZIP));
+    }
+    var executor = Executors.newFixedThreadPool(8);
+    try (Mbtiles db = Mbtiles.newReadOnlyDatabase(path)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          for (var entry : tiles.entrySet()) {
+            assertArrayEquals(new byte[]{(byte) (int) entry.getValue()}, db.getTile(entry.getKey()));
+          }
+          assertNull(db.getTile(TileCoord.ofXYZ(0, 0, 5)));
+        }));
+      }
+      for (var future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void testDeleteTilesToRegenerate(boolean compactDb, @TempDir Path tmpDir) throws IOException, SQLException {
+    Path path = tmpDir.resolve("archive.mbtiles");
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, Arguments.of("compact", Boolean.toString(compactDb)))) {
+      db.initialize();
+      writeTiles(db, Map.of(
+        TileCoord.ofXYZ(0, 0, 1), 1,
+        TileCoord.ofXYZ(0, 1, 1), 2,
+        TileCoord.ofXYZ(1, 0, 1), 3,
+        TileCoord.ofXYZ(1, 1, 1), 3,
+        TileCoord.ofXYZ(0, 0, 2), 4
+      ));
+      db.finish(new TileArchiveMetadata("name", null, null, null, null, null, null, null, 1, 2, null, Map.of(),
+        TileCompression.GZIP));
+    }
+    // regenerate the western half of z1, where only one tile is non-empty now
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, Arguments.of(), 1, true)) {
+      db.initialize();
+      db.deleteTiles(TileExtents.computeFromWorldBounds(2, new Envelope(0, 0.5, 0, 1)), 1, 1);
+      writeTiles(db, Map.of(TileCoord.ofXYZ(0, 1, 1), 5));
+      db.finish(new TileArchiveMetadata(null, null, null, null, null, null, null, null, 1, 1, null, Map.of(),
+        TileCompression.GZIP));
+    }
+    try (Mbtiles db = Mbtiles.newReadOnlyDatabase(path)) {
+      assertEquals(Set.of(
+        new Tile(TileCoord.ofXYZ(0, 1, 1), new byte[]{5}),
+        new Tile(TileCoord.ofXYZ(1, 0, 1), new byte[]{3}),
+        new Tile(TileCoord.ofXYZ(1, 1, 1), new byte[]{3}),
+        new Tile(TileCoord.ofXYZ(0, 0, 2), new byte[]{4})
+      ), TestUtils.getTiles(db));
+      if (compactDb) {
+        assertEquals(3, TestUtils.getTilesDataCount(db));
+      }
+      assertEquals(1, db.metadata().minzoom());
+      assertEquals(2, db.metadata().maxzoom());
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void testDeleteTilesToRegenerateWithinShape(boolean compactDb, @TempDir Path tmpDir)
+    throws IOException, SQLException {
+    Path path = tmpDir.resolve("archive.mbtiles");
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, Arguments.of("compact", Boolean.toString(compactDb)))) {
+      db.initialize();
+      writeTiles(db, Map.of(
+        TileCoord.ofXYZ(0, 0, 1), 1,
+        TileCoord.ofXYZ(0, 1, 1), 2,
+        TileCoord.ofXYZ(0, 2, 2), 3,
+        TileCoord.ofXYZ(1, 1, 2), 3,
+        TileCoord.ofXYZ(1, 2, 2), 4,
+        TileCoord.ofXYZ(2, 2, 2), 5
+      ));
+      db.finish(new TileArchiveMetadata("name", null, null, null, null, null, null, null, 1, 2, null, Map.of(),
+        TileCompression.GZIP));
+    }
+    // regenerate a polygon within z2 tile 1/2 in the western half of the world
+    var shape = GeoUtils.worldToLatLonCoords(TestUtils.rectangle(0.3, 0.55, 0.45, 0.7));
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, Arguments.of(), 1, true)) {
+      db.initialize();
+      db.deleteTiles(TileExtents.computeFromWorldBounds(2, new Envelope(0, 0.5, 0, 1), shape), 1, 2);
+      db.finish(new TileArchiveMetadata(null, null, null, null, null, null, null, null, 1, 2, null, Map.of(),
+        TileCompression.GZIP));
+    }
+    try (Mbtiles db = Mbtiles.newReadOnlyDatabase(path)) {
+      assertEquals(Set.of(
+        // inside the bounds but outside the shape
+        new Tile(TileCoord.ofXYZ(0, 0, 1), new byte[]{1}),
+        new Tile(TileCoord.ofXYZ(0, 2, 2), new byte[]{3}),
+        new Tile(TileCoord.ofXYZ(1, 1, 2), new byte[]{3}),
+        // outside the bounds
+        new Tile(TileCoord.ofXYZ(2, 2, 2), new byte[]{5})
+      ), TestUtils.getTiles(db));
+      if (compactDb) {
+        assertEquals(3, TestUtils.getTilesDataCount(db));
+      }
+    }
+  }
+
   @Test
   void testCustomPragma() throws IOException, SQLException {
     try (
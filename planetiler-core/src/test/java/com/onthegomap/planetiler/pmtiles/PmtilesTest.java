@@ -12,12 +12,14 @@ import com.onthegomap.planetiler.archive.TileEncodingResult;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.geo.TileCoord;
 import com.onthegomap.planetiler.reader.FileFormatException;
+import com.onthegomap.planetiler.util.Gzip;
 import com.onthegomap.planetiler.util.LayerAttrStats;
 import com.onthegomap.planetiler.util.SeekableInMemoryByteChannel;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +30,7 @@ import java.util.stream.Collectors;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 
@@ -181,6 +184,52 @@ class PmtilesTest {
     assertTrue(result.leafSize() >= 4096, "entries in leaf: " + result.leafSize());
   }
 
+  @ParameterizedTest
+  @ValueSource(ints = {1, 1_000, 1_000_000})
+  void testBuildDirectoriesRootFitsWithSparseTileIds(int gap) throws IOException {
+    ArrayList<Pmtiles.Entry> in = new ArrayList<>();
+    long tileId = 0;
+    for (int i = 0; i < 500_000; i++) {
+      tileId += 1 + (i * 7919L) % gap;
+      in.add(new Pmtiles.Entry(tileId, i * 100L, 100, 1));
+    }
+    var result = WriteablePmtiles.makeDirectories(in);
+    assertEquals(1, result.numAttempts());
+    assertTrue(result.root.length < WriteablePmtiles.INIT_SECTION - Pmtiles.HEADER_LEN);
+    assertTrue(result.leafSize() >= WriteablePmtiles.MIN_LEAF_SIZE);
+
+    // every entry can be found by following the root to its leaf
+    var root = Pmtiles.directoryFromBytes(Gzip.gunzip(result.root()));
+    assertEquals(result.numLeaves(), root.size());
+    List<Pmtiles.Entry> all = new ArrayList<>();
+    for (var leafEntry : root) {
+      byte[] leaf = Arrays.copyOfRange(result.leaves(), (int) leafEntry.offset(),
+        (int) leafEntry.offset() + leafEntry.length());
+      all.addAll(Pmtiles.directoryFromBytes(Gzip.gunzip(leaf)));
+    }
+    assertEquals(in, all);
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 1_000, 1_000_000})
+  void testLeafSizeAccountsForRootCompression(int gap) throws IOException {
+    int maxRootBytes = 1024;
+    int minLeafSize = 16;
+    try (var packed = new PackedEntries()) {
+      long tileId = 0;
+      for (int i = 0; i < 100_000; i++) {
+        tileId += 1 + (i * 7919L) % gap;
+        packed.add(tileId, i * 100L, 100, 1);
+      }
+      int leafSize = WriteablePmtiles.leafSizeForRoot(packed, maxRootBytes, minLeafSize);
+      // leaves are smaller than if the root directory could not be compressed at all
+      int worstCase = WriteablePmtiles.leafSizeForUncompressedRoot(packed, maxRootBytes, minLeafSize);
+      assertTrue(leafSize < worstCase, "leaf size " + leafSize + " worst case " + worstCase);
+      var result = WriteablePmtiles.makeDirectoriesWithLeaves(packed, leafSize);
+      assertTrue(result.root().length < maxRootBytes, "root size " + result.root().length);
+    }
+  }
+
   @Test
   void testWritePmtilesSingleEntry() throws IOException {
     var bytes = new SeekableInMemoryByteChannel(0);
@@ -292,6 +341,31 @@ class PmtilesTest {
     assertNotNull(reader.getTile(0, 0, 0));
   }
 
+  @Test
+  void testWritePmtilesHashCollision() throws IOException {
+    var bytes = new SeekableInMemoryByteChannel(0);
+    var in = WriteablePmtiles.newWriteToMemory(bytes);
+
+    var config = PlanetilerConfig.defaults();
+    var metadata = new TileArchiveMetadata(new Profile.NullProfile(), config);
+    in.initialize();
+    var writer = in.newTileWriter();
+    // same hash but different contents
+    writer.write(new TileEncodingResult(TileCoord.ofXYZ(0, 0, 0), new byte[]{0xa, 0x2}, OptionalLong.of(42)));
+    writer.write(new TileEncodingResult(TileCoord.ofXYZ(0, 0, 1), new byte[]{0xa, 0x3}, OptionalLong.of(42)));
+    writer.write(new TileEncodingResult(TileCoord.ofXYZ(1, 0, 1), new byte[]{0xa, 0x2}, OptionalLong.of(42)));
+
+    in.finish(metadata);
+    try (var reader = new ReadablePmtiles(bytes)) {
+      var header = reader.getHeader();
+      assertEquals(3, header.numAddressedTiles());
+      assertEquals(2, header.numTileContents());
+      assertArrayEquals(new byte[]{0xa, 0x2}, reader.getTile(0, 0, 0));
+      assertArrayEquals(new byte[]{0xa, 0x3}, reader.getTile(0, 0, 1));
+      assertArrayEquals(new byte[]{0xa, 0x2}, reader.getTile(1, 0, 1));
+    }
+  }
+
   @Test
   void testWritePmtilesDuplication() throws IOException {
     var bytes = new SeekableInMemoryByteChannel(0);
@@ -365,8 +439,9 @@ class PmtilesTest {
     }
   }
 
-  @Test
-  void testWritePmtilesLeafDirectories() throws IOException {
+  @ParameterizedTest
+  @ValueSource(longs = {0, 1_000, ReadablePmtiles.DEFAULT_DIRECTORY_CACHE_BYTES})
+  void testWritePmtilesLeafDirectories(long directoryCacheBytes) throws IOException {
     var bytes = new SeekableInMemoryByteChannel(0);
     var in = WriteablePmtiles.newWriteToMemory(bytes);
 
@@ -388,7 +463,7 @@ class PmtilesTest {
     }
 
     in.finish(metadata);
-    try (var reader = new ReadablePmtiles(bytes)) {
+    try (var reader = new ReadablePmtiles(bytes, directoryCacheBytes)) {
       var header = reader.getHeader();
       assertEquals(ENTRIES, header.numAddressedTiles());
       assertEquals(ENTRIES, header.numTileContents());
@@ -401,7 +476,11 @@ class PmtilesTest {
           "tileCoord=%s did not match".formatted(coord.toString()));
       }
 
-      Set<TileCoord> coordset = reader.getAllTileCoords().stream().collect(Collectors.toCollection(TreeSet::new));
+      List<TileCoord> coords = reader.getAllTileCoords().stream().toList();
+      for (int i = 0; i < ENTRIES; i++) {
+        assertEquals(TileCoord.hilbertDecode(i), coords.get(i));
+      }
+      Set<TileCoord> coordset = new TreeSet<>(coords);
       assertEquals(expectedCoords, coordset);
 
       Set<Tile> tileset = reader.getAllTiles().stream().collect(Collectors.toCollection(TreeSet::new));
@@ -413,4 +492,48 @@ class PmtilesTest {
       }
     }
   }
+
+  @Test
+  void testDecodedDirectoryMatchesEntries() {
+    List<Pmtiles.Entry> entries = List.of(
+      new Pmtiles.Entry(0, 0, 10, 1),
+      new Pmtiles.Entry(1, 10, 5, 3),
+      new Pmtiles.Entry(10, 0, 100, 0),
+      new Pmtiles.Entry(20, 15, 5, 1),
+      new Pmtiles.Entry(21, 15, 5, 1)
+    );
+    var decoded = DecodedDirectory.fromBytes(Pmtiles.directoryToBytes(entries, 0, entries.size()));
+    assertEquals(entries.size(), decoded.size());
+    for (int i = 0; i < entries.size(); i++) {
+      var entry = entries.get(i);
+      assertEquals(entry, new Pmtiles.Entry(decoded.tileId(i), decoded.offset(i), decoded.length(i),
+        decoded.runLength(i)));
+    }
+    for (long tileId = 0; tileId < 25; tileId++) {
+      var expected = ReadablePmtiles.findTile(entries, tileId);
+      int actual = decoded.find(tileId);
+      assertEquals(expected == null ? -1 : entries.indexOf(expected), actual, "tileId=" + tileId);
+    }
+  }
+
+  @Test
+  void testPackedEntries() throws IOException {
+    List<Pmtiles.Entry> entries = new ArrayList<>();
+    for (int i = 0; i < PackedEntries.SEGMENT_ENTRIES + 10; i++) {
+      entries.add(new Pmtiles.Entry(i * 2L, i * 10L, 10, 1));
+    }
+    try (var packed = PackedEntries.of(entries)) {
+      assertEquals(entries.size(), packed.size());
+      long last = packed.size() - 1;
+      assertEquals(entries.getLast(),
+        new Pmtiles.Entry(packed.tileId(last), packed.offset(last), packed.length(last), packed.runLength(last)));
+      int start = PackedEntries.SEGMENT_ENTRIES - 5;
+      assertArrayEquals(
+        Pmtiles.directoryToBytes(entries, start, entries.size()),
+        packed.directoryToBytes(start, entries.size())
+      );
+      packed.extendLastRun();
+      assertEquals(2, packed.runLength(last));
+    }
+  }
 }
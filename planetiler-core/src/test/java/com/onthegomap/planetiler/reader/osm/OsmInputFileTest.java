@@ -1,19 +1,31 @@
 package com.onthegomap.planetiler.reader.osm;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.carrotsearch.hppc.LongArrayList;
 import com.onthegomap.planetiler.TestUtils;
 import com.onthegomap.planetiler.stats.Stats;
+import com.onthegomap.planetiler.util.PartialFile;
+import com.onthegomap.planetiler.worker.RunnableThatThrows;
 import com.onthegomap.planetiler.worker.WorkerPipeline;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.locationtech.jts.geom.Envelope;
@@ -122,6 +134,100 @@ class OsmInputFileTest {
     }
   }
 
+  /** Simulates a download that writes {@code source} to {@code dest} in small increments from a background thread. */
+  private static class SlowCopy implements PartialFile {
+
+    private final byte[] bytes;
+    private final Path dest;
+    private long written = 0;
+
+    SlowCopy(Path source, Path dest) throws IOException {
+      this.bytes = Files.readAllBytes(source);
+      this.dest = dest;
+      Files.write(dest, new byte[bytes.length]);
+    }
+
+    void run() throws IOException, InterruptedException {
+      try (var channel = FileChannel.open(dest, StandardOpenOption.WRITE)) {
+        for (int offset = 0; offset < bytes.length; offset += 10_000) {
+          int length = Math.min(10_000, bytes.length - offset);
+          channel.write(ByteBuffer.wrap(bytes, offset, length), offset);
+          synchronized (this) {
+            written = offset + length;
+            notifyAll();
+          }
+          Thread.sleep(1);
+        }
+      }
+    }
+
+    synchronized long written() {
+      return written;
+    }
+
+    @Override
+    public long size() {
+      return bytes.length;
+    }
+
+    @Override
+    public FileChannel openChannel() throws IOException {
+      return FileChannel.open(dest, StandardOpenOption.READ);
+    }
+
+    @Override
+    public synchronized void awaitBytes(long bytes) throws IOException {
+      try {
+        while (written < bytes) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+    }
+
+    @Override
+    public void awaitComplete() throws IOException {
+      awaitBytes(bytes.length);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  @Timeout(30)
+  void testReadWhileWriting(boolean lazy, @TempDir Path tempDir) throws Exception {
+    var copy = new SlowCopy(path, tempDir.resolve("partial.osm.pbf"));
+    var file = new OsmInputFile(tempDir.resolve("missing.osm.pbf"), lazy).readWhileWriting(copy);
+    var writer = CompletableFuture.runAsync(RunnableThatThrows.wrap(copy::run));
+    AtomicInteger nodes = new AtomicInteger(0);
+    AtomicInteger ways = new AtomicInteger(0);
+    AtomicInteger rels = new AtomicInteger(0);
+    AtomicLong firstBlockAt = new AtomicLong(-1);
+    assertEquals(expectedBounds, file.getLatLonBounds());
+    try (var osmReader = file.get()) {
+      WorkerPipeline.start("test", Stats.inMemory())
+        .fromGenerator("pbf", osmReader::forEachBlock)
+        .addBuffer("pbf_blocks", 100)
+        .sinkToConsumer("counter", 1, block -> {
+          firstBlockAt.compareAndSet(-1, copy.written());
+          for (var elem : block.decodeElements()) {
+            switch (elem) {
+              case OsmElement.Node n -> nodes.incrementAndGet();
+              case OsmElement.Way w -> ways.incrementAndGet();
+              case OsmElement.Relation r -> rels.incrementAndGet();
+              default -> {
+              }
+            }
+          }
+        }).await();
+    }
+    writer.get();
+    assertEquals(25_423, nodes.get());
+    assertEquals(4_106, ways.get());
+    assertEquals(243, rels.get());
+    assertTrue(firstBlockAt.get() < copy.size(), "started processing after " + firstBlockAt + " bytes");
+  }
+
   @ParameterizedTest
   @ValueSource(booleans = {false, true})
   @Timeout(30)
@@ -274,6 +274,27 @@ class OsmMultipolygonTest {
     );
   }
 
+  @Test
+  void testPolygonWithManyHoles() throws GeometryException {
+    List<List<Node>> ways = new ArrayList<>();
+    List<List<Coordinate>> holes = new ArrayList<>();
+    ways.add(rectangleNodes(0, 1000));
+    for (int i = 0; i < OsmMultipolygon.PARALLEL_CONTAINMENT_MIN_RINGS + 10; i++) {
+      ways.add(rectangleNodes(i * 3 + 1, 1, i * 3 + 2, 2));
+      holes.add(rectangleCoordList(i * 3 + 1, 1, i * 3 + 2, 2));
+    }
+    ways.add(rectangleNodes(10, 20));
+    holes.add(rectangleCoordList(10, 20));
+    ways.add(rectangleNodes(12, 18));
+    testBuildMultipolygon(
+      ways,
+      newMultiPolygon(
+        newPolygon(rectangleCoordList(0, 1000), holes),
+        rectangle(12, 18)
+      )
+    );
+  }
+
   @Test
   void testTouchingPolygonsWithHole() throws GeometryException {
     testBuildMultipolygon(
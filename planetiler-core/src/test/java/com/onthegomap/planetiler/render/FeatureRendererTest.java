@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.DynamicTest.dynamicTest;
 
 import com.onthegomap.planetiler.FeatureCollector;
@@ -25,6 +26,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
 import org.junit.jupiter.api.DynamicTest;
 import org.junit.jupiter.api.Test;
@@ -59,6 +61,14 @@ class FeatureRendererTest {
     return result;
   }
 
+  private Map<TileCoord, Collection<Geometry>> renderGeometry(FeatureCollector.Feature feature, RenderCache cache) {
+    Map<TileCoord, Collection<Geometry>> result = new TreeMap<>();
+    new FeatureRenderer(config, rendered -> result.computeIfAbsent(rendered.tile(), tile -> new HashSet<>())
+      .add(decodeSilently(rendered.vectorTileFeature().geometry())), Stats.inMemory(), null, cache).accept(feature);
+    result.values().forEach(gs -> gs.forEach(TestUtils::validateGeometry));
+    return result;
+  }
+
   private Map<TileCoord, Collection<RenderedFeature>> renderFeatures(FeatureCollector.Feature feature) {
     Map<TileCoord, Collection<RenderedFeature>> result = new TreeMap<>();
     new FeatureRenderer(config, rendered -> result.computeIfAbsent(rendered.tile(), tile -> new HashSet<>())
@@ -863,6 +873,65 @@ class FeatureRendererTest {
     ), renderGeometry(feature));
   }
 
+  private static List<Coordinate> circleCoordList(double x, double y, double radius, int points) {
+    List<Coordinate> result = new ArrayList<>();
+    for (int i = 0; i < points; i++) {
+      double angle = 2 * Math.PI * i / points;
+      result.add(new CoordinateXY(x + radius * Math.cos(angle), y + radius * Math.sin(angle)));
+    }
+    result.add(result.getFirst().copy());
+    return result;
+  }
+
+  @Test
+  void testRenderCacheReusesSlicedGeometry() {
+    double center = 0.5 + Z14_WIDTH / 2;
+    var geom = newPolygon(
+      circleCoordList(center, center, Z14_WIDTH * 2, 200),
+      List.of(circleCoordList(center, center, Z14_WIDTH / 4, 150))
+    );
+    var expected = renderGeometry(polygonFeature(geom).setZoomRange(12, 14).setBufferPixels(4));
+    var cache = RenderCache.create(100_000_000, stats);
+    var first = renderGeometry(polygonFeature(geom).setZoomRange(12, 14).setBufferPixels(4), cache);
+    long cacheSize = cache.estimateMemoryUsageBytes();
+    assertTrue(cacheSize > 0);
+    // a different feature with the same geometry should re-use the cached slices
+    var second = renderGeometry(polygonFeature(geom).setZoomRange(12, 14).setBufferPixels(4), cache);
+    assertEquals(cacheSize, cache.estimateMemoryUsageBytes());
+    assertEquals(expected, first);
+    assertEquals(expected, second);
+    // different settings are cached separately
+    renderGeometry(polygonFeature(geom).setZoomRange(12, 14).setBufferPixels(8), cache);
+    assertTrue(cache.estimateMemoryUsageBytes() > cacheSize);
+  }
+
+  @Test
+  void testRenderCacheBoundedBySize() {
+    var geom = newPolygon(circleCoordList(0.5, 0.5, Z14_WIDTH * 2, 200), List.of());
+    var cache = RenderCache.create(10_000, stats);
+    renderGeometry(polygonFeature(geom).setZoomRange(0, 14).setBufferPixels(4), cache);
+    assertTrue(cache.estimateMemoryUsageBytes() <= 10_000);
+  }
+
+  @Test
+  void testRenderCacheAdmitsEntriesUpToFullLimit() {
+    var geom = newPolygon(circleCoordList(0.5, 0.5, Z14_WIDTH * 2, 200), List.of());
+    var unbounded = RenderCache.create(100_000_000, stats);
+    renderGeometry(polygonFeature(geom).setZoomRange(14, 14).setBufferPixels(4), unbounded);
+    long entrySize = unbounded.estimateMemoryUsageBytes();
+    assertTrue(entrySize > 0);
+
+    // an entry larger than a single segment's share of the limit should still get cached
+    var cache = RenderCache.create(entrySize * 2, stats);
+    renderGeometry(polygonFeature(geom).setZoomRange(14, 14).setBufferPixels(4), cache);
+    assertEquals(entrySize, cache.estimateMemoryUsageBytes());
+    // and evict older entries to stay under the limit
+    renderGeometry(polygonFeature(geom).setZoomRange(14, 14).setBufferPixels(8), cache);
+    renderGeometry(polygonFeature(geom).setZoomRange(14, 14).setBufferPixels(12), cache);
+    assertTrue(cache.estimateMemoryUsageBytes() <= entrySize * 2);
+    assertTrue(cache.estimateMemoryUsageBytes() > 0);
+  }
+
   @Test
   void testComplexPolygonHoleInfersOuterFill() {
     var feature = polygonFeature(
@@ -996,6 +1065,29 @@ class FeatureRendererTest {
     ), renderGeometry(feature));
   }
 
+  @Test
+  void testCascadeSimplifyEmitsSameTiles() {
+    var geom = newPolygon(
+      0.5 + Z14_WIDTH * 0.5, 0.5 + Z14_WIDTH * 0.5,
+      0.5 + Z14_WIDTH * 10.5, 0.5 + Z14_WIDTH * 0.7,
+      0.5 + Z14_WIDTH * 20.5, 0.5 + Z14_WIDTH * 0.5,
+      0.5 + Z14_WIDTH * 20.5, 0.5 + Z14_WIDTH * 20.5,
+      0.5 + Z14_WIDTH * 0.5, 0.5 + Z14_WIDTH * 20.5,
+      0.5 + Z14_WIDTH * 0.5, 0.5 + Z14_WIDTH * 0.5
+    );
+    var expected = renderGeometry(polygonFeature(geom).setZoomRange(0, 14).setBufferPixels(4));
+    config = PlanetilerConfig.from(Arguments.of("cascade_simplify", "true"));
+    var actual = renderGeometry(polygonFeature(geom).setZoomRange(0, 14).setBufferPixels(4));
+    assertEquals(expected.keySet(), actual.keySet());
+    for (var tile : expected.keySet()) {
+      assertEquals(
+        expected.get(tile).stream().map(Geometry::norm).collect(Collectors.toSet()),
+        actual.get(tile).stream().map(Geometry::norm).collect(Collectors.toSet()),
+        tile.toString()
+      );
+    }
+  }
+
   @Test
   void testOmitsPolygonUnderMinSize() {
     var feature = polygonFeature(rectangle(0.5 + Z13_PX * 10, 0.5 + Z13_PX * 11.9))
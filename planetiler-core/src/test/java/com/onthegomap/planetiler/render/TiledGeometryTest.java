@@ -159,6 +159,29 @@ class TiledGeometryTest {
     ), tiledGeom.stream().collect(Collectors.toSet()));
   }
 
+  @Test
+  void testCoveredTilesAtLowerZoom() throws GeometryException {
+    var tiledGeom = TiledGeometry.getCoveredTiles(TestUtils.newMultiPolygon(
+      TestUtils.rectangle(25.5, 26.5),
+      TestUtils.rectangle(30.1, 30.9)
+    ), 14,
+      new TileExtents.ForZoom(14, 0, 0, Z14_TILES, Z14_TILES, null));
+    assertEquals(Set.of(
+      TileCoord.ofXYZ(12, 12, 13),
+      TileCoord.ofXYZ(13, 12, 13),
+      TileCoord.ofXYZ(12, 13, 13),
+      TileCoord.ofXYZ(13, 13, 13),
+      TileCoord.ofXYZ(15, 15, 13)
+    ), tiledGeom.atZoom(13).stream().collect(Collectors.toSet()));
+    assertEquals(Set.of(
+      TileCoord.ofXYZ(6, 6, 12),
+      TileCoord.ofXYZ(7, 7, 12)
+    ), tiledGeom.atZoom(12).stream().collect(Collectors.toSet()));
+    assertEquals(Set.of(TileCoord.ofXYZ(0, 0, 0)), tiledGeom.atZoom(0).stream().collect(Collectors.toSet()));
+    assertEquals(tiledGeom, tiledGeom.atZoom(14));
+    assertThrows(IllegalArgumentException.class, () -> tiledGeom.atZoom(15));
+  }
+
   private void rotate(CoordinateSequence coordinateSequence, double x, double y, int degrees) {
     var transformation = AffineTransformation.rotationInstance(Math.toRadians(degrees), x, y);
     for (int i = 0; i < coordinateSequence.size(); i++) {
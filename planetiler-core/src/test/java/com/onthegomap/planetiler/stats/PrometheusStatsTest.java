@@ -86,6 +86,16 @@ class PrometheusStatsTest {
     assertContainsStat("^planetiler_renderer_features_emitted_total\\{.*layer2.* 1", stats);
   }
 
+  @Test
+  void testRenderCacheLookups() {
+    PrometheusStats stats = new PrometheusStats("job");
+    stats.renderCacheLookup(true);
+    stats.renderCacheLookup(false);
+    stats.renderCacheLookup(false);
+    assertContainsStat("^planetiler_renderer_cache_lookups_total\\{.*hit.* 1", stats);
+    assertContainsStat("^planetiler_renderer_cache_lookups_total\\{.*miss.* 2", stats);
+  }
+
   @Test
   void testWroteTile() {
     PrometheusStats stats = new PrometheusStats("job");
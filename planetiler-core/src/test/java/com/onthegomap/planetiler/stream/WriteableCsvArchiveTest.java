@@ -7,7 +7,9 @@ import com.onthegomap.planetiler.archive.TileArchiveMetadata;
 import com.onthegomap.planetiler.archive.TileEncodingResult;
 import com.onthegomap.planetiler.config.Arguments;
 import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.util.Gzip;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
@@ -154,6 +156,32 @@ class WriteableCsvArchiveTest {
     testTileOptions(tempDir, config, expectedCsv);
   }
 
+  @Test
+  void testGzip(@TempDir Path tempDir) throws IOException {
+
+    final StreamArchiveConfig config = new StreamArchiveConfig(false, Arguments.of(Map.of(
+      WriteableStreamArchive.OPTION_GZIP, "true",
+      WriteableStreamArchive.OPTION_GZIP_THREADS, "2"
+    )));
+    final Path csvFilePrimary = tempDir.resolve("out.csv");
+    final Path csvFileSecondary = tempDir.resolve("out.csv1");
+
+    try (var archive = WriteableCsvArchive.newWriteToFile(TileArchiveConfig.Format.CSV, csvFilePrimary, config)) {
+      archive.initialize();
+      try (var tileWriter = archive.newTileWriter()) {
+        tileWriter.write(new TileEncodingResult(TileCoord.ofXYZ(0, 0, 0), new byte[]{0, 1}, OptionalLong.empty()));
+      }
+      try (var tileWriter = archive.newTileWriter()) {
+        tileWriter.write(new TileEncodingResult(TileCoord.ofXYZ(1, 1, 1), new byte[]{2, 3}, OptionalLong.empty()));
+      }
+      archive.finish(defaultMetadata);
+    }
+
+    assertEquals("0,0,0,AAE=\n", new String(Gzip.gunzip(Files.readAllBytes(csvFilePrimary)), StandardCharsets.UTF_8));
+    assertEquals("1,1,1,AgM=\n",
+      new String(Gzip.gunzip(Files.readAllBytes(csvFileSecondary)), StandardCharsets.UTF_8));
+  }
+
   private void testTileOptions(Path tempDir, StreamArchiveConfig config, String expectedCsv) throws IOException {
 
     final Path csvFile = tempDir.resolve("out.csv");
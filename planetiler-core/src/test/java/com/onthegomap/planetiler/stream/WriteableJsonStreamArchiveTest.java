@@ -1,7 +1,9 @@
 package com.onthegomap.planetiler.stream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -10,6 +12,7 @@ import com.onthegomap.planetiler.TestUtils;
 import com.onthegomap.planetiler.archive.TileEncodingResult;
 import com.onthegomap.planetiler.config.Arguments;
 import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.util.Gzip;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
@@ -145,6 +148,37 @@ class WriteableJsonStreamArchiveTest {
     assertFalse(Files.readString(tempDir.resolve("out.json")).contains("\n"));
   }
 
+  @Test
+  void testGzip(@TempDir Path tempDir) throws IOException {
+    final StreamArchiveConfig gzipConfig = new StreamArchiveConfig(false, Arguments.of(Map.of(
+      WriteableStreamArchive.OPTION_GZIP, "true",
+      WriteableStreamArchive.OPTION_GZIP_THREADS, "2"
+    )));
+    final Path plainFile = tempDir.resolve("plain.json");
+    final Path gzipFile = tempDir.resolve("gzip.json");
+
+    for (var entry : Map.of(plainFile, defaultConfig, gzipFile, gzipConfig).entrySet()) {
+      try (var archive = WriteableJsonStreamArchive.newWriteToFile(entry.getKey(), entry.getValue())) {
+        archive.initialize();
+        try (var tileWriter = archive.newTileWriter()) {
+          for (int i = 0; i < 20_000; i++) {
+            tileWriter.write(new TileEncodingResult(TileCoord.ofXYZ(i % 1024, i / 1024, 10),
+              new byte[]{(byte) i, (byte) (i >> 8)}, OptionalLong.empty()));
+          }
+        }
+        archive.finish(TestUtils.MIN_METADATA_DESERIALIZED);
+      }
+    }
+
+    byte[] plain = Files.readAllBytes(plainFile);
+    byte[] gzipped = Files.readAllBytes(gzipFile);
+    assertArrayEquals(plain, Gzip.gunzip(gzipped));
+    // the JSON writer flushes after every value, which should not end a compressed block each time
+    int singleThreaded = Gzip.gzip(plain).length;
+    assertTrue(gzipped.length < singleThreaded * 1.1,
+      "parallel gzip output " + gzipped.length + "B should be close to single-threaded " + singleThreaded + "B");
+  }
+
   private void testTileOptions(Path tempDir, StreamArchiveConfig config, String expectedJson) throws IOException {
 
     final Path csvFile = tempDir.resolve("out.json");
@@ -51,4 +51,29 @@ class CommonStringEncoderTest {
     }
     assertThrows(IllegalArgumentException.class, () -> commonStringEncoderInteger.encode("too many"));
   }
+
+  @Test
+  void testTryEncodeReturnsNegativeWhenFull() {
+    var encoder = new CommonStringEncoder(2);
+    assertEquals(-1, encoder.tryEncode("a"));
+    assertEquals(0, encoder.tryEncode("a"));
+    assertEquals(-1, encoder.tryEncode("b"));
+    assertEquals(1, encoder.tryEncode("b"));
+    assertEquals(-1, encoder.tryEncode("c"));
+    assertEquals(-1, encoder.tryEncode("c"));
+    assertEquals(0, encoder.tryEncode("a"));
+    assertEquals("b", encoder.decode(1));
+  }
+
+  @Test
+  void testTryEncodeOnlyStoresStringsSeenTwice() {
+    var encoder = new CommonStringEncoder(2);
+    // unique values don't use up IDs
+    for (int i = 0; i < 100; i++) {
+      assertEquals(-1, encoder.tryEncode("name " + i));
+    }
+    assertEquals(-1, encoder.tryEncode("common"));
+    assertEquals(0, encoder.tryEncode("common"));
+    assertEquals("common", encoder.decode(0));
+  }
 }
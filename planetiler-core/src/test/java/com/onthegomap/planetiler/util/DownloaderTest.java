@@ -2,18 +2,28 @@ package com.onthegomap.planetiler.util;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.onthegomap.planetiler.config.Arguments;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -115,6 +125,227 @@ class DownloaderTest {
     assertEquals(5, resource4.bytesDownloaded());
   }
 
+  private Downloader resumableDownloader(PlanetilerConfig config, Map<String, byte[]> resources, Set<Long> failAt) {
+    return new Downloader(config, 2L) {
+
+      @Override
+      InputStream openStream(String url) throws IOException {
+        downloads.incrementAndGet();
+        if (!resources.containsKey(url)) {
+          throw new FileNotFoundException(url);
+        }
+        return new ByteArrayInputStream(resources.get(url));
+      }
+
+      @Override
+      InputStream openStreamRange(String url, long start, long end, String ifRange) throws IOException {
+        assertEquals("\"etag\"", ifRange);
+        downloads.incrementAndGet();
+        if (failAt.contains(start)) {
+          throw new IOException("failed to get " + start);
+        }
+        return new ByteArrayInputStream(Arrays.copyOfRange(resources.get(url), (int) start, (int) end));
+      }
+
+      @Override
+      ResourceMetadata httpHead(String url) {
+        return new ResourceMetadata(Optional.empty(), url, resources.get(url).length, true, Optional.of("\"etag\""));
+      }
+    };
+  }
+
+  @Test
+  void testResumeFailedDownload() throws Exception {
+    Path dest = path.resolve("out");
+    String url = "http://url";
+    Map<String, byte[]> resources = Map.of(url, "0123456789".getBytes(StandardCharsets.UTF_8));
+    Set<Long> failAt = ConcurrentHashMap.newKeySet();
+    failAt.add(4L);
+    var downloader = resumableDownloader(config, resources, failAt);
+
+    var resource1 = new Downloader.ResourceToDownload("resource", url, dest);
+    assertThrows(ExecutionException.class, () -> downloader.downloadIfNecessary(resource1).get());
+    assertFalse(Files.exists(dest));
+    assertTrue(Files.exists(resource1.tmpPath()));
+    assertTrue(Files.exists(resource1.chunksPath()));
+    // header line, then every chunk except the one that failed
+    assertEquals(5, Files.readAllLines(resource1.chunksPath()).size());
+
+    failAt.clear();
+    downloads.set(0);
+    var resource2 = new Downloader.ResourceToDownload("resource", url, dest);
+    downloader.downloadIfNecessary(resource2).get();
+    assertEquals("0123456789", Files.readString(dest));
+    assertEquals(1, downloads.get());
+    assertEquals(FileUtils.size(path), FileUtils.size(dest));
+  }
+
+  @Test
+  void testRestartDownloadWhenResourceChanges() throws Exception {
+    Path dest = path.resolve("out");
+    String url = "http://url";
+    var resource = new Downloader.ResourceToDownload("resource", url, dest);
+    Files.writeString(resource.tmpPath(), "xxxxxxxxxx");
+    Files.writeString(resource.chunksPath(), "10 2 \"old etag\"\n0\n1\n2\n");
+    var downloader =
+      resumableDownloader(config, Map.of(url, "0123456789".getBytes(StandardCharsets.UTF_8)), Set.of());
+
+    downloader.downloadIfNecessary(resource).get();
+    assertEquals("0123456789", Files.readString(dest));
+    assertEquals(5, downloads.get());
+    assertEquals(FileUtils.size(path), FileUtils.size(dest));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "781e5e245d69b566979b86e28d23f2c7, true",
+    "781E5E245D69B566979B86E28D23F2C7  out, true",
+    "00000000000000000000000000000000, false",
+  })
+  void testVerifyMd5(String md5, boolean valid) throws Exception {
+    Path dest = path.resolve("out");
+    String url = "http://url";
+    var config = PlanetilerConfig.from(Arguments.of(Map.of("download_verify_md5", "true")));
+    var downloader = resumableDownloader(config, Map.of(
+      url, "0123456789".getBytes(StandardCharsets.UTF_8),
+      url + ".md5", md5.getBytes(StandardCharsets.UTF_8)
+    ), Set.of());
+    var resource = new Downloader.ResourceToDownload("resource", url, dest);
+
+    if (valid) {
+      downloader.downloadIfNecessary(resource).get();
+      assertEquals("0123456789", Files.readString(dest));
+    } else {
+      var exception = assertThrows(ExecutionException.class, () -> downloader.downloadIfNecessary(resource).get());
+      assertInstanceOf(IllegalStateException.class, exception.getCause());
+      assertFalse(Files.exists(dest));
+      assertFalse(Files.exists(resource.tmpPath()));
+      assertFalse(Files.exists(resource.chunksPath()));
+    }
+  }
+
+  @Test
+  void testSkipMd5CheckWhenMissing() throws Exception {
+    Path dest = path.resolve("out");
+    String url = "http://url";
+    var config = PlanetilerConfig.from(Arguments.of(Map.of("download_verify_md5", "true")));
+    var downloader =
+      resumableDownloader(config, Map.of(url, "0123456789".getBytes(StandardCharsets.UTF_8)), Set.of());
+
+    downloader.downloadIfNecessary(new Downloader.ResourceToDownload("resource", url, dest)).get();
+    assertEquals("0123456789", Files.readString(dest));
+  }
+
+  @Test
+  @Timeout(10)
+  void testReadWhileDownloading() throws Exception {
+    Path dest = path.resolve("out");
+    String url = "http://url";
+    byte[] bytes = "0123456789".getBytes(StandardCharsets.UTF_8);
+    CountDownLatch secondHalf = new CountDownLatch(1);
+    var downloader = new Downloader(config, 2L) {
+
+      @Override
+      InputStream openStreamRange(String url, long start, long end, String ifRange) throws IOException {
+        if (start >= 4) {
+          try {
+            secondHalf.await();
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+        }
+        return new ByteArrayInputStream(Arrays.copyOfRange(bytes, (int) start, (int) end));
+      }
+
+      @Override
+      ResourceMetadata httpHead(String url) {
+        return new ResourceMetadata(Optional.empty(), url, bytes.length, true, Optional.of("\"etag\""));
+      }
+    };
+
+    var partial = downloader.addStreaming("resource", url, dest);
+    downloader.run();
+    assertEquals(10, partial.size());
+    partial.awaitBytes(4);
+    try (var channel = partial.openChannel()) {
+      var buffer = ByteBuffer.allocate(4);
+      channel.read(buffer, 0);
+      assertEquals("0123", new String(buffer.array(), StandardCharsets.UTF_8));
+    }
+    assertFalse(Files.exists(dest));
+
+    secondHalf.countDown();
+    partial.awaitComplete();
+    assertEquals("0123456789", Files.readString(dest));
+    try (var channel = partial.openChannel()) {
+      assertEquals(10, channel.size());
+    }
+  }
+
+  @Test
+  @Timeout(10)
+  void testReadWhileDownloadingFails() {
+    var downloader = new Downloader(config, 2L) {
+
+      @Override
+      ResourceMetadata httpHead(String url) {
+        throw new IllegalStateException("Bad response: 404");
+      }
+    };
+
+    var partial = downloader.addStreaming("resource", "http://url", path.resolve("out"));
+    assertThrows(IllegalStateException.class, downloader::run);
+    assertThrows(IOException.class, () -> partial.awaitBytes(1));
+    assertThrows(IOException.class, partial::awaitComplete);
+  }
+
+  @Test
+  @Timeout(10)
+  void testConcurrentDownloadsShareBandwidthLimit() throws Exception {
+    var config = PlanetilerConfig.from(Arguments.of(Map.of(
+      "download_max_bandwidth", "100kB/s",
+      "download_threads", "2"
+    )));
+    byte[] bytes = new byte[40_000];
+    // make sure both downloads are in progress at the same time before either one gets any data
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    var downloader = new Downloader(config, 10_000L) {
+
+      @Override
+      InputStream openStreamRange(String url, long start, long end, String ifRange) throws IOException {
+        if (start == 0) {
+          bothStarted.countDown();
+          try {
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS), "downloads did not run concurrently");
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+        }
+        return new ByteArrayInputStream(Arrays.copyOfRange(bytes, (int) start, (int) end));
+      }
+
+      @Override
+      ResourceMetadata httpHead(String url) {
+        return new ResourceMetadata(Optional.empty(), url, bytes.length, true, Optional.of("\"etag\""));
+      }
+    };
+
+    long start = System.nanoTime();
+    var first = downloader.downloadIfNecessary(new Downloader.ResourceToDownload("first", "http://url1",
+      path.resolve("out1")));
+    var second = downloader.downloadIfNecessary(new Downloader.ResourceToDownload("second", "http://url2",
+      path.resolve("out2")));
+    first.get();
+    second.get();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    // the first 10kB chunk goes through immediately, then the other 70kB from both files take 0.7s if they share one
+    // 100kB/s limit, but only 0.3s if each file had its own limit
+    assertTrue(seconds >= 0.6, "took " + seconds + "s");
+    assertEquals(bytes.length, Files.size(path.resolve("out1")));
+    assertEquals(bytes.length, Files.size(path.resolve("out2")));
+  }
+
   @Test
   void testDownloadFailsIfTooBig() {
     var downloader = new Downloader(config, 2L) {
@@ -1,11 +1,13 @@
 package com.onthegomap.planetiler.util;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Random;
 import org.junit.jupiter.api.Test;
 
 class GzipTest {
@@ -18,4 +20,19 @@ class GzipTest {
     assertEquals(string, new String(big, UTF_8));
     assertFalse(Arrays.equals(small, big));
   }
+
+  @Test
+  void testCompressorRoundTrip() throws IOException {
+    Random random = new Random(0);
+    try (var compressor = new Gzip.Compressor()) {
+      for (int size : new int[]{0, 1, 100, 10_000, 100_000, 5}) {
+        byte[] input = new byte[size + 4];
+        for (int i = 0; i < input.length; i++) {
+          input[i] = i % 2 == 0 ? (byte) random.nextInt() : 1;
+        }
+        byte[] zipped = compressor.gzip(input, 2, size);
+        assertArrayEquals(Arrays.copyOfRange(input, 2, size + 2), Gzip.gunzip(zipped), "size=" + size);
+      }
+    }
+  }
 }
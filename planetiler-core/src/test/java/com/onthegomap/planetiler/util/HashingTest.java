@@ -3,8 +3,13 @@ package com.onthegomap.planetiler.util;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
 import java.util.function.Function;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 class HashingTest {
 
@@ -20,6 +25,23 @@ class HashingTest {
     assertEquals(123, Hashing.fnv1a64(123));
   }
 
+  @Test
+  void testMurmur3x64_128() {
+    testHasher(Hashing::murmur3x64_128, new Hashing.Hash128(0, 0));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 7, 8, 9, 15, 16, 17, 31, 32, 33, 1000})
+  void testMurmur3x64_128MatchesGuava(int length) {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    var expected = ByteBuffer.wrap(com.google.common.hash.Hashing.murmur3_128().hashBytes(data).asBytes())
+      .order(ByteOrder.LITTLE_ENDIAN);
+    var actual = Hashing.murmur3x64_128(data);
+    assertEquals(expected.getLong(0), actual.low());
+    assertEquals(expected.getLong(8), actual.high());
+  }
+
   private static byte[] bytes(int... bytes) {
     byte[] result = new byte[bytes.length];
     for (int i = 0; i < bytes.length; i++) {
@@ -0,0 +1,145 @@
+package com.onthegomap.planetiler.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.onthegomap.planetiler.TestUtils;
+import com.onthegomap.planetiler.archive.TileArchives;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.pmtiles.ReadablePmtiles;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HttpRangeChannelTest {
+
+  private static final Pattern RANGE = Pattern.compile("^bytes=(\\d+)-(\\d+)$");
+  @TempDir
+  Path tmpDir;
+  private final PlanetilerConfig config = PlanetilerConfig.defaults();
+  private final byte[] data = new byte[10_000];
+  private final AtomicBoolean supportsRange = new AtomicBoolean(true);
+  private HttpServer server;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    new Random(0).nextBytes(data);
+    byte[] pmtiles = Files.readAllBytes(TestUtils.pathToResource("box1degree.pmtiles"));
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      byte[] bytes = exchange.getRequestURI().getPath().endsWith(".pmtiles") ? pmtiles : data;
+      var matcher = RANGE.matcher(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+      byte[] body = bytes;
+      if (supportsRange.get() && matcher.matches()) {
+        int start = Integer.parseInt(matcher.group(1));
+        int end = Math.min(bytes.length - 1, Integer.parseInt(matcher.group(2)));
+        body = Arrays.copyOfRange(bytes, start, end + 1);
+        exchange.getResponseHeaders().add("Content-Range", "bytes %d-%d/%d".formatted(start, end, bytes.length));
+        exchange.sendResponseHeaders(206, body.length);
+      } else {
+        exchange.sendResponseHeaders(200, body.length);
+      }
+      try (var os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    });
+    server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  private String url(String path) {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+  }
+
+  private static byte[] read(HttpRangeChannel channel, long position, int length) throws IOException {
+    var buffer = ByteBuffer.allocate(length);
+    channel.position(position);
+    channel.read(buffer);
+    return Arrays.copyOf(buffer.array(), buffer.position());
+  }
+
+  @Test
+  void testReadsAndCachesPages() throws IOException {
+    try (var channel = new HttpRangeChannel(URI.create(url("/data")), config, tmpDir, 1024, 4096)) {
+      assertEquals(10_000, channel.size());
+      assertEquals(1, channel.requests());
+
+      // first page was already fetched to get the size
+      assertArrayEquals(Arrays.copyOfRange(data, 10, 100), read(channel, 10, 90));
+      assertEquals(1, channel.requests());
+
+      // pages 1-2 missing, fetched together
+      assertArrayEquals(Arrays.copyOfRange(data, 500, 3000), read(channel, 500, 2500));
+      assertEquals(2, channel.requests());
+      assertArrayEquals(Arrays.copyOfRange(data, 1024, 3072), read(channel, 1024, 2048));
+      assertEquals(2, channel.requests());
+
+      // reads past the end get truncated
+      assertArrayEquals(Arrays.copyOfRange(data, 9990, 10_000), read(channel, 9990, 100));
+      assertEquals(3, channel.requests());
+      assertEquals(-1, channel.position(10_000).read(ByteBuffer.allocate(1)));
+
+      // cache only holds 4 pages, so least-recently used page 0 gets evicted
+      read(channel, 4096, 10);
+      read(channel, 0, 10);
+      assertEquals(5, channel.requests());
+    }
+  }
+
+  @Test
+  void testReadLargerThanCache() throws IOException {
+    try (var channel = new HttpRangeChannel(URI.create(url("/data")), config, tmpDir, 1024, 2048)) {
+      assertArrayEquals(data, read(channel, 0, data.length));
+    }
+  }
+
+  @Test
+  void testDeletesCacheOnClose() throws IOException {
+    new HttpRangeChannel(URI.create(url("/data")), config, tmpDir, 1024, 4096).close();
+    try (var files = Files.list(tmpDir)) {
+      assertEquals(0, files.count());
+    }
+  }
+
+  @Test
+  void testFailsWithoutRangeSupport() {
+    supportsRange.set(false);
+    assertThrows(IOException.class,
+      () -> new HttpRangeChannel(URI.create(url("/data")), config, tmpDir, 1024, 4096));
+  }
+
+  @Test
+  void testReadRemotePmtiles() throws IOException {
+    var config = PlanetilerConfig.from(Arguments.of(Map.of("tmpdir", tmpDir.toString())));
+    try (
+      var local = new ReadablePmtiles(FileChannel.open(TestUtils.pathToResource("box1degree.pmtiles")));
+      var remote = TileArchives.newReader(url("/box1degree.pmtiles?http_page_size_kb=1"), config)
+    ) {
+      assertEquals(local.metadata(), remote.metadata());
+      assertEquals(local.getAllTileCoords().stream().toList(), remote.getAllTileCoords().stream().toList());
+      for (var coord : local.getAllTileCoords().stream().toList()) {
+        assertArrayEquals(local.getTile(coord), remote.getTile(coord));
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package com.onthegomap.planetiler.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ParallelGzipOutputStreamTest {
+
+  private static ExecutorService executor;
+
+  @BeforeAll
+  static void setup() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterAll
+  static void teardown() {
+    executor.shutdownNow();
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 1_000, 50_000, 50_001, 100_000, 1_000_000})
+  void testRoundTrip(int size) throws IOException {
+    Random random = new Random(size);
+    var expected = new ByteArrayOutputStream();
+    var result = new ByteArrayOutputStream();
+    try (var gzip = new ParallelGzipOutputStream(result, executor, Deflater.DEFAULT_COMPRESSION, 50_000, 3)) {
+      int written = 0;
+      while (written < size) {
+        byte[] chunk = new byte[Math.min(size - written, random.nextInt(20_000))];
+        for (int i = 0; i < chunk.length; i++) {
+          chunk[i] = (byte) ('a' + random.nextInt(10));
+        }
+        gzip.write(chunk);
+        expected.write(chunk);
+        written += chunk.length;
+        if (random.nextInt(10) == 0) {
+          // flushing should not change the output
+          gzip.flush();
+        }
+        if (written < size && random.nextBoolean()) {
+          gzip.write('z');
+          expected.write('z');
+          written++;
+        }
+      }
+    }
+    assertArrayEquals(expected.toByteArray(), Gzip.gunzip(result.toByteArray()));
+  }
+
+  @Test
+  void testFlushDoesNotEndBlock() throws IOException {
+    var expected = new ByteArrayOutputStream();
+    var result = new ByteArrayOutputStream();
+    var countingExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+    try {
+      try (var gzip = new ParallelGzipOutputStream(result, countingExecutor, Deflater.DEFAULT_COMPRESSION, 50_000, 3)) {
+        for (int i = 0; i < 10_000; i++) {
+          byte[] value = ("{\"value\":" + i + "}\n").getBytes(StandardCharsets.UTF_8);
+          gzip.write(value);
+          expected.write(value);
+          gzip.flush();
+        }
+      }
+      countingExecutor.shutdown();
+      assertTrue(countingExecutor.awaitTermination(10, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AssertionError(e);
+    } finally {
+      countingExecutor.shutdownNow();
+    }
+    assertArrayEquals(expected.toByteArray(), Gzip.gunzip(result.toByteArray()));
+    assertEquals((expected.size() + 49_999) / 50_000, countingExecutor.getCompletedTaskCount());
+  }
+}
@@ -0,0 +1,99 @@
+package com.onthegomap.planetiler.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.onthegomap.planetiler.TestUtils;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.pmtiles.ReadablePmtiles;
+import com.onthegomap.planetiler.stats.Stats;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class TileServerTest {
+
+  private ReadablePmtiles archive;
+  private TileServer server;
+  private final HttpClient client = HttpClient.newHttpClient();
+
+  @BeforeEach
+  void start() throws IOException {
+    archive = new ReadablePmtiles(FileChannel.open(TestUtils.pathToResource("box1degree.pmtiles")));
+    var weights = new TileWeights().put(TileCoord.ofXYZ(0, 0, 0), 100);
+    server = new TileServer(archive, weights, 1 << 20, new InetSocketAddress("127.0.0.1", 0), Stats.inMemory());
+  }
+
+  @AfterEach
+  void stop() throws IOException {
+    server.close();
+    archive.close();
+  }
+
+  private HttpResponse<byte[]> get(String path) throws IOException, InterruptedException {
+    var request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path)).build();
+    return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  @Test
+  void testServeTile() throws IOException, InterruptedException {
+    var coord = TileCoord.ofXYZ(1, 0, 1);
+    assertFalse(server.cache().contains(coord));
+    var response = get("/1/1/0.pbf");
+    assertEquals(200, response.statusCode());
+    assertArrayEquals(archive.getTile(coord), response.body());
+    assertEquals(Optional.of("application/vnd.mapbox-vector-tile"), response.headers().firstValue("Content-Type"));
+    assertEquals(Optional.of("gzip"), response.headers().firstValue("Content-Encoding"));
+    assertTrue(server.cache().contains(coord));
+    assertArrayEquals(archive.getTile(coord), get("/1/1/0").body());
+  }
+
+  @Test
+  void testPrefillsPopularTiles() {
+    assertTrue(server.cache().contains(TileCoord.ofXYZ(0, 0, 0)));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "/2/3/3, 204",
+    "/16/0/0, 400",
+    "/1/2/0, 400",
+    "/tiles, 404",
+    "/metadata.json, 200",
+  })
+  void testStatusCodes(String path, int status) throws IOException, InterruptedException {
+    assertEquals(status, get(path).statusCode());
+  }
+
+  @Test
+  void testCacheEvictsLeastRecentlyUsed() {
+    var cache = new TileServer.HotTileCache(10);
+    var a = TileCoord.ofXYZ(0, 0, 1);
+    var b = TileCoord.ofXYZ(1, 0, 1);
+    var c = TileCoord.ofXYZ(0, 1, 1);
+    cache.put(a, new byte[4]);
+    cache.put(b, new byte[4]);
+    cache.get(a);
+    cache.put(c, new byte[4]);
+    assertTrue(cache.contains(a));
+    assertFalse(cache.contains(b));
+    assertTrue(cache.contains(c));
+    assertEquals(8, cache.bytes());
+
+    cache.put(b, new byte[11]);
+    assertFalse(cache.contains(b));
+    assertEquals(8, cache.bytes());
+  }
+}
@@ -6,6 +6,8 @@ import com.carrotsearch.hppc.ByteArrayList;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 class VarIntTest {
 
@@ -37,4 +39,12 @@ class VarIntTest {
       {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0xf};
     assertEquals(9007199254740991L, VarInt.getVarLong(ByteBuffer.wrap(max_safe_js_integer)));
   }
+
+  @ParameterizedTest
+  @ValueSource(longs = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1})
+  void testVarLongSize(long value) {
+    ByteArrayList bytes = new ByteArrayList();
+    VarInt.putVarLong(value, bytes);
+    assertEquals(bytes.size(), VarInt.varLongSize(value));
+  }
 }
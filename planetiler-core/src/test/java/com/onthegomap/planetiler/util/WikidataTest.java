@@ -1,33 +1,48 @@
 package com.onthegomap.planetiler.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.DynamicTest.dynamicTest;
 
 import com.onthegomap.planetiler.Profile;
 import com.onthegomap.planetiler.config.Arguments;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.sun.net.httpserver.HttpServer;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse.BodySubscriber;
 import java.net.http.HttpResponse.BodySubscribers;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Flow;
 import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.junit.jupiter.api.DynamicTest;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
@@ -92,6 +107,147 @@ class WikidataTest {
     assertEquals(expected, translations.getNameTranslations(elem));
   }
 
+  @Test
+  void testLoadFromBinaryCache(@TempDir Path tempDir) throws IOException {
+    Path json = tempDir.resolve("wikidata_names.json");
+    Files.writeString(json, """
+      ["1",{"en":"en name","es":"es name"}]
+      ["3",{"es":"es name3 ü"}]
+      ["2",{"es":"es name2"}]
+      """);
+    Path cache = WikidataBinaryCache.pathFor(json);
+
+    var fromJson = Wikidata.load(json);
+    assertTrue(Files.exists(cache));
+    var fromCache = Wikidata.load(json);
+
+    for (var translations : List.of(fromJson, fromCache)) {
+      assertEquals(Map.of("en", "en name", "es", "es name"), translations.get(1));
+      assertEquals(Map.of("es", "es name2"), translations.get(2));
+      assertEquals(Map.of("es", "es name3 ü"), translations.get(3));
+      assertNull(translations.get(4));
+    }
+    assertEquals(3, fromCache.getAll().size());
+    fromJson.close();
+    fromCache.close();
+    assertThrows(IllegalStateException.class, () -> fromCache.get(1));
+
+    // re-read the JSON file when it changes and replace the unmapped cache
+    Files.writeString(json, """
+      ["4",{"en":"en name4"}]
+      """);
+    Files.setLastModifiedTime(json, FileTime.fromMillis(Files.getLastModifiedTime(cache).toMillis() + 1_000));
+    try (var updated = Wikidata.load(json)) {
+      assertNull(updated.get(1));
+      assertEquals(Map.of("en", "en name4"), updated.get(4));
+    }
+    try (var rewritten = WikidataBinaryCache.open(cache)) {
+      assertEquals(1, rewritten.size());
+      assertEquals(Map.of("en", "en name4"), rewritten.get(4));
+    }
+  }
+
+  @Test
+  void testFetchConcurrentlyFromStubServer(@TempDir Path tempDir) throws IOException {
+    AtomicInteger requests = new AtomicInteger(0);
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newFixedThreadPool(4));
+    server.createContext("/", exchange -> {
+      requests.incrementAndGet();
+      String query = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+      Matcher matcher = Pattern.compile("wd:Q([0-9]+)").matcher(query);
+      List<String> bindings = new ArrayList<>();
+      while (matcher.find()) {
+        // every third QID has no translations
+        if (Long.parseLong(matcher.group(1)) % 3 == 0) {
+          continue;
+        }
+        bindings.add("""
+          {"id":{"value":"http://www.wikidata.org/entity/Q%s"},"label":{"xml:lang":"en","value":"name %s"}}
+          """.formatted(matcher.group(1), matcher.group(1)));
+      }
+      byte[] body = ("{\"results\":{\"bindings\":[" + String.join(",", bindings) + "]}}")
+        .getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (var os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    });
+    server.start();
+    try {
+      URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+      var httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+      var client = Wikidata.Client.wrap(httpClient);
+      Wikidata.Client stubClient = req -> client.send(HttpRequest.newBuilder(req, (k, v) -> true).uri(uri).build());
+      Path checkpointPath = tempDir.resolve("checkpoint");
+      StringWriter writer = new StringWriter();
+      try (
+        var checkpoint = Files.newBufferedWriter(checkpointPath);
+        var fixture = new Wikidata(writer, checkpoint, stubClient, 2, 3, profile, config)
+      ) {
+        for (long i = 1; i <= 9; i++) {
+          fixture.fetch(i);
+        }
+        fixture.flush();
+      }
+
+      assertEquals(5, requests.get());
+      var translations = Wikidata.load(new BufferedReader(new StringReader(writer.toString())));
+      for (long i = 1; i <= 9; i++) {
+        assertEquals(i % 3 == 0 ? null : Map.of("en", "name " + i), translations.get(i));
+      }
+
+      // a resumed run skips QIDs that already loaded and QIDs that have no translations
+      var completed = Wikidata.loadCheckpoint(checkpointPath);
+      assertEquals(3, completed.size());
+      assertTrue(completed.contains(3) && completed.contains(6) && completed.contains(9));
+      try (var fixture = new Wikidata(new StringWriter(), null, stubClient, 2, 3, profile, config)) {
+        fixture.loadExisting(translations);
+        fixture.skip(completed);
+        for (long i = 1; i <= 10; i++) {
+          fixture.fetch(i);
+        }
+        fixture.flush();
+      }
+      assertEquals(6, requests.get());
+
+      // if the last line of translations was only partially written, refetch its QID
+      String json = writer.toString();
+      String lastLine = json.lines().reduce((a, b) -> b).orElseThrow();
+      long lastId = Long.parseLong(lastLine.substring(2, lastLine.indexOf('"', 2)));
+      String truncated = json.substring(0, json.length() - System.lineSeparator().length() - 5);
+      var resumed = Wikidata.load(new BufferedReader(new StringReader(truncated)));
+      assertEquals(5, resumed.getAll().size());
+      assertNull(resumed.get(lastId));
+      StringWriter resumedWriter = new StringWriter();
+      try (var fixture = new Wikidata(resumedWriter, null, stubClient, 2, 3, profile, config)) {
+        fixture.loadExisting(resumed);
+        fixture.skip(completed);
+        for (long i = 1; i <= 9; i++) {
+          fixture.fetch(i);
+        }
+        fixture.flush();
+      }
+      assertEquals(7, requests.get());
+      var fixed = Wikidata.load(new BufferedReader(new StringReader(resumedWriter.toString())));
+      for (long i = 1; i <= 9; i++) {
+        assertEquals(i % 3 == 0 ? null : Map.of("en", "name " + i), fixed.get(i));
+      }
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void testIgnorePartialCheckpointLine(@TempDir Path tempDir) throws IOException {
+    Path checkpointPath = tempDir.resolve("checkpoint");
+    Files.writeString(checkpointPath, "1,2;\n3,4;\n5,");
+    var completed = Wikidata.loadCheckpoint(checkpointPath);
+    assertEquals(4, completed.size());
+    assertTrue(completed.contains(4));
+    assertFalse(completed.contains(5));
+  }
+
   @TestFactory
   List<DynamicTest> testFetchWikidata() throws IOException, InterruptedException {
     StringWriter writer = new StringWriter();
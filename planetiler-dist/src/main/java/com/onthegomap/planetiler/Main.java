@@ -12,6 +12,7 @@ import com.onthegomap.planetiler.examples.ToiletsOverlay;
 import com.onthegomap.planetiler.examples.ToiletsOverlayLowLevelApi;
 import com.onthegomap.planetiler.mbtiles.Verify;
 import com.onthegomap.planetiler.util.CompareArchives;
+import com.onthegomap.planetiler.util.TileServer;
 import com.onthegomap.planetiler.util.TileSizeStats;
 import com.onthegomap.planetiler.util.TopOsmTiles;
 import java.util.Arrays;
@@ -65,7 +66,8 @@ public class Main {
     entry("verify-monaco", VerifyMonaco::main),
     entry("stats", TileSizeStats::main),
     entry("top-osm-tiles", TopOsmTiles::main),
-    entry("compare", CompareArchives::main)
+    entry("compare", CompareArchives::main),
+    entry("serve", TileServer::main)
   );
 
   private static EntryPoint bundledSchema(String path) {